@@ -14,6 +14,8 @@
  */
 package org.syncope.client.search;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.syncope.client.AbstractBaseBean;
 
 public class NodeCond extends AbstractBaseBean {
@@ -33,6 +35,11 @@ public class NodeCond extends AbstractBaseBean {
 
     private NodeCond rightNodeCond;
 
+    /**
+     * Sort criteria, only considered on the root condition.
+     */
+    private List<OrderByClause> orderBy = new ArrayList<OrderByClause>();
+
     public static NodeCond getLeafCond(final AttributeCond attributeCond) {
         NodeCond nodeCond = new NodeCond();
 
@@ -119,6 +126,18 @@ public class NodeCond extends AbstractBaseBean {
         this.rightNodeCond = rightNodeCond;
     }
 
+    public final List<OrderByClause> getOrderBy() {
+        return orderBy;
+    }
+
+    public final void setOrderBy(final List<OrderByClause> orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    public final boolean addOrderBy(final OrderByClause orderByClause) {
+        return orderBy.add(orderByClause);
+    }
+
     public final Type getType() {
         return type;
     }
@@ -132,6 +151,14 @@ public class NodeCond extends AbstractBaseBean {
             return false;
         }
 
+        if (orderBy != null) {
+            for (OrderByClause clause : orderBy) {
+                if (clause == null || !clause.checkValidity()) {
+                    return false;
+                }
+            }
+        }
+
         switch (type) {
             case LEAF:
             case NOT_LEAF:
@@ -0,0 +1,66 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.client.search;
+
+import org.syncope.client.AbstractBaseBean;
+
+/**
+ * Sort criterion to be applied to search results: results are sorted by the
+ * value of the given schema, in the given direction.
+ */
+public class OrderByClause extends AbstractBaseBean {
+
+    public enum Direction {
+
+        ASC, DESC
+
+    }
+    private String schema;
+
+    private Direction direction;
+
+    public OrderByClause() {
+        super();
+
+        direction = Direction.ASC;
+    }
+
+    public OrderByClause(final String schema, final Direction direction) {
+        super();
+
+        this.schema = schema;
+        this.direction = direction;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    public final boolean checkValidity() {
+        return schema != null && direction != null;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.client.to;
+
+import org.syncope.client.AbstractBaseBean;
+import org.syncope.types.ResourceOperationType;
+import org.syncope.types.SyncopeClientExceptionType;
+
+/**
+ * Outcome of a single item of a bulk request: index is the position of the
+ * item in the list of users to be created, updated or deleted.
+ */
+public class BulkUserItemTO extends AbstractBaseBean {
+
+    private ResourceOperationType operation;
+
+    private int index;
+
+    private Long userId;
+
+    private UserTO user;
+
+    private SyncopeClientExceptionType errorType;
+
+    private String errorMessage;
+
+    public ResourceOperationType getOperation() {
+        return operation;
+    }
+
+    public void setOperation(ResourceOperationType operation) {
+        this.operation = operation;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public UserTO getUser() {
+        return user;
+    }
+
+    public void setUser(UserTO user) {
+        this.user = user;
+    }
+
+    /**
+     * @return type of the error occurred, null if the item was successful
+     */
+    public SyncopeClientExceptionType getErrorType() {
+        return errorType;
+    }
+
+    public void setErrorType(SyncopeClientExceptionType errorType) {
+        this.errorType = errorType;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
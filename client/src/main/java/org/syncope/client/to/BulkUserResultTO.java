@@ -0,0 +1,44 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.client.to;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.syncope.client.AbstractBaseBean;
+
+/**
+ * Outcomes of a bulk request, one per item, in the order items were
+ * processed: creations first, then updates, then deletions.
+ */
+public class BulkUserResultTO extends AbstractBaseBean {
+
+    private List<BulkUserItemTO> items;
+
+    public BulkUserResultTO() {
+        items = new ArrayList<BulkUserItemTO>();
+    }
+
+    public boolean addItem(BulkUserItemTO item) {
+        return items.add(item);
+    }
+
+    public List<BulkUserItemTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<BulkUserItemTO> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.client.to;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.syncope.client.AbstractBaseBean;
+import org.syncope.client.mod.UserMod;
+
+/**
+ * Users to be created, updated and deleted by a single bulk request.
+ */
+public class BulkUserTO extends AbstractBaseBean {
+
+    private List<UserTO> usersToBeCreated;
+
+    private List<UserMod> usersToBeUpdated;
+
+    private List<Long> userIdsToBeDeleted;
+
+    public BulkUserTO() {
+        usersToBeCreated = new ArrayList<UserTO>();
+        usersToBeUpdated = new ArrayList<UserMod>();
+        userIdsToBeDeleted = new ArrayList<Long>();
+    }
+
+    public boolean addUserToBeCreated(UserTO userTO) {
+        return usersToBeCreated.add(userTO);
+    }
+
+    public List<UserTO> getUsersToBeCreated() {
+        return usersToBeCreated;
+    }
+
+    public void setUsersToBeCreated(List<UserTO> usersToBeCreated) {
+        this.usersToBeCreated = usersToBeCreated;
+    }
+
+    public boolean addUserToBeUpdated(UserMod userMod) {
+        return usersToBeUpdated.add(userMod);
+    }
+
+    public List<UserMod> getUsersToBeUpdated() {
+        return usersToBeUpdated;
+    }
+
+    public void setUsersToBeUpdated(List<UserMod> usersToBeUpdated) {
+        this.usersToBeUpdated = usersToBeUpdated;
+    }
+
+    public boolean addUserIdToBeDeleted(Long userId) {
+        return userIdsToBeDeleted.add(userId);
+    }
+
+    public List<Long> getUserIdsToBeDeleted() {
+        return userIdsToBeDeleted;
+    }
+
+    public void setUserIdsToBeDeleted(List<Long> userIdsToBeDeleted) {
+        this.userIdsToBeDeleted = userIdsToBeDeleted;
+    }
+}
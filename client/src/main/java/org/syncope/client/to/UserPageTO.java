@@ -0,0 +1,74 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.client.to;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.syncope.client.AbstractBaseBean;
+
+/**
+ * A page of users, together with the continuation token to be sent back for
+ * getting the next page (null when no more users are available) or with the
+ * total number of users (null when not computed).
+ */
+public class UserPageTO extends AbstractBaseBean {
+
+    /**
+     * Continuation token for requesting the first page.
+     */
+    public static final String FIRST_PAGE = "0";
+
+    private List<UserTO> users;
+
+    private String continuation;
+
+    private Integer totalCount;
+
+    public UserPageTO() {
+        users = new ArrayList<UserTO>();
+    }
+
+    public boolean addUser(UserTO userTO) {
+        return users.add(userTO);
+    }
+
+    public boolean removeUser(UserTO userTO) {
+        return users.remove(userTO);
+    }
+
+    public List<UserTO> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserTO> users) {
+        this.users = users;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    public Integer getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Integer totalCount) {
+        this.totalCount = totalCount;
+    }
+}
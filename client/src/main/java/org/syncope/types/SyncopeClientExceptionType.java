@@ -64,6 +64,9 @@ public enum SyncopeClientExceptionType {
     RequiredValuesMissing(
     "Syncope.RequiredValuesMissing",
     "Syncope.RequiredValuesMissing.attributeName"),
+    SearchLimitExceeded(
+    "Syncope.SearchLimitExceeded",
+    "Syncope.SearchLimitExceeded.limit"),
     UnauthorizedRole(
     "Syncope.UnauthorizedRole",
     "Syncope.UnauthorizedRole.id"),
@@ -40,6 +40,15 @@ public class SortableUserProviderComparator
         super(provider);
     }
 
+    /**
+     * @param property sort property
+     * @return whether the given property is a field of UserTO, rather than an
+     * attribute schema name
+     */
+    public static boolean isInlineProperty(final String property) {
+        return inlineProps.contains(property);
+    }
+
     @Override
     public int compare(final UserTO o1, final UserTO o2) {
         if (inlineProps.contains(provider.getSort().getProperty())) {
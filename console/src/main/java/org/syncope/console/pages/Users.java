@@ -57,6 +57,7 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.syncope.client.search.AttributeCond;
 import org.syncope.client.search.MembershipCond;
 import org.syncope.client.search.NodeCond;
+import org.syncope.client.search.OrderByClause;
 import org.syncope.client.to.RoleTO;
 import org.syncope.client.to.UserTO;
 import org.syncope.client.validation.SyncopeClientCompositeErrorException;
@@ -459,6 +460,14 @@ public class Users extends BasePage {
                 });
     }
 
+    /**
+     * @return schema names of the attributes shown in user lists
+     */
+    private List<String> getAttributesView() {
+        return prefMan.getList(getWebRequestCycle().getWebRequest(),
+                Constants.PREF_USERS_ATTRIBUTES_VIEW);
+    }
+
     protected List<IColumn<UserTO>> getColumns(final ModalWindow editModalWin) {
         List<IColumn<UserTO>> columns = new ArrayList<IColumn<UserTO>>();
         columns.add(new PropertyColumn(
@@ -466,8 +475,7 @@ public class Users extends BasePage {
         columns.add(new PropertyColumn(
                 new Model(getString("status")), "status", "status"));
         columns.add(new TokenColumn(new Model(getString("token")), "token"));
-        for (String schemaName : prefMan.getList(getWebRequestCycle().
-                getWebRequest(), Constants.PREF_USERS_ATTRIBUTES_VIEW)) {
+        for (String schemaName : getAttributesView()) {
 
             columns.add(new UserAttrColumn(
                     new Model<String>(schemaName), schemaName));
@@ -494,9 +502,13 @@ public class Users extends BasePage {
 
                                     @Override
                                     public Page createPage() {
+                                        // list items are partial
                                         return new UserModalPage(Users.this,
                                                 editModalWin,
-                                                model.getObject(), false);
+                                                userRestClient.read(
+                                                String.valueOf(model.
+                                                getObject().getId())),
+                                                false);
                                     }
                                 });
 
@@ -670,14 +682,15 @@ public class Users extends BasePage {
         @Override
         public Iterator<UserTO> iterator(final int first, final int count) {
             List<UserTO> users = userRestClient.list(
-                    (first / paginatorRows) + 1, paginatorRows);
+                    (first / paginatorRows) + 1, paginatorRows,
+                    getAttributesView());
             Collections.sort(users, comparator);
             return users.iterator();
         }
 
         @Override
         public int size() {
-            return userRestClient.count();
+            return userRestClient.approximateCount().getCount();
         }
 
         @Override
@@ -709,9 +722,26 @@ public class Users extends BasePage {
             if (searchCond == null) {
                 users = Collections.EMPTY_LIST;
             } else {
+                // attribute ordering is performed by the server
+                String sortProperty = getSort().getProperty();
+                boolean inlineSort = SortableUserProviderComparator.
+                        isInlineProperty(sortProperty);
+
+                List<OrderByClause> orderBy = new ArrayList<OrderByClause>();
+                if (!inlineSort) {
+                    orderBy.add(new OrderByClause(sortProperty,
+                            getSort().isAscending()
+                            ? OrderByClause.Direction.ASC
+                            : OrderByClause.Direction.DESC));
+                }
+                searchCond.setOrderBy(orderBy);
+
                 users = userRestClient.search(searchCond,
-                        (first / searchPaginatorRows) + 1, searchPaginatorRows);
-                Collections.sort(users, comparator);
+                        (first / searchPaginatorRows) + 1, searchPaginatorRows,
+                        getAttributesView());
+                if (inlineSort) {
+                    Collections.sort(users, comparator);
+                }
             }
 
             return users.iterator();
@@ -720,7 +750,9 @@ public class Users extends BasePage {
         @Override
         public int size() {
             return searchCond == null
-                    ? 0 : userRestClient.searchCount(searchCond);
+                    ? 0
+                    : userRestClient.approximateSearchCount(searchCond).
+                    getCount();
         }
 
         @Override
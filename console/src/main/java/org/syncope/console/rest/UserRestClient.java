@@ -16,9 +16,11 @@ package org.syncope.console.rest;
 
 import java.util.Arrays;
 import java.util.List;
+import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Component;
 import org.syncope.client.mod.UserMod;
 import org.syncope.client.search.NodeCond;
+import org.syncope.client.to.UserCountTO;
 import org.syncope.client.to.UserTO;
 import org.syncope.client.validation.SyncopeClientCompositeErrorException;
 
@@ -28,11 +30,26 @@ import org.syncope.client.validation.SyncopeClientCompositeErrorException;
 @Component
 public class UserRestClient extends AbstractBaseRestClient {
 
+    /**
+     * Request parameters for getting the given attributes and status only.
+     */
+    private static final String PROJECTION =
+            "attributes={attributes}&memberships=false&resources=false";
+
     public Integer count() {
         return restTemplate.getForObject(baseURL + "user/count.json",
                 Integer.class);
     }
 
+    /**
+     * @return number of users, estimated when large
+     */
+    public UserCountTO approximateCount() {
+        return restTemplate.getForObject(
+                baseURL + "user/count.json?approximate=true",
+                UserCountTO.class);
+    }
+
     /**
      * Get all stored users.
      * @param page pagination element to fetch
@@ -45,6 +62,22 @@ public class UserRestClient extends AbstractBaseRestClient {
                 UserTO[].class, page, size));
     }
 
+    /**
+     * Get stored users, with the given attributes and status only.
+     * @param page pagination element to fetch
+     * @param size maximum number to fetch
+     * @param attributes schema names of attributes to fetch
+     * @return list of UserTO objects
+     */
+    public List<UserTO> list(final int page, final int size,
+            final List<String> attributes) {
+
+        return Arrays.asList(restTemplate.getForObject(
+                baseURL + "user/list/{page}/{size}.json?" + PROJECTION,
+                UserTO[].class, page, size,
+                StringUtils.join(attributes, ',')));
+    }
+
     /**
      * Create a new user and start off the workflow.
      * @param userTO instance
@@ -90,6 +123,16 @@ public class UserRestClient extends AbstractBaseRestClient {
                 baseURL + "user/search/count.json", searchCond, Integer.class);
     }
 
+    /**
+     * @param searchCond search condition
+     * @return number of matching users, estimated when large
+     */
+    public UserCountTO approximateSearchCount(final NodeCond searchCond) {
+        return restTemplate.postForObject(
+                baseURL + "user/search/count.json?approximate=true",
+                searchCond, UserCountTO.class);
+    }
+
     /**
      * Search an user by its schema values.
      * @param userTO
@@ -111,4 +154,22 @@ public class UserRestClient extends AbstractBaseRestClient {
                 baseURL + "user/search/{page}/{size}",
                 searchCond, UserTO[].class, page, size));
     }
+
+    /**
+     * Search users, with the given attributes and status only.
+     * @param searchCond search condition
+     * @param page pagination element to fetch
+     * @param size maximum number to fetch
+     * @param attributes schema names of attributes to fetch
+     * @return list of UserTO objects
+     */
+    public List<UserTO> search(final NodeCond searchCond,
+            final int page, final int size, final List<String> attributes)
+            throws SyncopeClientCompositeErrorException {
+
+        return Arrays.asList(restTemplate.postForObject(
+                baseURL + "user/search/{page}/{size}?" + PROJECTION,
+                searchCond, UserTO[].class, page, size,
+                StringUtils.join(attributes, ',')));
+    }
 }
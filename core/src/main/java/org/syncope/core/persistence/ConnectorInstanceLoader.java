@@ -30,7 +30,6 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.syncope.core.persistence.beans.ConnectorInstance;
-import org.syncope.core.persistence.beans.SyncopeConf;
 import org.syncope.core.persistence.dao.ConnectorInstanceDAO;
 import org.syncope.core.persistence.dao.MissingConfKeyException;
 import org.syncope.core.persistence.dao.ConfDAO;
@@ -57,20 +56,20 @@ public class ConnectorInstanceLoader implements ServletContextListener {
         // 1. Bundles directory
         ConfDAO syncopeConfigurationDAO =
                 (ConfDAO) context.getBean("confDAOImpl");
-        SyncopeConf connectorBundleDir = null;
+        String connectorBundleDir = null;
         try {
-            connectorBundleDir = syncopeConfigurationDAO.find(
-                    "identityconnectors.bundle.directory");
+            connectorBundleDir = syncopeConfigurationDAO.getSnapshot().
+                    getString("identityconnectors.bundle.directory");
         } catch (MissingConfKeyException e) {
             LOG.error("Missing configuration", e);
         }
 
         // 2. Find bundles inside that directory
-        File bundleDirectory = new File(connectorBundleDir.getConfValue());
+        File bundleDirectory = new File(connectorBundleDir);
         String[] bundleFiles = bundleDirectory.list();
         if (bundleFiles == null) {
             throw new NotFoundException("Bundles from dir "
-                    + connectorBundleDir.getConfValue());
+                    + connectorBundleDir);
         }
 
         List<URL> bundleFileURLs = new ArrayList<URL>();
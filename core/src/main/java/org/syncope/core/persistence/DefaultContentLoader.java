@@ -33,9 +33,14 @@ import org.dbunit.operation.DatabaseOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 import org.syncope.core.persistence.beans.SyncopeConf;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 
 /**
  * Load default content in the database.
@@ -202,6 +207,29 @@ public class DefaultContentLoader implements ServletContextListener {
         } catch (SQLException e) {
             LOG.error("While closing SQL connection", e);
         }
+
+        // 6. Build user search index for the default content
+        try {
+            final UserSearchIndexDAO userSearchIndexDAO =
+                    (UserSearchIndexDAO) springContext.getBean(
+                    "userSearchIndexDAOImpl");
+
+            new TransactionTemplate((PlatformTransactionManager) springContext.
+                    getBean("transactionManager")).execute(
+                    new TransactionCallbackWithoutResult() {
+
+                        @Override
+                        protected void doInTransactionWithoutResult(
+                                final TransactionStatus status) {
+
+                            userSearchIndexDAO.rebuild();
+                        }
+                    });
+
+            LOG.debug("User search index successfully built");
+        } catch (Throwable t) {
+            LOG.error("While building user search index", t);
+        }
     }
 
     @Override
@@ -0,0 +1,251 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.syncope.core.persistence.beans.AbstractDerSchema;
+import org.syncope.core.persistence.beans.AbstractSchema;
+import org.syncope.core.persistence.beans.SchemaMapping;
+import org.syncope.types.SchemaType;
+import org.syncope.types.SourceMappingType;
+
+/**
+ * Read-only copies of schemas, derived schemas and schema mappings, indexed
+ * for data binding and propagation: looking them up involves no query and
+ * no locking.
+ */
+public final class Metadata {
+
+    /**
+     * Detached copy of the schema attributes needed on the hot path.
+     */
+    public static final class SchemaInfo {
+
+        private final String name;
+
+        private final SchemaType type;
+
+        private final boolean virtual;
+
+        private final boolean readonly;
+
+        private final boolean multivalue;
+
+        private final boolean uniqueConstraint;
+
+        private final String mandatoryCondition;
+
+        private final String validatorClass;
+
+        public SchemaInfo(final AbstractSchema schema) {
+            name = schema.getName();
+            type = schema.getType();
+            virtual = schema.isVirtual();
+            readonly = schema.isReadonly();
+            multivalue = schema.isMultivalue();
+            uniqueConstraint = schema.isUniqueConstraint();
+            mandatoryCondition = schema.getMandatoryCondition();
+            validatorClass = schema.getValidatorClass();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SchemaType getType() {
+            return type;
+        }
+
+        public boolean isVirtual() {
+            return virtual;
+        }
+
+        public boolean isReadonly() {
+            return readonly;
+        }
+
+        public boolean isMultivalue() {
+            return multivalue;
+        }
+
+        public boolean isUniqueConstraint() {
+            return uniqueConstraint;
+        }
+
+        public String getMandatoryCondition() {
+            return mandatoryCondition;
+        }
+
+        public String getValidatorClass() {
+            return validatorClass;
+        }
+    }
+
+    /**
+     * Detached copy of a schema mapping, referring to its resource by name.
+     */
+    public static final class MappingInfo {
+
+        private final String resourceName;
+
+        private final boolean accountid;
+
+        private final String mandatoryCondition;
+
+        public MappingInfo(final SchemaMapping mapping) {
+            resourceName = mapping.getResource().getName();
+            accountid = mapping.isAccountid();
+            mandatoryCondition = mapping.getMandatoryCondition();
+        }
+
+        public String getResourceName() {
+            return resourceName;
+        }
+
+        public boolean isAccountid() {
+            return accountid;
+        }
+
+        public String getMandatoryCondition() {
+            return mandatoryCondition;
+        }
+    }
+
+    private final Map<Class, Map<String, SchemaInfo>> schemas;
+
+    private final Map<Class, Set<String>> derivedSchemas;
+
+    private final Map<SourceMappingType, Map<String, List<MappingInfo>>>
+            mappings;
+
+    public Metadata(final Map<Class, List<? extends AbstractSchema>> schemas,
+            final Map<Class, List<? extends AbstractDerSchema>> derivedSchemas,
+            final List<SchemaMapping> mappings) {
+
+        this.schemas = new HashMap<Class, Map<String, SchemaInfo>>();
+        for (Map.Entry<Class, List<? extends AbstractSchema>> entry :
+                schemas.entrySet()) {
+
+            Map<String, SchemaInfo> byName = new HashMap<String, SchemaInfo>();
+            for (AbstractSchema schema : entry.getValue()) {
+                byName.put(schema.getName(), new SchemaInfo(schema));
+            }
+            this.schemas.put(entry.getKey(),
+                    Collections.unmodifiableMap(byName));
+        }
+
+        this.derivedSchemas = new HashMap<Class, Set<String>>();
+        for (Map.Entry<Class, List<? extends AbstractDerSchema>> entry :
+                derivedSchemas.entrySet()) {
+
+            Set<String> names = new HashSet<String>();
+            for (AbstractDerSchema derivedSchema : entry.getValue()) {
+                names.add(derivedSchema.getName());
+            }
+            this.derivedSchemas.put(entry.getKey(),
+                    Collections.unmodifiableSet(names));
+        }
+
+        this.mappings = new HashMap<SourceMappingType,
+                Map<String, List<MappingInfo>>>();
+        for (SchemaMapping mapping : mappings) {
+            if (mapping.getResource() == null
+                    || mapping.getSourceMappingType() == null) {
+
+                continue;
+            }
+
+            Map<String, List<MappingInfo>> bySource =
+                    this.mappings.get(mapping.getSourceMappingType());
+            if (bySource == null) {
+                bySource = new HashMap<String, List<MappingInfo>>();
+                this.mappings.put(mapping.getSourceMappingType(), bySource);
+            }
+
+            List<MappingInfo> infos = bySource.get(mapping.getSourceAttrName());
+            if (infos == null) {
+                infos = new ArrayList<MappingInfo>();
+                bySource.put(mapping.getSourceAttrName(), infos);
+            }
+            infos.add(new MappingInfo(mapping));
+        }
+    }
+
+    /**
+     * @param reference schema class (USchema, RSchema or MSchema)
+     * @param name schema name
+     * @return schema info, null if no such schema exists
+     */
+    public SchemaInfo getSchema(
+            final Class<? extends AbstractSchema> reference,
+            final String name) {
+
+        Map<String, SchemaInfo> byName = schemas.get(reference);
+        return byName == null ? null : byName.get(name);
+    }
+
+    /**
+     * @param reference schema class (USchema, RSchema or MSchema)
+     * @return all schemas of the given class
+     */
+    public Collection<SchemaInfo> getSchemas(
+            final Class<? extends AbstractSchema> reference) {
+
+        Map<String, SchemaInfo> byName = schemas.get(reference);
+        return byName == null
+                ? Collections.<SchemaInfo>emptySet()
+                : byName.values();
+    }
+
+    /**
+     * @param reference derived schema class (UDerSchema, RDerSchema or
+     * MDerSchema)
+     * @param name derived schema name
+     * @return whether such derived schema exists
+     */
+    public boolean containsDerivedSchema(
+            final Class<? extends AbstractDerSchema> reference,
+            final String name) {
+
+        Set<String> names = derivedSchemas.get(reference);
+        return names != null && names.contains(name);
+    }
+
+    /**
+     * @param sourceMappingType source mapping type
+     * @param sourceAttrName source attribute name
+     * @return mappings from the given source, on any resource
+     */
+    public List<MappingInfo> getMappings(
+            final SourceMappingType sourceMappingType,
+            final String sourceAttrName) {
+
+        Map<String, List<MappingInfo>> bySource =
+                mappings.get(sourceMappingType);
+        List<MappingInfo> result = bySource == null
+                ? null : bySource.get(sourceAttrName);
+
+        return result == null
+                ? Collections.<MappingInfo>emptyList()
+                : Collections.unmodifiableList(result);
+    }
+}
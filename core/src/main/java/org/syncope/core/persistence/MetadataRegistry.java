@@ -0,0 +1,181 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.ehcache.CacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.syncope.core.persistence.beans.AbstractDerSchema;
+import org.syncope.core.persistence.beans.AbstractSchema;
+import org.syncope.core.persistence.beans.membership.MDerSchema;
+import org.syncope.core.persistence.beans.membership.MSchema;
+import org.syncope.core.persistence.beans.role.RDerSchema;
+import org.syncope.core.persistence.beans.role.RSchema;
+import org.syncope.core.persistence.beans.user.UDerSchema;
+import org.syncope.core.persistence.beans.user.USchema;
+import org.syncope.core.persistence.cache.ChangeSignal;
+import org.syncope.core.persistence.dao.DerSchemaDAO;
+import org.syncope.core.persistence.dao.ResourceDAO;
+import org.syncope.core.persistence.dao.SchemaDAO;
+
+/**
+ * Holds the current Metadata; it is rebuilt as a whole after each committed
+ * change to schemas, derived schemas or resources, on this node or on any
+ * other node of the cluster. Changes are reported by the DAOs of these
+ * entities.
+ */
+@Component
+public class MetadataRegistry {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(MetadataRegistry.class);
+
+    private static final Class[] SCHEMA_CLASSES = new Class[]{
+        USchema.class, RSchema.class, MSchema.class};
+
+    private static final Class[] DER_SCHEMA_CLASSES = new Class[]{
+        UDerSchema.class, RDerSchema.class, MDerSchema.class};
+
+    @Autowired
+    private SchemaDAO schemaDAO;
+
+    @Autowired
+    private DerSchemaDAO derivedSchemaDAO;
+
+    @Autowired
+    private ResourceDAO resourceDAO;
+
+    /**
+     * Loaded at first access, and again at first access after a change;
+     * never modified afterwards.
+     */
+    private volatile Metadata metadata;
+
+    /**
+     * Incremented at each committed change, so that a load started before
+     * a change is never published after it.
+     */
+    private long generation;
+
+    /**
+     * Tells the other nodes to discard their metadata after each change.
+     */
+    private ChangeSignal changeSignal;
+
+    @Autowired
+    public void setCacheManager(final CacheManager cacheManager) {
+        changeSignal = new ChangeSignal(cacheManager,
+                MetadataRegistry.class.getName(), new Runnable() {
+
+            @Override
+            public void run() {
+                invalidate();
+            }
+        });
+    }
+
+    private Metadata load() {
+        Map<Class, List<? extends AbstractSchema>> schemas =
+                new HashMap<Class, List<? extends AbstractSchema>>();
+        for (Class reference : SCHEMA_CLASSES) {
+            schemas.put(reference, schemaDAO.findAll(reference));
+        }
+
+        Map<Class, List<? extends AbstractDerSchema>> derivedSchemas =
+                new HashMap<Class, List<? extends AbstractDerSchema>>();
+        for (Class reference : DER_SCHEMA_CLASSES) {
+            derivedSchemas.put(reference, derivedSchemaDAO.findAll(reference));
+        }
+
+        return new Metadata(schemas, derivedSchemas,
+                resourceDAO.findAllMappings());
+    }
+
+    public Metadata getMetadata() {
+        // a transaction with pending changes to schemas or mappings bypasses
+        // the shared metadata, loading its own at each access
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return load();
+        }
+
+        Metadata result = metadata;
+        if (result == null) {
+            long loadGeneration;
+            synchronized (this) {
+                loadGeneration = generation;
+            }
+
+            result = load();
+
+            synchronized (this) {
+                if (generation == loadGeneration && metadata == null) {
+                    metadata = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Rebuild metadata, here and on the other nodes, once the current
+     * transaction (if any) commits; to be invoked by DAOs after any change
+     * to schemas, derived schemas, resources or schema mappings.
+     */
+    public void changed() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            changeSignal.send();
+            return;
+        }
+
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCompletion(final int status) {
+                        TransactionSynchronizationManager.
+                                unbindResourceIfPossible(MetadataRegistry.this);
+
+                        if (status == STATUS_COMMITTED) {
+                            invalidate();
+                            changeSignal.send();
+                        }
+                    }
+                });
+    }
+
+    private synchronized void invalidate() {
+        LOG.debug("Metadata changed, will be rebuilt at next access");
+
+        generation++;
+        metadata = null;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.dbcp.BasicDataSource;
+
+/**
+ * Connection pool also measuring how long callers wait for connections.
+ */
+public class PooledDataSource extends BasicDataSource {
+
+    /**
+     * Number of connections obtained from the pool.
+     */
+    private final AtomicLong waitCount = new AtomicLong();
+
+    /**
+     * Total time spent waiting for connections, in milliseconds.
+     */
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    /**
+     * Longest time spent waiting for a connection, in milliseconds.
+     */
+    private final AtomicLong longestWaitMillis = new AtomicLong();
+
+    /**
+     * Number of failures in getting a connection, including time outs when
+     * the pool is exhausted.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    @Override
+    public Connection getConnection()
+            throws SQLException {
+
+        long start = System.currentTimeMillis();
+        try {
+            Connection connection = super.getConnection();
+            waited(System.currentTimeMillis() - start);
+
+            return connection;
+        } catch (SQLException e) {
+            failureCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void waited(final long millis) {
+        waitCount.incrementAndGet();
+        totalWaitMillis.addAndGet(millis);
+
+        long longest = longestWaitMillis.get();
+        while (millis > longest
+                && !longestWaitMillis.compareAndSet(longest, millis)) {
+
+            longest = longestWaitMillis.get();
+        }
+    }
+
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = waitCount.get();
+        return count == 0 ? 0.0 : (double) totalWaitMillis.get() / count;
+    }
+
+    public long getLongestWaitMillis() {
+        return longestWaitMillis.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+}
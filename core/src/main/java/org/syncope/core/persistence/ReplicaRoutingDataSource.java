@@ -0,0 +1,334 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+/**
+ * Routes connections for read-only transactions to replicas (round robin),
+ * everything else to the primary.
+ * Replicas failing to provide a connection or the health check query are
+ * excluded until the next successful health check; when no replica is
+ * available, the primary is used.
+ * Principals having written in the last readYourWritesSeconds are always
+ * routed to the primary, not to read stale data from lagging replicas.
+ *
+ * Transactions are known to be read-only only after the transaction
+ * manager has asked for a connection: this must be wrapped by a
+ * LazyConnectionDataSourceProxy.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private DataSource primary;
+
+    private List<DataSource> replicas = Collections.emptyList();
+
+    /**
+     * When empty, replicas are checked via Connection.isValid().
+     */
+    private String healthCheckQuery = "SELECT 1";
+
+    /**
+     * 0 disables health checks: replicas, once excluded, are not used
+     * anymore.
+     */
+    private int healthCheckIntervalSeconds = 30;
+
+    /**
+     * 0 disables read-your-writes.
+     */
+    private int readYourWritesSeconds;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final Set<DataSource> unavailableReplicas =
+            Collections.newSetFromMap(
+            new ConcurrentHashMap<DataSource, Boolean>());
+
+    /**
+     * Time of the last write, by principal.
+     */
+    private final ConcurrentMap<String, Long> lastWrites =
+            new ConcurrentHashMap<String, Long>();
+
+    private ScheduledExecutorService healthChecker;
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public void setPrimary(final DataSource primary) {
+        this.primary = primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(final List<DataSource> replicas) {
+        this.replicas = replicas;
+    }
+
+    public String getHealthCheckQuery() {
+        return healthCheckQuery;
+    }
+
+    public void setHealthCheckQuery(final String healthCheckQuery) {
+        this.healthCheckQuery = healthCheckQuery;
+    }
+
+    public int getHealthCheckIntervalSeconds() {
+        return healthCheckIntervalSeconds;
+    }
+
+    public void setHealthCheckIntervalSeconds(
+            final int healthCheckIntervalSeconds) {
+
+        this.healthCheckIntervalSeconds = healthCheckIntervalSeconds;
+    }
+
+    public int getReadYourWritesSeconds() {
+        return readYourWritesSeconds;
+    }
+
+    public void setReadYourWritesSeconds(final int readYourWritesSeconds) {
+        this.readYourWritesSeconds = readYourWritesSeconds;
+    }
+
+    /**
+     * @return number of replicas currently excluded from routing
+     */
+    public int getUnavailableReplicaCount() {
+        return unavailableReplicas.size();
+    }
+
+    public void init() {
+        if (replicas.isEmpty() || healthCheckIntervalSeconds <= 0) {
+            return;
+        }
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "ReplicaHealthCheck");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                checkHealth();
+            }
+        }, healthCheckIntervalSeconds, healthCheckIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    private boolean isHealthy(final DataSource replica) {
+        Connection conn = null;
+        Statement statement = null;
+        try {
+            conn = replica.getConnection();
+            if (!StringUtils.hasText(healthCheckQuery)) {
+                return conn.isValid(healthCheckIntervalSeconds);
+            }
+
+            statement = conn.createStatement();
+            statement.execute(healthCheckQuery);
+
+            return true;
+        } catch (SQLException e) {
+            LOG.debug("Health check failed", e);
+            return false;
+        } finally {
+            JdbcUtils.closeStatement(statement);
+            JdbcUtils.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Run the health check query against all replicas, updating the set of
+     * replicas available for routing.
+     */
+    public void checkHealth() {
+        for (int i = 0; i < replicas.size(); i++) {
+            if (isHealthy(replicas.get(i))) {
+                if (unavailableReplicas.remove(replicas.get(i))) {
+                    LOG.info("Replica {} is available again", i);
+                }
+            } else if (unavailableReplicas.add(replicas.get(i))) {
+                LOG.warn("Replica {} is not available", i);
+            }
+        }
+
+        // forget writes not relevant anymore
+        long oldest = System.currentTimeMillis()
+                - readYourWritesSeconds * 1000L;
+        for (Iterator<Map.Entry<String, Long>> itor =
+                lastWrites.entrySet().iterator(); itor.hasNext();) {
+
+            if (itor.next().getValue() < oldest) {
+                itor.remove();
+            }
+        }
+    }
+
+    private static String getPrincipal() {
+        Authentication authentication =
+                SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+
+    private boolean isReadOnlyRoutable() {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.
+                isCurrentTransactionReadOnly()) {
+
+            return false;
+        }
+
+        boolean result = true;
+        if (readYourWritesSeconds > 0) {
+            String principal = getPrincipal();
+            Long lastWrite = principal == null
+                    ? null : lastWrites.get(principal);
+            result = lastWrite == null
+                    || System.currentTimeMillis() - lastWrite
+                    >= readYourWritesSeconds * 1000L;
+        }
+
+        return result;
+    }
+
+    /**
+     * Take note of a write transaction by the current principal, at its
+     * start and at its end.
+     */
+    private void written() {
+        final String principal = getPrincipal();
+        if (readYourWritesSeconds <= 0 || principal == null) {
+            return;
+        }
+
+        lastWrites.put(principal, System.currentTimeMillis());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCompletion(final int status) {
+                            lastWrites.put(principal,
+                                    System.currentTimeMillis());
+                        }
+                    });
+        }
+    }
+
+    private static Connection getConnection(final DataSource dataSource,
+            final String username, final String password)
+            throws SQLException {
+
+        return username == null
+                ? dataSource.getConnection()
+                : dataSource.getConnection(username, password);
+    }
+
+    private Connection route(final String username, final String password)
+            throws SQLException {
+
+        if (isReadOnlyRoutable()) {
+            int start = Math.abs(nextReplica.getAndIncrement()
+                    % replicas.size());
+            DataSource replica;
+            for (int i = 0; i < replicas.size(); i++) {
+                replica = replicas.get((start + i) % replicas.size());
+                if (!unavailableReplicas.contains(replica)) {
+                    try {
+                        return getConnection(replica, username, password);
+                    } catch (SQLException e) {
+                        LOG.warn("Replica " + (start + i) % replicas.size()
+                                + " is not available", e);
+                        unavailableReplicas.add(replica);
+                    }
+                }
+            }
+
+            LOG.debug("No replica available, using primary");
+        } else if (TransactionSynchronizationManager.
+                isActualTransactionActive()
+                && !TransactionSynchronizationManager.
+                isCurrentTransactionReadOnly()) {
+
+            written();
+        }
+
+        return getConnection(primary, username, password);
+    }
+
+    @Override
+    public Connection getConnection()
+            throws SQLException {
+
+        return route(null, null);
+    }
+
+    @Override
+    public Connection getConnection(final String username,
+            final String password)
+            throws SQLException {
+
+        return route(username, password);
+    }
+}
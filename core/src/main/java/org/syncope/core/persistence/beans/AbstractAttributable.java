@@ -22,6 +22,7 @@ import java.util.Set;
 import javax.persistence.FetchType;
 import javax.persistence.ManyToMany;
 import javax.persistence.MappedSuperclass;
+import org.hibernate.annotations.BatchSize;
 
 @MappedSuperclass
 public abstract class AbstractAttributable extends AbstractBaseBean {
@@ -30,6 +31,7 @@ public abstract class AbstractAttributable extends AbstractBaseBean {
      * Provisioning target resources.
      */
     @ManyToMany(fetch = FetchType.EAGER)
+    @BatchSize(size = BATCH_FETCH_SIZE)
     protected Set<TargetResource> targetResources;
 
     public <T extends AbstractAttr> T getAttribute(final String schemaName) {
@@ -14,14 +14,14 @@
  */
 package org.syncope.core.persistence.beans;
 
-import java.beans.PropertyDescriptor;
 import java.io.Serializable;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-import org.apache.commons.lang.builder.EqualsBuilder;
-import org.apache.commons.lang.builder.HashCodeBuilder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import org.hibernate.proxy.HibernateProxyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
@@ -34,6 +34,12 @@ public abstract class AbstractBaseBean implements Serializable {
     protected static final Logger LOG = LoggerFactory.getLogger(
             AbstractBaseBean.class);
 
+    /**
+     * Number of lazy associations of the same kind initialized by a single
+     * query when one of them is accessed.
+     */
+    public static final int BATCH_FETCH_SIZE = 50;
+
     /**
      * @param property the integer representing a boolean value
      * @return the boolean value corresponding to the property param
@@ -51,35 +57,139 @@ public abstract class AbstractBaseBean implements Serializable {
     }
 
     /**
-     * @return fields to be excluded when computing equals() or hashcode()
+     * Getters of the identifier property, by bean class.
+     */
+    private static final Map<Class<?>, Method> ID_GETTERS =
+            new ConcurrentHashMap<Class<?>, Method>();
+
+    /**
+     * @param beanClass bean class (or Hibernate proxy class)
+     * @return the getter of the property annotated with @Id
+     */
+    private static Method getIdGetter(final Class<?> beanClass) {
+        Method result = ID_GETTERS.get(beanClass);
+        if (result == null) {
+            for (Class<?> clazz = beanClass;
+                    result == null && clazz != null;
+                    clazz = clazz.getSuperclass()) {
+
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (result == null && field.isAnnotationPresent(Id.class)) {
+                        result = BeanUtils.getPropertyDescriptor(
+                                beanClass, field.getName()).getReadMethod();
+                    }
+                }
+            }
+            if (result == null) {
+                throw new IllegalStateException(
+                        "No @Id property found for " + beanClass.getName());
+            }
+
+            ID_GETTERS.put(beanClass, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Id or natural key of this bean; unsaved beans have no identifier,
+     * including the ones with primitive ids not assigned yet.
+     *
+     * @param bean bean (or Hibernate proxy, not initialized by this call)
+     * @return the identifier of the given bean, or null if not available
+     */
+    private static Object getIdentifier(final AbstractBaseBean bean) {
+        Method getter = getIdGetter(bean.getClass());
+
+        Object result;
+        try {
+            result = getter.invoke(bean);
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "While reading id of " + bean.getClass().getName(), e);
+        }
+
+        if (getter.getReturnType().isPrimitive()
+                && ((Number) result).longValue() == 0) {
+
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Root entity classes, by bean class.
      */
-    private String[] getExcludeFields() {
-        Set<String> excludeFields = new HashSet<String>();
+    private static final Map<Class<?>, Class<?>> ROOT_ENTITY_CLASSES =
+            new ConcurrentHashMap<Class<?>, Class<?>>();
 
-        PropertyDescriptor[] propertyDescriptors =
-                BeanUtils.getPropertyDescriptors(getClass());
-        for (int i = 0; i < propertyDescriptors.length; i++) {
+    /**
+     * Beans of an entity hierarchy share identifiers, hence a proxy of the
+     * root entity (e.g. Task) must be comparable with a loaded subclass
+     * instance (e.g. PropagationTask).
+     *
+     * @param bean bean (or Hibernate proxy, not initialized by this call)
+     * @return the topmost @Entity class of the given bean's hierarchy
+     */
+    private static Class<?> getRootEntityClass(final Object bean) {
+        Class<?> beanClass =
+                HibernateProxyHelper.getClassWithoutInitializingProxy(bean);
 
-            if (propertyDescriptors[i].getPropertyType().isInstance(
-                    Collections.EMPTY_SET)
-                    || propertyDescriptors[i].getPropertyType().isInstance(
-                    Collections.EMPTY_LIST)) {
+        Class<?> result = ROOT_ENTITY_CLASSES.get(beanClass);
+        if (result == null) {
+            result = beanClass;
+            while (result.getSuperclass() != null
+                    && result.getSuperclass().isAnnotationPresent(
+                    Entity.class)) {
 
-                excludeFields.add(propertyDescriptors[i].getName());
+                result = result.getSuperclass();
             }
+
+            ROOT_ENTITY_CLASSES.put(beanClass, result);
         }
 
-        return excludeFields.toArray(new String[]{});
+        return result;
     }
 
+    /**
+     * Saved beans are equal when of the same entity hierarchy and with the
+     * same identifier; unsaved beans are only equal to themselves.
+     *
+     * @param obj the reference object with which to compare
+     * @return whether this bean is the same as the given object
+     */
     @Override
-    public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj, getExcludeFields());
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AbstractBaseBean)
+                || !getRootEntityClass(this).equals(getRootEntityClass(obj))) {
+
+            return false;
+        }
+
+        Object identifier = getIdentifier(this);
+        return identifier != null
+                && identifier.equals(getIdentifier((AbstractBaseBean) obj));
     }
 
+    /**
+     * Saved beans hash by their identifier, unsaved beans by identity.
+     * The hash code of a bean never changes: generated ids are assigned by
+     * persist(), before the bean is added to any collection, while saving
+     * via merge() leaves the given bean without id and assigns it to the
+     * managed copy only. Beans must not be put in hash-based collections
+     * before being saved and then expected to be found there afterwards.
+     *
+     * @return a hash code consistent with equals()
+     */
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, getExcludeFields());
+        Object identifier = getIdentifier(this);
+        return identifier == null
+                ? System.identityHashCode(this) : identifier.hashCode();
     }
 
     @Override
@@ -17,8 +17,6 @@ package org.syncope.core.persistence.beans;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.MappedSuperclass;
 import org.apache.commons.jexl2.Expression;
@@ -36,7 +34,6 @@ import org.syncope.core.util.ApplicationContextManager;
 public abstract class AbstractDerAttr extends AbstractBaseBean {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
     protected Long id;
 
     public Long getId() {
@@ -21,6 +21,8 @@ import java.text.DecimalFormat;
 import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Enumerated;
@@ -55,6 +57,12 @@ public abstract class AbstractSchema extends AbstractBaseBean {
                 }
             };
 
+    /**
+     * Validator constructors, resolved once per validator class.
+     */
+    private static final ConcurrentMap<String, Constructor> VALIDATORS =
+            new ConcurrentHashMap<String, Constructor>();
+
     @Id
     private String name;
 
@@ -167,9 +175,14 @@ public abstract class AbstractSchema extends AbstractBaseBean {
 
         if (getValidatorClass() != null && getValidatorClass().length() > 0) {
             try {
-                Constructor validatorConstructor =
-                        Class.forName(getValidatorClass()).getConstructor(
-                        new Class[]{getClass().getSuperclass()});
+                String key = getValidatorClass() + "/" + getClass().getName();
+                Constructor validatorConstructor = VALIDATORS.get(key);
+                if (validatorConstructor == null) {
+                    validatorConstructor =
+                            Class.forName(getValidatorClass()).getConstructor(
+                            new Class[]{getClass().getSuperclass()});
+                    VALIDATORS.putIfAbsent(key, validatorConstructor);
+                }
                 validator =
                         (AbstractValidator) validatorConstructor.newInstance(
                         this);
@@ -33,6 +33,8 @@ import javax.validation.Valid;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Cascade;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
 import org.hibernate.validator.constraints.Range;
 import org.syncope.core.persistence.beans.role.SyncopeRole;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
@@ -69,15 +71,19 @@ public class TargetResource extends AbstractBaseBean {
     private ConnectorInstance connector;
 
     /**
-     * Users associated to this resource.
+     * Users associated to this resource: extra lazy, as they can be many; use
+     * the paged finders of UserDAO to read them.
      */
-    @ManyToMany(fetch = FetchType.EAGER, mappedBy = "targetResources")
+    @ManyToMany(fetch = FetchType.LAZY, mappedBy = "targetResources")
+    @LazyCollection(LazyCollectionOption.EXTRA)
     private Set<SyncopeUser> users;
 
     /**
-     * Roles associated to this resource.
+     * Roles associated to this resource: extra lazy, as they can be many; use
+     * the paged finders of RoleDAO to read them.
      */
-    @ManyToMany(fetch = FetchType.EAGER, mappedBy = "targetResources")
+    @ManyToMany(fetch = FetchType.LAZY, mappedBy = "targetResources")
+    @LazyCollection(LazyCollectionOption.EXTRA)
     private Set<SyncopeRole> roles;
 
     /**
@@ -24,6 +24,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.validation.Valid;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cascade;
 import org.syncope.core.persistence.beans.AbstractAttributable;
 import org.syncope.core.persistence.beans.AbstractAttr;
@@ -45,6 +46,7 @@ public class MAttr extends AbstractAttr {
     @OneToMany(cascade = CascadeType.MERGE, mappedBy = "attribute")
     @Cascade(org.hibernate.annotations.CascadeType.DELETE_ORPHAN)
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<MAttrValue> values;
 
     @OneToOne(cascade = CascadeType.ALL, mappedBy = "attribute")
@@ -26,6 +26,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import javax.validation.Valid;
+import org.hibernate.annotations.BatchSize;
 import org.syncope.core.persistence.beans.AbstractAttributable;
 import org.syncope.core.persistence.beans.AbstractAttr;
 import org.syncope.core.persistence.beans.AbstractDerAttr;
@@ -52,10 +53,12 @@ public class Membership extends AbstractAttributable {
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<MAttr> attributes;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<MDerAttr> derivedAttributes;
 
     public Membership() {
@@ -30,10 +30,12 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import javax.validation.Valid;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.syncope.core.persistence.beans.AbstractAttributable;
 import org.syncope.core.persistence.beans.AbstractAttr;
+import org.syncope.core.persistence.beans.AbstractBaseBean;
 import org.syncope.core.persistence.beans.AbstractDerAttr;
 import org.syncope.core.persistence.beans.Entitlement;
 import org.hibernate.validator.constraints.Range;
@@ -45,6 +47,7 @@ import org.hibernate.validator.constraints.Range;
     "parent_id"
 }))
 @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+@BatchSize(size = AbstractBaseBean.BATCH_FETCH_SIZE)
 public class SyncopeRole extends AbstractAttributable {
 
     @Id
@@ -57,14 +60,17 @@ public class SyncopeRole extends AbstractAttributable {
     private SyncopeRole parent;
 
     @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private Set<Entitlement> entitlements;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<RAttr> attributes;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<RDerAttr> derivedAttributes;
 
     @Basic
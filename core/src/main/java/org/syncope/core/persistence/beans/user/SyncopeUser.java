@@ -33,6 +33,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.Valid;
 import org.apache.commons.lang.RandomStringUtils;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.syncope.core.persistence.beans.AbstractAttributable;
@@ -53,14 +54,17 @@ public class SyncopeUser extends AbstractAttributable {
 
     @OneToMany(cascade = CascadeType.MERGE, mappedBy = "syncopeUser")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<Membership> memberships;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<UAttr> attributes;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "owner")
     @Valid
+    @BatchSize(size = BATCH_FETCH_SIZE)
     private List<UDerAttr> derivedAttributes;
 
     @Column(nullable = true)
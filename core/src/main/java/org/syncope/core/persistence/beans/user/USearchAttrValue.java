@@ -0,0 +1,135 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.beans.user;
+
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.syncope.core.persistence.beans.AbstractAttrValue;
+import org.syncope.core.persistence.beans.AbstractBaseBean;
+
+/**
+ * Denormalized copy of a user attribute value, used by user search.
+ * There is exactly one row for each UAttrValue or UAttrUniqueValue, sharing
+ * the same id (both are generated from SEQ_UAttrValue).
+ */
+@Entity
+public class USearchAttrValue extends AbstractBaseBean {
+
+    /**
+     * Id of the indexed UAttrValue or UAttrUniqueValue.
+     */
+    @Id
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "schema_name", nullable = false)
+    private String schemaName;
+
+    private String stringValue;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date dateValue;
+
+    private Integer booleanValue;
+
+    private Long longValue;
+
+    private Double doubleValue;
+
+    public USearchAttrValue() {
+        super();
+    }
+
+    public USearchAttrValue(final Long userId, final String schemaName,
+            final AbstractAttrValue attrValue) {
+
+        super();
+
+        this.id = attrValue.getId();
+        this.userId = userId;
+        this.schemaName = schemaName;
+        copyValue(attrValue);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    private void copyValue(final AbstractAttrValue attrValue) {
+        stringValue = attrValue.getStringValue();
+        dateValue = attrValue.getDateValue();
+        booleanValue = attrValue.getBooleanValue() == null
+                ? null
+                : getBooleanAsInteger(attrValue.getBooleanValue());
+        longValue = attrValue.getLongValue();
+        doubleValue = attrValue.getDoubleValue();
+    }
+
+    public String getStringValue() {
+        return stringValue;
+    }
+
+    public Date getDateValue() {
+        return dateValue;
+    }
+
+    public Boolean getBooleanValue() {
+        return booleanValue == null ? null : isBooleanAsInteger(booleanValue);
+    }
+
+    public Long getLongValue() {
+        return longValue;
+    }
+
+    public Double getDoubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * Compare owner, schema and value columns, unlike equals() that only
+     * looks at ids; dates are compared by time, as the ones read from the
+     * database are timestamps.
+     *
+     * @param other index entry for the same attribute value
+     * @return whether the given entry has the same content as this one
+     */
+    public boolean hasSameContent(final USearchAttrValue other) {
+        return new EqualsBuilder().
+                append(userId, other.userId).
+                append(schemaName, other.schemaName).
+                append(stringValue, other.stringValue).
+                append(dateValue == null ? null : dateValue.getTime(),
+                other.dateValue == null ? null : other.dateValue.getTime()).
+                append(booleanValue, other.booleanValue).
+                append(longValue, other.longValue).
+                append(doubleValue, other.doubleValue).
+                isEquals();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.beans.user;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import org.syncope.core.persistence.beans.AbstractBaseBean;
+
+/**
+ * Trigram (sequence of three characters) of a string value in the user
+ * search index, used to narrow LIKE searches with leading wildcards.
+ * There is one row for each distinct trigram of each USearchAttrValue.
+ */
+@Entity
+public class USearchTrigram extends AbstractBaseBean {
+
+    /**
+     * Trigram length.
+     */
+    public static final int LENGTH = 3;
+
+    @Id
+    private Long id;
+
+    /**
+     * Id of the USearchAttrValue the trigram was extracted from.
+     */
+    @Column(name = "value_id", nullable = false)
+    private Long valueId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "schema_name", nullable = false)
+    private String schemaName;
+
+    @Column(nullable = false, length = LENGTH)
+    private String trigram;
+
+    public USearchTrigram() {
+        super();
+    }
+
+    public USearchTrigram(final USearchAttrValue value, final String trigram) {
+        this(value.getId(), value.getUserId(), value.getSchemaName(), trigram);
+    }
+
+    public USearchTrigram(final Long valueId, final Long userId,
+            final String schemaName, final String trigram) {
+
+        super();
+
+        this.valueId = valueId;
+        this.userId = userId;
+        this.schemaName = schemaName;
+        this.trigram = trigram;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getValueId() {
+        return valueId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTrigram() {
+        return trigram;
+    }
+
+    /**
+     * @param value string value
+     * @return distinct trigrams of the given value, in order of appearance
+     */
+    public static Set<String> getTrigrams(final String value) {
+        Set<String> result = new LinkedHashSet<String>();
+        if (value != null) {
+            for (int i = 0; i + LENGTH <= value.length(); i++) {
+                result.add(value.substring(i, i + LENGTH));
+            }
+        }
+
+        return result;
+    }
+}
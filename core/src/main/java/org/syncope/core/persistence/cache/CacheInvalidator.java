@@ -0,0 +1,550 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.Status;
+import net.sf.ehcache.event.CacheEventListener;
+import net.sf.ehcache.event.CacheManagerEventListener;
+import org.hibernate.cache.StandardQueryCache;
+import org.hibernate.cache.UpdateTimestampsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the caches of a cache manager consistent with the ones of the other
+ * nodes of the cluster, without copying cached values around: local updates
+ * and removals are collected into batches, periodically sent through the
+ * configured channel; the other nodes then remove the changed entries.
+ *
+ * Hibernate query caches are not invalidated this way: update timestamps
+ * are propagated instead, so that each node discards the cached query
+ * results involving changed tables by itself.
+ *
+ * When a batch is lost (failed send, dropped datagram), receivers find out
+ * from the versions carried by the next batch or heartbeat, and clear the
+ * caches whose changes went missing.
+ */
+public class CacheInvalidator implements CacheManagerEventListener {
+
+    /**
+     * Class name of the InvalidationChannel implementation.
+     */
+    public static final String CHANNEL = "channel";
+
+    /**
+     * Milliseconds between two batches.
+     */
+    public static final String FLUSH_INTERVAL_MILLIS = "flushIntervalMillis";
+
+    /**
+     * Number of changes causing a batch to be sent immediately.
+     */
+    public static final String MAX_BATCH_SIZE = "maxBatchSize";
+
+    /**
+     * Milliseconds between two empty batches, sent when there are no
+     * changes so that receivers can detect lost batches anyway.
+     */
+    public static final String HEARTBEAT_INTERVAL_MILLIS =
+            "heartbeatIntervalMillis";
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CacheInvalidator.class);
+
+    private final CacheManager cacheManager;
+
+    private final Properties properties;
+
+    private final String nodeId;
+
+    private final long flushIntervalMillis;
+
+    private final int maxBatchSize;
+
+    private final long heartbeatIntervalMillis;
+
+    private final CacheEventListener listener;
+
+    /**
+     * Set while applying changes received by other nodes, which must not
+     * be sent back.
+     */
+    private final ThreadLocal<Boolean> receiving;
+
+    /**
+     * Sequence number of the last batch received, by sender.
+     */
+    private final Map<String, Long> lastSequences;
+
+    /**
+     * Latest change versions received, by cache, by sender.
+     */
+    private final Map<String, Map<String, Long>> receivedVersions;
+
+    /**
+     * Change counters of local caches.
+     */
+    private final Map<String, Long> versions;
+
+    /**
+     * Keeps batches from being sent out of order.
+     */
+    private final Object sendLock;
+
+    private InvalidationChannel channel;
+
+    private ScheduledExecutorService flusher;
+
+    private long sequence;
+
+    private InvalidationBatch batch;
+
+    private long lastSentMillis;
+
+    private Status status;
+
+    public CacheInvalidator(final CacheManager cacheManager,
+            final Properties properties) {
+
+        this.cacheManager = cacheManager;
+        this.properties = properties == null ? new Properties() : properties;
+
+        nodeId = UUID.randomUUID().toString();
+        flushIntervalMillis = Long.valueOf(this.properties.getProperty(
+                FLUSH_INTERVAL_MILLIS, "100"));
+        maxBatchSize = Integer.valueOf(this.properties.getProperty(
+                MAX_BATCH_SIZE, "1000"));
+        heartbeatIntervalMillis = Long.valueOf(this.properties.getProperty(
+                HEARTBEAT_INTERVAL_MILLIS, "1000"));
+
+        listener = new InvalidationListener();
+        receiving = new ThreadLocal<Boolean>();
+        lastSequences = new ConcurrentHashMap<String, Long>();
+        receivedVersions = new HashMap<String, Map<String, Long>>();
+        versions = new HashMap<String, Long>();
+        sendLock = new Object();
+
+        batch = new InvalidationBatch(nodeId, sequence, versions);
+        status = Status.STATUS_UNINITIALISED;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void init()
+            throws CacheException {
+
+        String channelClassName = properties.getProperty(CHANNEL,
+                MulticastInvalidationChannel.class.getName());
+        try {
+            channel = (InvalidationChannel) Class.forName(channelClassName).
+                    newInstance();
+        } catch (Exception e) {
+            throw new CacheException("Could not instantiate "
+                    + channelClassName, e);
+        }
+        channel.open(properties, this);
+
+        for (String cacheName : cacheManager.getCacheNames()) {
+            notifyCacheAdded(cacheName);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "CacheInvalidator-" + nodeId);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        status = Status.STATUS_ALIVE;
+    }
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public void dispose()
+            throws CacheException {
+
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+
+        if (channel != null) {
+            channel.close();
+        }
+
+        status = Status.STATUS_SHUTDOWN;
+    }
+
+    @Override
+    public void notifyCacheAdded(final String cacheName) {
+        Ehcache cache = cacheManager.getEhcache(cacheName);
+        if (cache != null) {
+            cache.getCacheEventNotificationService().registerListener(
+                    listener);
+        }
+    }
+
+    @Override
+    public void notifyCacheRemoved(final String cacheName) {
+        // nothing to do: listeners go away with their cache
+    }
+
+    private static boolean isQueryCache(final String cacheName) {
+        return cacheName.endsWith(StandardQueryCache.class.getName());
+    }
+
+    private static boolean isUpdateTimestampsCache(final String cacheName) {
+        return cacheName.endsWith(UpdateTimestampsCache.class.getName());
+    }
+
+    /**
+     * To be called while holding the lock on this.
+     *
+     * @param cacheName local cache
+     * @return version of the new change to the given cache
+     */
+    private long nextVersion(final String cacheName) {
+        Long version = versions.get(cacheName);
+        version = version == null ? 1L : version + 1;
+        versions.put(cacheName, version);
+
+        return version;
+    }
+
+    private void changed(final Ehcache cache, final Element element,
+            final boolean removed) {
+
+        if (Boolean.TRUE.equals(receiving.get())
+                || isQueryCache(cache.getName())) {
+
+            return;
+        }
+
+        int size;
+        synchronized (this) {
+            long version = nextVersion(cache.getName());
+            if (!(element.getObjectKey() instanceof Serializable)) {
+                batch.clear(cache.getName(), version);
+            } else if (!removed && isUpdateTimestampsCache(cache.getName())
+                    && element.getObjectValue() instanceof Serializable) {
+
+                batch.setUpdateTimestamp(cache.getName(),
+                        (Serializable) element.getObjectKey(),
+                        (Serializable) element.getObjectValue(),
+                        version);
+            } else {
+                batch.invalidate(cache.getName(),
+                        (Serializable) element.getObjectKey(), version);
+            }
+
+            size = batch.size();
+        }
+
+        if (size >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    private void cleared(final Ehcache cache) {
+        if (Boolean.TRUE.equals(receiving.get())
+                || isQueryCache(cache.getName())) {
+
+            return;
+        }
+
+        int size;
+        synchronized (this) {
+            batch.clear(cache.getName(), nextVersion(cache.getName()));
+            size = batch.size();
+        }
+
+        if (size >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Send local changes collected so far to the other nodes; when there
+     * are none, send an empty batch once per heartbeat interval.
+     */
+    public void flush() {
+        synchronized (sendLock) {
+            InvalidationBatch toBeSent;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (batch.isEmpty() && (versions.isEmpty()
+                        || now - lastSentMillis < heartbeatIntervalMillis)) {
+
+                    return;
+                }
+
+                batch.setVersions(versions);
+                toBeSent = batch;
+                batch = new InvalidationBatch(nodeId, ++sequence, versions);
+                lastSentMillis = now;
+            }
+
+            try {
+                channel.send(toBeSent);
+            } catch (Throwable t) {
+                // versions were incremented anyway: receivers will clear
+                // the caches involved when getting the next batch
+                LOG.error("While sending invalidation batch "
+                        + toBeSent.getSequence(), t);
+            }
+        }
+    }
+
+    private static boolean isNew(final Map<String, Long> applied,
+            final String cacheName, final Long version) {
+
+        Long last = applied.get(cacheName);
+        return last == null || version == null || version > last;
+    }
+
+    private void clearRegion(final String cacheName) {
+        if (isUpdateTimestampsCache(cacheName)) {
+            // a missing update timestamp makes cached query results look
+            // up to date: query caches are to be cleared instead
+            for (String name : cacheManager.getCacheNames()) {
+                if (isQueryCache(name)) {
+                    cacheManager.getEhcache(name).removeAll();
+                }
+            }
+        } else {
+            Ehcache cache = cacheManager.getEhcache(cacheName);
+            if (cache != null) {
+                cache.removeAll();
+            }
+        }
+    }
+
+    /**
+     * Apply changes made by another node to local caches. Changes already
+     * received from the same node are ignored; caches whose changes were
+     * lost in between are cleared.
+     *
+     * @param received changes made by another node
+     */
+    public void receive(final InvalidationBatch received) {
+        if (nodeId.equals(received.getSenderId())) {
+            return;
+        }
+
+        Long lastSequence = lastSequences.put(received.getSenderId(),
+                received.getSequence());
+        if (lastSequence != null
+                && received.getSequence() != lastSequence + 1) {
+
+            LOG.debug("Invalidation batch {} from {} received after {}",
+                    new Object[]{received.getSequence(),
+                        received.getSenderId(), lastSequence});
+        }
+
+        // versions already received from the sender, before this batch
+        Map<String, Long> applied;
+        Set<String> lost = new HashSet<String>();
+        synchronized (receivedVersions) {
+            Map<String, Long> latest =
+                    receivedVersions.get(received.getSenderId());
+            if (latest == null) {
+                // first batch from this node: nothing to compare with
+                latest = new HashMap<String, Long>();
+                receivedVersions.put(received.getSenderId(), latest);
+            } else {
+                for (Map.Entry<String, Long> base :
+                        received.getBaseVersions().entrySet()) {
+
+                    Long last = latest.get(base.getKey());
+                    if (base.getValue() > (last == null ? 0 : last)) {
+                        lost.add(base.getKey());
+                    }
+                }
+            }
+
+            applied = new HashMap<String, Long>(latest);
+            for (Map.Entry<String, Long> version :
+                    received.getVersions().entrySet()) {
+
+                if (isNew(latest, version.getKey(), version.getValue())) {
+                    latest.put(version.getKey(), version.getValue());
+                }
+            }
+        }
+
+        receiving.set(Boolean.TRUE);
+        try {
+            for (String cacheName : lost) {
+                LOG.warn("Changes to " + cacheName + " from "
+                        + received.getSenderId() + " were lost, clearing");
+                clearRegion(cacheName);
+            }
+
+            for (Map.Entry<String, Long> cleared :
+                    received.getClearedCaches().entrySet()) {
+
+                if (!lost.contains(cleared.getKey())
+                        && isNew(applied, cleared.getKey(),
+                        cleared.getValue())) {
+
+                    clearRegion(cleared.getKey());
+                }
+            }
+
+            Ehcache cache;
+            for (Map.Entry<String, Map<Serializable, Long>> entry :
+                    received.getInvalidatedKeys().entrySet()) {
+
+                cache = cacheManager.getEhcache(entry.getKey());
+                if (cache != null && !lost.contains(entry.getKey())) {
+                    for (Map.Entry<Serializable, Long> key :
+                            entry.getValue().entrySet()) {
+
+                        if (isNew(applied, entry.getKey(), key.getValue())) {
+                            cache.remove(key.getKey());
+                        }
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Map<Serializable, Serializable>> entry :
+                    received.getUpdateTimestamps().entrySet()) {
+
+                Map<Serializable, Long> timestampVersions =
+                        received.getTimestampVersions().get(entry.getKey());
+
+                cache = cacheManager.getEhcache(entry.getKey());
+                if (cache != null) {
+                    for (Map.Entry<Serializable, Serializable> timestamp :
+                            entry.getValue().entrySet()) {
+
+                        if (isNew(applied, entry.getKey(),
+                                timestampVersions.get(timestamp.getKey()))) {
+
+                            cache.put(new Element(timestamp.getKey(),
+                                    timestamp.getValue()));
+                        }
+                    }
+                }
+            }
+        } finally {
+            receiving.remove();
+        }
+    }
+
+    /**
+     * Collects changes to local caches.
+     */
+    private class InvalidationListener implements CacheEventListener {
+
+        @Override
+        public void notifyElementPut(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            // new entries come from database loads, as before with
+            // replicatePuts=false; update timestamps are always propagated
+            if (isUpdateTimestampsCache(cache.getName())) {
+                changed(cache, element, false);
+            }
+        }
+
+        @Override
+        public void notifyElementUpdated(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            changed(cache, element, false);
+        }
+
+        @Override
+        public void notifyElementRemoved(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            changed(cache, element, true);
+        }
+
+        @Override
+        public void notifyElementExpired(final Ehcache cache,
+                final Element element) {
+
+            // local only
+        }
+
+        @Override
+        public void notifyElementEvicted(final Ehcache cache,
+                final Element element) {
+
+            // local only
+        }
+
+        @Override
+        public void notifyRemoveAll(final Ehcache cache) {
+            cleared(cache);
+        }
+
+        @Override
+        public void dispose() {
+            // nothing to do: the channel is owned by CacheInvalidator
+        }
+
+        @Override
+        public Object clone()
+                throws CloneNotSupportedException {
+
+            throw new CloneNotSupportedException(
+                    "Bound to " + CacheInvalidator.this);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.util.Properties;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.event.CacheManagerEventListener;
+import net.sf.ehcache.event.CacheManagerEventListenerFactory;
+
+/**
+ * To be configured as cacheManagerEventListenerFactory in ehcache.xml.
+ */
+public class CacheInvalidatorFactory
+        extends CacheManagerEventListenerFactory {
+
+    @Override
+    public CacheManagerEventListener createCacheManagerEventListener(
+            final CacheManager cacheManager, final Properties properties) {
+
+        return new CacheInvalidator(cacheManager, properties);
+    }
+}
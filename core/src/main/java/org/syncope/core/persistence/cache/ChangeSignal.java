@@ -0,0 +1,142 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+/**
+ * Tells the other nodes of the cluster that some state they keep in memory
+ * is stale, via the same channel carrying Hibernate cache invalidations:
+ * each signal is sent as the clearing of an empty cache, dedicated to this
+ * purpose.
+ *
+ * Signals are delivered asynchronously, and lost ones are detected as any
+ * other lost invalidation: either way the listener is run on receiving
+ * nodes, but not on the sending one.
+ */
+public class ChangeSignal {
+
+    private final Ehcache cache;
+
+    private final Runnable listener;
+
+    /**
+     * Set while sending a signal, which must not be received back.
+     */
+    private final ThreadLocal<Boolean> sending;
+
+    /**
+     * @param cacheManager cache manager, with a CacheInvalidator attached
+     * @param name name of the cache dedicated to this signal, to be the
+     * same on all nodes
+     * @param listener to be run when receiving a signal from another node
+     */
+    public ChangeSignal(final CacheManager cacheManager, final String name,
+            final Runnable listener) {
+
+        synchronized (cacheManager) {
+            if (cacheManager.getEhcache(name) == null) {
+                cacheManager.addCache(name);
+            }
+            cache = cacheManager.getEhcache(name);
+        }
+
+        this.listener = listener;
+        sending = new ThreadLocal<Boolean>();
+
+        cache.getCacheEventNotificationService().registerListener(
+                new SignalListener());
+    }
+
+    /**
+     * Tell the other nodes that their state is stale.
+     */
+    public void send() {
+        sending.set(Boolean.TRUE);
+        try {
+            cache.removeAll();
+        } finally {
+            sending.remove();
+        }
+    }
+
+    /**
+     * Runs the listener when the cache is cleared by CacheInvalidator.
+     */
+    private class SignalListener implements CacheEventListener {
+
+        @Override
+        public void notifyElementPut(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            // the cache is always empty
+        }
+
+        @Override
+        public void notifyElementUpdated(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            // the cache is always empty
+        }
+
+        @Override
+        public void notifyElementRemoved(final Ehcache cache,
+                final Element element)
+                throws CacheException {
+
+            // the cache is always empty
+        }
+
+        @Override
+        public void notifyElementExpired(final Ehcache cache,
+                final Element element) {
+
+            // the cache is always empty
+        }
+
+        @Override
+        public void notifyElementEvicted(final Ehcache cache,
+                final Element element) {
+
+            // the cache is always empty
+        }
+
+        @Override
+        public void notifyRemoveAll(final Ehcache cache) {
+            if (!Boolean.TRUE.equals(sending.get())) {
+                listener.run();
+            }
+        }
+
+        @Override
+        public void dispose() {
+            // nothing to do
+        }
+
+        @Override
+        public Object clone()
+                throws CloneNotSupportedException {
+
+            throw new CloneNotSupportedException(
+                    "Bound to " + ChangeSignal.this);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes to local caches, to be applied by the other nodes of the cluster:
+ * keys to be removed, whole caches to be cleared and new values of the
+ * Hibernate update timestamps, which query caches are validated against.
+ *
+ * Each change carries its version, i.e. the value of the sender's change
+ * counter for that cache; each batch also carries the counters of all the
+ * caches changed by the sender so far, as of the previous batch and as of
+ * this one. Receivers can then tell duplicate changes, and detect the ones
+ * lost with a batch that never reached them.
+ */
+public class InvalidationBatch implements Serializable {
+
+    private static final long serialVersionUID = -6386046146434542592L;
+
+    private final String senderId;
+
+    private final long sequence;
+
+    /**
+     * Change counters by cache, as of the previous batch.
+     */
+    private final Map<String, Long> baseVersions;
+
+    /**
+     * Change counters by cache, as of this batch.
+     */
+    private Map<String, Long> versions;
+
+    /**
+     * Version of the clear, by cache.
+     */
+    private final Map<String, Long> clearedCaches;
+
+    /**
+     * Version of each removed key, by cache.
+     */
+    private final Map<String, Map<Serializable, Long>> invalidatedKeys;
+
+    /**
+     * Latest update timestamps by table (query space), by cache.
+     */
+    private final Map<String, Map<Serializable, Serializable>>
+            updateTimestamps;
+
+    /**
+     * Version of each update timestamp, by cache.
+     */
+    private final Map<String, Map<Serializable, Long>> timestampVersions;
+
+    public InvalidationBatch(final String senderId, final long sequence,
+            final Map<String, Long> baseVersions) {
+
+        this.senderId = senderId;
+        this.sequence = sequence;
+        this.baseVersions = new HashMap<String, Long>(baseVersions);
+        versions = this.baseVersions;
+
+        clearedCaches = new HashMap<String, Long>();
+        invalidatedKeys = new HashMap<String, Map<Serializable, Long>>();
+        updateTimestamps =
+                new HashMap<String, Map<Serializable, Serializable>>();
+        timestampVersions = new HashMap<String, Map<Serializable, Long>>();
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Map<String, Long> getBaseVersions() {
+        return baseVersions;
+    }
+
+    public Map<String, Long> getVersions() {
+        return versions;
+    }
+
+    public void setVersions(final Map<String, Long> versions) {
+        this.versions = new HashMap<String, Long>(versions);
+    }
+
+    private static <K> void put(final Map<String, Map<K, Long>> map,
+            final String cacheName, final K key, final Long version) {
+
+        if (!map.containsKey(cacheName)) {
+            map.put(cacheName, new LinkedHashMap<K, Long>());
+        }
+        map.get(cacheName).put(key, version);
+    }
+
+    public void invalidate(final String cacheName, final Serializable key,
+            final long version) {
+
+        if (clearedCaches.containsKey(cacheName)) {
+            clearedCaches.put(cacheName, version);
+        } else {
+            put(invalidatedKeys, cacheName, key, version);
+        }
+    }
+
+    public void clear(final String cacheName, final long version) {
+        invalidatedKeys.remove(cacheName);
+        clearedCaches.put(cacheName, version);
+    }
+
+    public void setUpdateTimestamp(final String cacheName,
+            final Serializable space, final Serializable timestamp,
+            final long version) {
+
+        if (!updateTimestamps.containsKey(cacheName)) {
+            updateTimestamps.put(cacheName,
+                    new LinkedHashMap<Serializable, Serializable>());
+        }
+        updateTimestamps.get(cacheName).put(space, timestamp);
+        put(timestampVersions, cacheName, space, version);
+    }
+
+    public Map<String, Long> getClearedCaches() {
+        return clearedCaches;
+    }
+
+    public Map<String, Map<Serializable, Long>> getInvalidatedKeys() {
+        return invalidatedKeys;
+    }
+
+    public Map<String, Map<Serializable, Serializable>>
+            getUpdateTimestamps() {
+        return updateTimestamps;
+    }
+
+    public Map<String, Map<Serializable, Long>> getTimestampVersions() {
+        return timestampVersions;
+    }
+
+    /**
+     * @return a batch with the same number and versions as this one, but
+     * clearing every cache changed here, instead of listing the changes
+     */
+    public InvalidationBatch toClearing() {
+        InvalidationBatch result =
+                new InvalidationBatch(senderId, sequence, baseVersions);
+        result.setVersions(versions);
+
+        for (String cacheName : clearedCaches.keySet()) {
+            result.clear(cacheName, versions.get(cacheName));
+        }
+        for (String cacheName : invalidatedKeys.keySet()) {
+            result.clear(cacheName, versions.get(cacheName));
+        }
+        for (String cacheName : updateTimestamps.keySet()) {
+            result.clear(cacheName, versions.get(cacheName));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return number of changes in this batch
+     */
+    public int size() {
+        int result = clearedCaches.size();
+        for (Map<Serializable, Long> keys : invalidatedKeys.values()) {
+            result += keys.size();
+        }
+        for (Map<Serializable, Serializable> timestamps :
+                updateTimestamps.values()) {
+
+            result += timestamps.size();
+        }
+
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
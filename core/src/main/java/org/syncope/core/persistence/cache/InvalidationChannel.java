@@ -0,0 +1,47 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.util.Properties;
+
+/**
+ * Transport of invalidation batches among the nodes of a cluster.
+ * Implementations are instantiated by name via their default constructor,
+ * and configured by the properties given to CacheInvalidatorFactory.
+ */
+public interface InvalidationChannel {
+
+    /**
+     * Join the cluster: batches sent by other nodes are to be given to the
+     * invalidator from now on.
+     *
+     * @param properties channel configuration
+     * @param invalidator local node
+     */
+    void open(Properties properties, CacheInvalidator invalidator);
+
+    /**
+     * Send the given batch to all the other nodes of the cluster; delivery
+     * is not guaranteed, lost batches are detected by receivers.
+     *
+     * @param batch changes to local caches
+     */
+    void send(InvalidationBatch batch);
+
+    /**
+     * Leave the cluster.
+     */
+    void close();
+}
@@ -0,0 +1,73 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Channel among nodes living in the same JVM, each with its own cache
+ * manager: suitable for single node deployments and for testing clusters
+ * on a single machine.
+ */
+public class LoopbackInvalidationChannel implements InvalidationChannel {
+
+    /**
+     * Name of the cluster to be joined.
+     */
+    public static final String CLUSTER = "cluster";
+
+    private static final String DEFAULT_CLUSTER = "syncope";
+
+    private static final ConcurrentMap<String, List<CacheInvalidator>>
+            CLUSTERS = new ConcurrentHashMap<String, List<CacheInvalidator>>();
+
+    private List<CacheInvalidator> members;
+
+    private CacheInvalidator invalidator;
+
+    @Override
+    public void open(final Properties properties,
+            final CacheInvalidator invalidator) {
+
+        String cluster = properties.getProperty(CLUSTER, DEFAULT_CLUSTER);
+
+        CLUSTERS.putIfAbsent(cluster,
+                new CopyOnWriteArrayList<CacheInvalidator>());
+        members = CLUSTERS.get(cluster);
+
+        this.invalidator = invalidator;
+        members.add(invalidator);
+    }
+
+    @Override
+    public void send(final InvalidationBatch batch) {
+        for (CacheInvalidator member : members) {
+            if (member != invalidator) {
+                member.receive(batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (members != null) {
+            members.remove(invalidator);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.util.Properties;
+import net.sf.ehcache.CacheException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends batches to the other nodes as UDP multicast datagrams, one batch
+ * per datagram. Batches too large for a datagram are sent as clears of the
+ * caches involved; lost datagrams are detected by CacheInvalidator.
+ */
+public class MulticastInvalidationChannel implements InvalidationChannel {
+
+    /**
+     * Multicast group address.
+     */
+    public static final String MULTICAST_GROUP_ADDRESS =
+            "multicastGroupAddress";
+
+    /**
+     * Multicast group port.
+     */
+    public static final String MULTICAST_GROUP_PORT = "multicastGroupPort";
+
+    /**
+     * Number of hops datagrams are allowed to go through.
+     */
+    public static final String TIME_TO_LIVE = "timeToLive";
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(MulticastInvalidationChannel.class);
+
+    /**
+     * Largest payload of an UDP datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * Packages whose classes may be found in received batches: cache keys
+     * are made of Hibernate and JDK types.
+     */
+    private static final String[] ALLOWED_PACKAGES = new String[]{
+        "java.", "org.hibernate.", "org.syncope.", "net.sf.ehcache."};
+
+    private InetAddress group;
+
+    private int port;
+
+    private MulticastSocket socket;
+
+    private Thread receiver;
+
+    private volatile boolean open;
+
+    @Override
+    public void open(final Properties properties,
+            final CacheInvalidator invalidator) {
+
+        try {
+            group = InetAddress.getByName(properties.getProperty(
+                    MULTICAST_GROUP_ADDRESS, "230.0.0.1"));
+            port = Integer.valueOf(properties.getProperty(
+                    MULTICAST_GROUP_PORT, "4446"));
+
+            socket = new MulticastSocket(port);
+            socket.setTimeToLive(Integer.valueOf(properties.getProperty(
+                    TIME_TO_LIVE, "1")));
+            socket.joinGroup(group);
+        } catch (IOException e) {
+            throw new CacheException("Could not join multicast group", e);
+        }
+
+        open = true;
+        receiver = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                receive(invalidator);
+            }
+        }, "MulticastInvalidationChannel-" + invalidator.getNodeId());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receive(final CacheInvalidator invalidator) {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (open) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+
+                InvalidationBatch batch = (InvalidationBatch) new BatchInput(
+                        new ByteArrayInputStream(packet.getData(),
+                        packet.getOffset(), packet.getLength())).readObject();
+                invalidator.receive(batch);
+            } catch (Exception e) {
+                if (open) {
+                    LOG.error("While receiving invalidation batch", e);
+                }
+            }
+        }
+    }
+
+    private static byte[] serialize(final InvalidationBatch batch)
+            throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(batch);
+        output.close();
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void send(final InvalidationBatch batch) {
+        try {
+            byte[] data = serialize(batch);
+            if (data.length > MAX_DATAGRAM_SIZE) {
+                LOG.debug("Batch {} too large, sending as clears",
+                        batch.getSequence());
+                data = serialize(batch.toClearing());
+            }
+
+            socket.send(new DatagramPacket(data, data.length, group, port));
+        } catch (IOException e) {
+            throw new CacheException("Could not send invalidation batch "
+                    + batch.getSequence(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        if (socket != null) {
+            try {
+                socket.leaveGroup(group);
+            } catch (IOException e) {
+                LOG.warn("While leaving multicast group", e);
+            }
+            socket.close();
+        }
+    }
+
+    /**
+     * Refuses to instantiate classes not expected in a batch.
+     */
+    private static class BatchInput extends ObjectInputStream {
+
+        public BatchInput(final InputStream input)
+                throws IOException {
+
+            super(input);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+
+            // element type for arrays, e.g. [Ljava.lang.Long; or [B
+            String name = desc.getName().replaceFirst("^\\[+L?", "");
+
+            boolean allowed = name.length() == 1;
+            for (int i = 0; i < ALLOWED_PACKAGES.length && !allowed; i++) {
+                allowed = name.startsWith(ALLOWED_PACKAGES[i]);
+            }
+            if (!allowed) {
+                throw new IOException("Unexpected class " + desc.getName());
+            }
+
+            return super.resolveClass(desc);
+        }
+    }
+}
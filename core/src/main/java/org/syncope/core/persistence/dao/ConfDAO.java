@@ -25,6 +25,15 @@ public interface ConfDAO extends DAO {
 
     List<SyncopeConf> findAll();
 
+    /**
+     * Configuration loaded once, then kept up to date by save() and
+     * delete() as soon as their transaction commits: to be preferred over
+     * find() for reading configuration values.
+     *
+     * @return the current configuration snapshot
+     */
+    ConfSnapshot getSnapshot();
+
     SyncopeConf save(SyncopeConf syncopeConfiguration)
             throws InvalidEntityException;
 
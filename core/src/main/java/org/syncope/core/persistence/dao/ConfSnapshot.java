@@ -0,0 +1,79 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of all configuration keys, as of the last committed
+ * change: lookups neither hit the database nor take locks.
+ */
+public final class ConfSnapshot {
+
+    private final Map<String, String> values;
+
+    public ConfSnapshot(final Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(
+                new HashMap<String, String>(values));
+    }
+
+    /**
+     * @param key configuration key
+     * @param value new value, null for removing the key
+     * @return a snapshot like this one, but for the given key
+     */
+    public ConfSnapshot with(final String key, final String value) {
+        Map<String, String> newValues = new HashMap<String, String>(values);
+        if (value == null) {
+            newValues.remove(key);
+        } else {
+            newValues.put(key, value);
+        }
+
+        return new ConfSnapshot(newValues);
+    }
+
+    public boolean contains(final String key) {
+        return values.containsKey(key);
+    }
+
+    public String getString(final String key)
+            throws MissingConfKeyException {
+
+        String result = values.get(key);
+        if (result == null) {
+            throw new MissingConfKeyException(key);
+        }
+
+        return result;
+    }
+
+    public String getString(final String key, final String defaultValue) {
+        String result = values.get(key);
+        return result == null ? defaultValue : result;
+    }
+
+    public int getInt(final String key)
+            throws MissingConfKeyException {
+
+        return Integer.parseInt(getString(key));
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+}
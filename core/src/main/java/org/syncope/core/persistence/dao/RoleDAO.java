@@ -15,6 +15,7 @@
 package org.syncope.core.persistence.dao;
 
 import java.util.List;
+import java.util.Set;
 import org.syncope.core.persistence.beans.membership.Membership;
 import org.syncope.core.persistence.beans.role.SyncopeRole;
 import org.syncope.core.persistence.validation.entity.InvalidEntityException;
@@ -31,6 +32,25 @@ public interface RoleDAO extends DAO {
 
     List<SyncopeRole> findAll();
 
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param resourceName name of the target resource
+     * @param page position of the first result, start from 1
+     * @param itemsPerPage number of results per page
+     * @return roles among adminRoles associated to the given resource,
+     * ordered by id
+     */
+    List<SyncopeRole> findByResource(Set<Long> adminRoles,
+            String resourceName, int page, int itemsPerPage);
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param resourceName name of the target resource
+     * @return number of roles among adminRoles associated to the given
+     * resource
+     */
+    Integer countByResource(Set<Long> adminRoles, String resourceName);
+
     List<Membership> getMemberships(SyncopeRole role);
 
     SyncopeRole save(SyncopeRole syncopeRole)
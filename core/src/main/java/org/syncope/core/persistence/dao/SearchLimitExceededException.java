@@ -0,0 +1,58 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+/**
+ * Thrown when a user search hits one of the limits set by the search
+ * governor.
+ */
+public class SearchLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 4718290417364578613L;
+
+    public enum Limit {
+
+        /**
+         * The search statement took too long.
+         */
+        STATEMENT_TIMEOUT,
+        /**
+         * An unpaged search matched too many users.
+         */
+        MAX_RESULTS,
+        /**
+         * The search condition is nested too deeply.
+         */
+        MAX_DEPTH,
+        /**
+         * The search condition has too many leaves.
+         */
+        MAX_LEAVES
+
+    }
+
+    private final Limit limit;
+
+    public SearchLimitExceededException(final Limit limit,
+            final String message) {
+
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+/**
+ * Number of users, either exact or estimated: in the latter case, an upper
+ * bound is also given when known.
+ */
+public class UserCountEstimate {
+
+    private final int count;
+
+    private final Integer upperBound;
+
+    private final boolean exact;
+
+    public UserCountEstimate(final int count, final Integer upperBound,
+            final boolean exact) {
+
+        this.count = count;
+        this.upperBound = upperBound;
+        this.exact = exact;
+    }
+
+    /**
+     * @param count exact count
+     * @return exact count, as estimate
+     */
+    public static UserCountEstimate getExact(final int count) {
+        return new UserCountEstimate(count, count, true);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return upper bound of the number of users, or null if unknown
+     */
+    public Integer getUpperBound() {
+        return upperBound;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+}
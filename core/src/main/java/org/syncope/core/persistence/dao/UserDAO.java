@@ -14,9 +14,11 @@
  */
 package org.syncope.core.persistence.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.UAttr;
 import org.syncope.core.persistence.beans.user.UAttrValue;
 import org.syncope.core.persistence.validation.entity.InvalidEntityException;
 
@@ -24,8 +26,48 @@ public interface UserDAO extends DAO {
 
     SyncopeUser find(Long id);
 
+    /**
+     * Load the user with the given id, along with the associations needed
+     * by the given projection, by means of a fixed number of queries.
+     *
+     * @param id user id
+     * @param projection parts of user to be returned
+     * @return user found, null otherwise
+     */
+    SyncopeUser find(Long id, UserProjection projection);
+
     SyncopeUser findByWorkflowId(Long workflowId);
 
+    /**
+     * Load the users with the given ids, along with their attributes (and
+     * values), derived attributes and memberships, by means of a fixed number
+     * of queries.
+     *
+     * @param ids user ids
+     * @return users found, in the same order of the given ids
+     */
+    List<SyncopeUser> findByIds(Collection<Long> ids);
+
+    /**
+     * Load the users with the given ids, along with the associations needed
+     * by the given projection.
+     *
+     * @param ids user ids
+     * @param projection parts of users to be returned
+     * @return users found, in the same order of the given ids
+     */
+    List<SyncopeUser> findByIds(Collection<Long> ids,
+            UserProjection projection);
+
+    /**
+     * @param userIds user ids
+     * @param schemaNames schema names
+     * @return attributes (with values) of the given users for the given
+     * schemas
+     */
+    List<UAttr> findAttributes(Collection<Long> userIds,
+            Set<String> schemaNames);
+
     List<SyncopeUser> findByAttrValue(String schemaName, UAttrValue attrValue);
 
     SyncopeUser findByAttrUniqueValue(String schemaName,
@@ -35,8 +77,61 @@ public interface UserDAO extends DAO {
 
     List<SyncopeUser> findAll(Set<Long> adminRoles, int page, int itemsPerPage);
 
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param page position of the first result, start from 1
+     * @param itemsPerPage number of results per page
+     * @param projection parts of users to be returned
+     * @return the list of users visible with the given admin roles
+     */
+    List<SyncopeUser> findAll(Set<Long> adminRoles, int page, int itemsPerPage,
+            UserProjection projection);
+
+    /**
+     * Keyset pagination: unlike page-based findAll(), cost does not depend on
+     * how deep the requested page is.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param lastId id of the last user of the previous page, null for the
+     * first page
+     * @param itemsPerPage number of results per page
+     * @return users with id greater than lastId, ordered by id
+     */
+    List<SyncopeUser> findAllAfter(Set<Long> adminRoles, Long lastId,
+            int itemsPerPage);
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param resourceName name of the target resource
+     * @param page position of the first result, start from 1
+     * @param itemsPerPage number of results per page
+     * @param projection parts of users to be returned
+     * @return users associated to the given resource and visible with the
+     * given admin roles, ordered by id
+     */
+    List<SyncopeUser> findByResource(Set<Long> adminRoles,
+            String resourceName, int page, int itemsPerPage,
+            UserProjection projection);
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param resourceName name of the target resource
+     * @return number of users associated to the given resource and visible
+     * with the given admin roles
+     */
+    Integer countByResource(Set<Long> adminRoles, String resourceName);
+
     Integer count(Set<Long> adminRoles);
 
+    /**
+     * Cheaper than count(): the number of users is estimated from search
+     * statistics, unless small enough to be counted exactly.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @return estimated number of users visible with the given admin roles
+     */
+    UserCountEstimate approximateCount(Set<Long> adminRoles);
+
     SyncopeUser save(SyncopeUser user)
             throws InvalidEntityException;
 
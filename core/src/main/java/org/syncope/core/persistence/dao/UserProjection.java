@@ -0,0 +1,87 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Parts of users to be loaded and returned: attributes and derived
+ * attributes (by schema name), memberships, resources and workflow status.
+ */
+public class UserProjection {
+
+    /**
+     * Whole users.
+     */
+    public static final UserProjection ALL =
+            new UserProjection(null, true, true, true);
+
+    /**
+     * Schema names of attributes and derived attributes, null for all.
+     */
+    private final Set<String> attributes;
+
+    private final boolean memberships;
+
+    private final boolean resources;
+
+    private final boolean status;
+
+    public UserProjection(final Set<String> attributes,
+            final boolean memberships, final boolean resources,
+            final boolean status) {
+
+        this.attributes = attributes == null
+                ? null
+                : Collections.unmodifiableSet(new HashSet<String>(attributes));
+        this.memberships = memberships;
+        this.resources = resources;
+        this.status = status;
+    }
+
+    /**
+     * @return schema names of attributes and derived attributes, null for
+     * all
+     */
+    public Set<String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean isAllAttributes() {
+        return attributes == null;
+    }
+
+    /**
+     * @param schemaName schema name of an attribute or derived attribute
+     * @return whether the given attribute or derived attribute is included
+     */
+    public boolean isIncluded(final String schemaName) {
+        return attributes == null || attributes.contains(schemaName);
+    }
+
+    public boolean isMemberships() {
+        return memberships;
+    }
+
+    public boolean isResources() {
+        return resources;
+    }
+
+    public boolean isStatus() {
+        return status;
+    }
+}
@@ -23,6 +23,17 @@ public interface UserSearchDAO extends DAO {
 
     Integer count(Set<Long> adminRoles, NodeCond searchCondition);
 
+    /**
+     * Cheaper than count(): the number of matching users is estimated from
+     * search statistics, unless small enough to be counted exactly.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param searchCondition the search condition
+     * @return estimated number of users matching the given search condition
+     */
+    UserCountEstimate approximateCount(Set<Long> adminRoles,
+            NodeCond searchCondition);
+
     /**
      * @param adminRoles the set of admin roles owned by the caller
      * @param searchCondition the search condition
@@ -39,4 +50,72 @@ public interface UserSearchDAO extends DAO {
      */
     List<SyncopeUser> search(Set<Long> adminRoles,
             NodeCond searchCondition, int page, int itemsPerPage);
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param searchCondition the search condition
+     * @param page position of the first result, start from 1
+     * @param itemsPerPage number of results per page
+     * @param projection parts of users to be returned
+     * @return the list of users matchin the given search condition
+     */
+    List<SyncopeUser> search(Set<Long> adminRoles,
+            NodeCond searchCondition, int page, int itemsPerPage,
+            UserProjection projection);
+
+    /**
+     * Same as search() with page and size, but also return the total number
+     * of matching users, computed by the same SQL statement when the
+     * underlying database supports window functions.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param searchCondition the search condition
+     * @param page position of the first result, start from 1
+     * @param itemsPerPage number of results per page
+     * @return the page of users matching the given search condition, with
+     * total count
+     */
+    UserSearchResult searchWithCount(Set<Long> adminRoles,
+            NodeCond searchCondition, int page, int itemsPerPage);
+
+    /**
+     * Keyset pagination: unlike page-based search(), cost does not depend on
+     * how deep the requested page is.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param searchCondition the search condition
+     * @param lastId id of the last user of the previous page, null for the
+     * first page
+     * @param itemsPerPage number of results per page
+     * @return the list of users matching the given search condition, with id
+     * greater than lastId and ordered by id
+     */
+    List<SyncopeUser> searchAfter(Set<Long> adminRoles,
+            NodeCond searchCondition, Long lastId, int itemsPerPage);
+
+    /**
+     * @param limit search governor limit
+     * @return how many searches were rejected for exceeding the given limit
+     */
+    long getLimitExceededCount(SearchLimitExceededException.Limit limit);
+
+    /**
+     * @return number of searches whose SQL template was found in plan cache
+     */
+    long getPlanCacheHits();
+
+    /**
+     * @return number of searches whose SQL template had to be compiled
+     */
+    long getPlanCacheMisses();
+
+    /**
+     * @return number of searches and counts served from result cache
+     */
+    long getResultCacheHits();
+
+    /**
+     * @return number of searches and counts not found in result cache
+     */
+    long getResultCacheMisses();
 }
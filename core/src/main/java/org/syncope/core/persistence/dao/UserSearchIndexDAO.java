@@ -0,0 +1,52 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+
+public interface UserSearchIndexDAO extends DAO {
+
+    /**
+     * Align the search index entries of the given user with its current
+     * attribute values, before the current transaction commits.
+     *
+     * @param user user to be indexed
+     */
+    void index(SyncopeUser user);
+
+    /**
+     * Remove all search index entries of the given user, before the current
+     * transaction commits.
+     *
+     * @param userId id of the user to be removed from the index
+     */
+    void unindex(Long userId);
+
+    /**
+     * Apply the index changes requested so far by the current transaction,
+     * so that searches made by the transaction itself see them; otherwise
+     * changes are applied just before commit.
+     */
+    void indexPending();
+
+    /**
+     * Drop the whole search index and build it again from stored attribute
+     * values; the persistence context is cleared meanwhile, hence entities
+     * loaded before are detached.
+     *
+     * @return number of index entries created
+     */
+    int rebuild();
+}
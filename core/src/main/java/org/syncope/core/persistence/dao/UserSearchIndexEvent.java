@@ -0,0 +1,78 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import java.util.Collections;
+import java.util.Set;
+import org.springframework.context.ApplicationEvent;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+
+/**
+ * Published by UserSearchIndexDAO whenever the search data of a user changes,
+ * for the benefit of other search engines keeping their own index.
+ */
+public class UserSearchIndexEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 4528740285740591337L;
+
+    public enum Type {
+
+        INDEX, UNINDEX, REBUILD
+
+    }
+    private final Type type;
+
+    private final transient SyncopeUser user;
+
+    private final Long userId;
+
+    private final Set<String> schemaNames;
+
+    public UserSearchIndexEvent(final Object source, final Type type,
+            final SyncopeUser user, final Long userId,
+            final Set<String> schemaNames) {
+
+        super(source);
+
+        this.type = type;
+        this.user = user;
+        this.userId = userId;
+        this.schemaNames = schemaNames == null
+                ? Collections.<String>emptySet() : schemaNames;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the (re)indexed user, only available for INDEX events
+     */
+    public SyncopeUser getUser() {
+        return user;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return names of the schemas whose values were added, changed or
+     * removed for the user
+     */
+    public Set<String> getSchemaNames() {
+        return schemaNames;
+    }
+}
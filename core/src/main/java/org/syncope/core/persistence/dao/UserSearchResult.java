@@ -0,0 +1,44 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import java.util.List;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+
+/**
+ * A page of users matching a search condition, together with the total
+ * number of matching users.
+ */
+public class UserSearchResult {
+
+    private final List<SyncopeUser> users;
+
+    private final int totalCount;
+
+    public UserSearchResult(final List<SyncopeUser> users,
+            final int totalCount) {
+
+        this.users = users;
+        this.totalCount = totalCount;
+    }
+
+    public List<SyncopeUser> getUsers() {
+        return users;
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+}
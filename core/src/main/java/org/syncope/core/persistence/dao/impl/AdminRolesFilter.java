@@ -0,0 +1,106 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.springframework.stereotype.Component;
+
+/**
+ * Administrative scope shared by user DAOs: the caller can only see users
+ * whose memberships are all within the roles the caller administers.
+ */
+@Component
+public class AdminRolesFilter {
+
+    /**
+     * Maximum number of role ids bound to a single IN list.
+     */
+    private static final int MAX_IN_IDS = 512;
+
+    /**
+     * Build an anti-join predicate excluding users with at least one
+     * membership outside the given roles. Role ids are bound as positional
+     * parameters, padded to the next power of two: the statement text only
+     * depends on the magnitude of the role set, so it can be reused by
+     * statement and plan caches. The predicate is always needed, since
+     * memberships may have been changed by other nodes: role membership
+     * indexes learn about such changes asynchronously.
+     *
+     * @param userIdColumn (qualified) column holding the user id to filter
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param parameters positional parameters, where role ids are added
+     * @return SQL predicate
+     */
+    public String getPredicate(final String userIdColumn,
+            final Set<Long> adminRoles, final List<Object> parameters) {
+
+        StringBuilder predicate = new StringBuilder(
+                "NOT EXISTS (SELECT M.syncopeUser_id FROM Membership M ").
+                append("WHERE M.syncopeUser_id=").append(userIdColumn);
+
+        if (adminRoles != null && !adminRoles.isEmpty()) {
+            List<Long> roleIds =
+                    new ArrayList<Long>(new TreeSet<Long>(adminRoles));
+
+            int paddedSize = Integer.highestOneBit(roleIds.size());
+            if (paddedSize < roleIds.size()) {
+                paddedSize <<= 1;
+            }
+            Long lastRoleId = roleIds.get(roleIds.size() - 1);
+            while (roleIds.size() < paddedSize) {
+                roleIds.add(lastRoleId);
+            }
+
+            for (int i = 0; i < roleIds.size(); i++) {
+                if (i % MAX_IN_IDS == 0) {
+                    if (i > 0) {
+                        predicate.append(")");
+                    }
+                    predicate.append(" AND M.syncopeRole_id NOT IN (");
+                } else {
+                    predicate.append(",");
+                }
+
+                parameters.add(roleIds.get(i));
+                predicate.append("?").append(parameters.size());
+            }
+            predicate.append(")");
+        }
+
+        predicate.append(")");
+
+        return predicate.toString();
+    }
+
+    /**
+     * Build a query selecting users not visible to the caller, i.e. with at
+     * least one membership outside the given roles: its cost depends on the
+     * number of such users, not on the number of users to be filtered.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param parameters positional parameters, where role ids are added
+     * @return SQL query returning user ids
+     */
+    public String getHiddenQuery(final Set<Long> adminRoles,
+            final List<Object> parameters) {
+
+        return "SELECT DISTINCT hidden.syncopeUser_id FROM Membership hidden"
+                + " WHERE NOT " + getPredicate(
+                "hidden.syncopeUser_id", adminRoles, parameters);
+    }
+}
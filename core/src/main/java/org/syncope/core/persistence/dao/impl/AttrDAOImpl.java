@@ -16,13 +16,19 @@ package org.syncope.core.persistence.dao.impl;
 
 import java.util.List;
 import javax.persistence.Query;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.syncope.core.persistence.beans.AbstractAttr;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.dao.AttrDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 
 @Repository
 public class AttrDAOImpl extends AbstractDAOImpl implements AttrDAO {
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
     @Override
     public <T extends AbstractAttr> T find(final Long id,
             final Class<T> reference) {
@@ -62,5 +68,9 @@ public class AttrDAOImpl extends AbstractDAOImpl implements AttrDAO {
         }
 
         entityManager.remove(attribute);
+
+        if (attribute.getOwner() instanceof SyncopeUser) {
+            userSearchIndexDAO.index((SyncopeUser) attribute.getOwner());
+        }
     }
 }
@@ -16,14 +16,20 @@ package org.syncope.core.persistence.dao.impl;
 
 import java.util.List;
 import javax.persistence.Query;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.syncope.core.persistence.beans.AbstractAttrValue;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.dao.AttrValueDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 
 @Repository
 public class AttrValueDAOImpl extends AbstractDAOImpl
         implements AttrValueDAO {
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
     @Override
     public <T extends AbstractAttrValue> T find(
             final Long id, final Class<T> reference) {
@@ -66,5 +72,13 @@ public class AttrValueDAOImpl extends AbstractDAOImpl
         }
 
         entityManager.remove(attributeValue);
+
+        if (attributeValue.getAttribute() != null
+                && attributeValue.getAttribute().getOwner()
+                instanceof SyncopeUser) {
+
+            userSearchIndexDAO.index((SyncopeUser) attributeValue.
+                    getAttribute().getOwner());
+        }
     }
 }
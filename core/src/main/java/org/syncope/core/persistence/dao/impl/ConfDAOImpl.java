@@ -14,16 +14,46 @@
  */
 package org.syncope.core.persistence.dao.impl;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.Query;
+import net.sf.ehcache.CacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.syncope.core.persistence.beans.SyncopeConf;
+import org.syncope.core.persistence.cache.ChangeSignal;
+import org.syncope.core.persistence.dao.ConfSnapshot;
 import org.syncope.core.persistence.dao.MissingConfKeyException;
 import org.syncope.core.persistence.dao.ConfDAO;
 
 @Repository
 public class ConfDAOImpl extends AbstractDAOImpl implements ConfDAO {
 
+    /**
+     * Replaced as a whole at each change; null until first needed.
+     */
+    private volatile ConfSnapshot snapshot;
+
+    /**
+     * Tells the other nodes to reload their snapshots after each change.
+     */
+    private ChangeSignal changeSignal;
+
+    @Autowired
+    public void setCacheManager(final CacheManager cacheManager) {
+        changeSignal = new ChangeSignal(cacheManager,
+                ConfDAOImpl.class.getName(), new Runnable() {
+
+            @Override
+            public void run() {
+                reset();
+            }
+        });
+    }
+
     @Override
     public SyncopeConf find(final String name)
             throws MissingConfKeyException {
@@ -45,17 +75,101 @@ public class ConfDAOImpl extends AbstractDAOImpl implements ConfDAO {
         return query.getResultList();
     }
 
+    private ConfSnapshot load() {
+        Map<String, String> values = new HashMap<String, String>();
+        for (SyncopeConf conf : findAll()) {
+            values.put(conf.getConfKey(), conf.getConfValue());
+        }
+
+        return new ConfSnapshot(values);
+    }
+
+    @Override
+    public ConfSnapshot getSnapshot() {
+        // changes made by the current transaction are not shared until
+        // commit, but they are visible to the transaction itself
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return load();
+        }
+
+        ConfSnapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = load();
+                }
+                result = snapshot;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply the given change to the snapshot, and tell the other nodes,
+     * once the current transaction (if any) commits.
+     *
+     * @param key configuration key
+     * @param value new value, null when the key was removed
+     */
+    private void changed(final String key, final String value) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            swap(key, value);
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCompletion(final int status) {
+                        TransactionSynchronizationManager.
+                                unbindResourceIfPossible(ConfDAOImpl.this);
+
+                        if (status == STATUS_COMMITTED) {
+                            swap(key, value);
+                        }
+                    }
+                });
+    }
+
+    private void swap(final String key, final String value) {
+        synchronized (this) {
+            if (snapshot != null) {
+                snapshot = snapshot.with(key, value);
+            }
+        }
+
+        changeSignal.send();
+    }
+
+    /**
+     * Drop the snapshot, to be reloaded when next needed: the change made
+     * by another node is not known here.
+     */
+    private synchronized void reset() {
+        snapshot = null;
+    }
+
     @Override
     public SyncopeConf save(
             final SyncopeConf syncopeConfiguration) {
 
-        return entityManager.merge(syncopeConfiguration);
+        SyncopeConf merged = entityManager.merge(syncopeConfiguration);
+        changed(merged.getConfKey(), merged.getConfValue());
+
+        return merged;
     }
 
     @Override
     public void delete(final String name) {
         try {
             entityManager.remove(find(name));
+            changed(name, null);
         } catch (MissingConfKeyException e) {
             LOG.error("Could not find configuration key '" + name + "'");
         }
@@ -20,6 +20,7 @@ import java.util.Set;
 import javax.persistence.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.syncope.core.persistence.MetadataRegistry;
 import org.syncope.core.persistence.beans.AbstractDerAttr;
 import org.syncope.core.persistence.beans.AbstractDerSchema;
 import org.syncope.core.persistence.beans.AbstractSchema;
@@ -32,6 +33,9 @@ public class DerSchemaDAOImpl extends AbstractDAOImpl implements DerSchemaDAO {
     @Autowired
     private DerAttrDAO derivedAttributeDAO;
 
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
     @Override
     public <T extends AbstractDerSchema> T find(final String name,
             final Class<T> reference) {
@@ -50,7 +54,10 @@ public class DerSchemaDAOImpl extends AbstractDAOImpl implements DerSchemaDAO {
 
     @Override
     public <T extends AbstractDerSchema> T save(final T derivedSchema) {
-        return entityManager.merge(derivedSchema);
+        T merged = entityManager.merge(derivedSchema);
+        metadataRegistry.changed();
+
+        return merged;
     }
 
     @Override
@@ -81,5 +88,6 @@ public class DerSchemaDAOImpl extends AbstractDAOImpl implements DerSchemaDAO {
         }
 
         entityManager.remove(derivedSchema);
+        metadataRegistry.changed();
     }
 }
@@ -25,6 +25,7 @@ import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.dao.MembershipDAO;
 import org.syncope.core.persistence.dao.RoleDAO;
 import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 
 @Repository
 public class MembershipDAOImpl extends AbstractDAOImpl
@@ -36,6 +37,9 @@ public class MembershipDAOImpl extends AbstractDAOImpl
     @Autowired
     private RoleDAO roleDAO;
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
     @Override
     public Membership find(final Long id) {
         return entityManager.find(Membership.class, id);
@@ -70,7 +74,13 @@ public class MembershipDAOImpl extends AbstractDAOImpl
 
     @Override
     public Membership save(final Membership membership) {
-        return entityManager.merge(membership);
+        Membership merged = entityManager.merge(membership);
+
+        if (merged.getSyncopeUser() != null) {
+            userSearchIndexDAO.index(merged.getSyncopeUser());
+        }
+
+        return merged;
     }
 
     @Override
@@ -0,0 +1,1053 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+import javax.validation.ValidationException;
+import net.sf.ehcache.CacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.syncope.client.search.AttributeCond;
+import org.syncope.client.search.MembershipCond;
+import org.syncope.client.search.NodeCond;
+import org.syncope.client.search.OrderByClause;
+import org.syncope.core.persistence.beans.AbstractAttr;
+import org.syncope.core.persistence.beans.AbstractAttrValue;
+import org.syncope.core.persistence.beans.membership.Membership;
+import org.syncope.core.persistence.beans.role.SyncopeRole;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.UAttrValue;
+import org.syncope.core.persistence.beans.user.USchema;
+import org.syncope.core.persistence.cache.ChangeSignal;
+import org.syncope.core.persistence.dao.RoleDAO;
+import org.syncope.core.persistence.dao.SchemaDAO;
+import org.syncope.core.persistence.dao.SearchLimitExceededException;
+import org.syncope.core.persistence.dao.UserCountEstimate;
+import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.persistence.dao.UserProjection;
+import org.syncope.core.persistence.dao.UserSearchDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexEvent;
+import org.syncope.core.persistence.dao.UserSearchResult;
+import org.syncope.core.persistence.search.CompressedIdSet;
+import org.syncope.core.persistence.search.UserSearchGovernor;
+import org.syncope.types.SchemaType;
+
+/**
+ * UserSearchDAO evaluating search conditions against an in-memory inverted
+ * index instead of SQL: each (schema, typed value) is mapped to the set of
+ * users owning it, sorted by value so that ranges can be looked up, and
+ * AND / OR / NOT become set operations. Users are only loaded from the
+ * database once matching ids are known.
+ *
+ * The index is built from the database at startup and kept in sync by
+ * listening to UserSearchIndexEvent; changes are applied once the
+ * transaction that originated them is committed. Each JVM holds its own
+ * index, and user ids must fit in an int: other nodes are told to drop
+ * theirs after each committed change, and build it again upon next search.
+ * Hence this class fits deployments with a single node or with rare user
+ * changes.
+ *
+ * Administrative scope is not taken from the index but checked in SQL, as
+ * for UserSearchDAOImpl, so that it never depends on the index being up to
+ * date. UserSearchGovernor limits apply as with UserSearchDAOImpl.
+ *
+ * Not enabled by default: to replace UserSearchDAOImpl, declare this class as
+ * primary bean in persistenceContext.xml.
+ */
+public class MemoryUserSearchDAOImpl extends AbstractDAOImpl
+        implements UserSearchDAO, ApplicationListener<ApplicationEvent> {
+
+    /**
+     * Number of users loaded at once when building the index.
+     */
+    private static final int REBUILD_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private UserDAO userDAO;
+
+    @Autowired
+    private RoleDAO roleDAO;
+
+    @Autowired
+    private SchemaDAO schemaDAO;
+
+    @Autowired
+    private UserSearchGovernor governor;
+
+    @Autowired
+    private AdminRolesFilter adminRolesFilter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ChangeSignal changeSignal;
+
+    private final ReadWriteLock lock;
+
+    /**
+     * Whether the index was built from the database.
+     */
+    private boolean built;
+
+    /**
+     * All indexed users.
+     */
+    private final CompressedIdSet users;
+
+    /**
+     * Users with at least one membership.
+     */
+    private final CompressedIdSet members;
+
+    /**
+     * Role id to member users.
+     */
+    private final Map<Long, CompressedIdSet> roleIndex;
+
+    /**
+     * Schema name to (sorted) values to users owning them.
+     */
+    private final Map<String, NavigableMap<Comparable, CompressedIdSet>>
+            valueIndex;
+
+    /**
+     * Schema name to users owning at least a value.
+     */
+    private final Map<String, CompressedIdSet> presenceIndex;
+
+    /**
+     * User id to indexed content, for updates and ordering.
+     */
+    private final Map<Long, UserEntry> entries;
+
+    public MemoryUserSearchDAOImpl() {
+        super();
+
+        lock = new ReentrantReadWriteLock();
+        users = new CompressedIdSet();
+        members = new CompressedIdSet();
+        roleIndex = new HashMap<Long, CompressedIdSet>();
+        valueIndex = new HashMap<String,
+                NavigableMap<Comparable, CompressedIdSet>>();
+        presenceIndex = new HashMap<String, CompressedIdSet>();
+        entries = new HashMap<Long, UserEntry>();
+    }
+
+    @Autowired
+    public void setCacheManager(final CacheManager cacheManager) {
+        changeSignal = new ChangeSignal(cacheManager,
+                MemoryUserSearchDAOImpl.class.getName(), new Runnable() {
+
+            @Override
+            public void run() {
+                invalidate();
+            }
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(final ApplicationEvent event) {
+        if (event instanceof ContextRefreshedEvent) {
+            ensureBuilt();
+        } else if (event instanceof UserSearchIndexEvent) {
+            onIndexEvent((UserSearchIndexEvent) event);
+        }
+    }
+
+    private void onIndexEvent(final UserSearchIndexEvent event) {
+        switch (event.getType()) {
+            case INDEX:
+                // take the snapshot now, while the user is attached
+                final UserEntry entry = getEntry(event.getUser());
+                afterCommit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        update(entry.getId(), entry);
+                    }
+                });
+                break;
+
+            case UNINDEX:
+                final Long userId = event.getUserId();
+                afterCommit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        update(userId, null);
+                    }
+                });
+                break;
+
+            case REBUILD:
+                afterCommit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        invalidate();
+                        ensureBuilt();
+                    }
+                });
+                break;
+
+            default:
+        }
+    }
+
+    @Override
+    public Integer count(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
+
+        governor.checkCondition(searchCondition);
+
+        return getMatching(adminRoles, searchCondition).cardinality();
+    }
+
+    /**
+     * Counting on the in-memory index is cheap: always exact.
+     */
+    @Override
+    public UserCountEstimate approximateCount(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
+
+        return UserCountEstimate.getExact(count(adminRoles, searchCondition));
+    }
+
+    @Override
+    public List<SyncopeUser> search(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
+
+        return search(adminRoles, searchCondition, -1, -1);
+    }
+
+    @Override
+    public List<SyncopeUser> search(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage) {
+
+        return search(adminRoles, searchCondition, page, itemsPerPage,
+                UserProjection.ALL);
+    }
+
+    @Override
+    public List<SyncopeUser> search(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage,
+            final UserProjection projection) {
+
+        return searchWithCount(adminRoles, searchCondition,
+                page, itemsPerPage, projection).getUsers();
+    }
+
+    @Override
+    public UserSearchResult searchWithCount(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage) {
+
+        return searchWithCount(adminRoles, searchCondition,
+                page, itemsPerPage, UserProjection.ALL);
+    }
+
+    private UserSearchResult searchWithCount(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage,
+            final UserProjection projection) {
+
+        LOG.debug("Search condition:\n{}", searchCondition);
+        if (!searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition:\n{}", searchCondition);
+
+            return new UserSearchResult(Collections.EMPTY_LIST, 0);
+        }
+
+        governor.checkCondition(searchCondition);
+
+        CompressedIdSet matching = getMatching(adminRoles, searchCondition);
+        if (itemsPerPage < 0) {
+            governor.checkResultSize(matching.cardinality());
+        }
+
+        List<Long> userIds =
+                getOrderedIds(matching, searchCondition.getOrderBy());
+
+        // page starts from 1
+        int from = itemsPerPage < 0
+                ? 0 : Math.min(userIds.size(),
+                itemsPerPage * (page <= 0 ? 0 : page - 1));
+        int to = itemsPerPage < 0
+                ? userIds.size() : Math.min(userIds.size(), from + itemsPerPage);
+
+        return new UserSearchResult(
+                userDAO.findByIds(userIds.subList(from, to), projection),
+                userIds.size());
+    }
+
+    @Override
+    public List<SyncopeUser> searchAfter(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final Long lastId,
+            final int itemsPerPage) {
+
+        LOG.debug("Search condition:\n{}", searchCondition);
+        if (!searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition:\n{}", searchCondition);
+
+            return Collections.EMPTY_LIST;
+        }
+
+        governor.checkCondition(searchCondition);
+
+        CompressedIdSet matching = getMatching(adminRoles, searchCondition);
+        if (itemsPerPage < 0) {
+            governor.checkResultSize(matching.cardinality());
+        }
+
+        List<Long> userIds = new ArrayList<Long>();
+        for (int i = matching.nextSetBit(
+                lastId == null ? 0 : getBit(lastId) + 1);
+                i >= 0 && (itemsPerPage < 0 || userIds.size() < itemsPerPage);
+                i = matching.nextSetBit(i + 1)) {
+
+            userIds.add(Long.valueOf(i));
+        }
+
+        return userDAO.findByIds(userIds);
+    }
+
+    @Override
+    public long getLimitExceededCount(
+            final SearchLimitExceededException.Limit limit) {
+
+        return governor.getExceededCount(limit);
+    }
+
+    /**
+     * No SQL is involved here.
+     *
+     * @return 0
+     */
+    @Override
+    public long getPlanCacheHits() {
+        return 0;
+    }
+
+    /**
+     * No SQL is involved here.
+     *
+     * @return 0
+     */
+    @Override
+    public long getPlanCacheMisses() {
+        return 0;
+    }
+
+    /**
+     * Results are not cached, being computed in memory.
+     *
+     * @return 0
+     */
+    @Override
+    public long getResultCacheHits() {
+        return 0;
+    }
+
+    /**
+     * Results are not cached, being computed in memory.
+     *
+     * @return 0
+     */
+    @Override
+    public long getResultCacheMisses() {
+        return 0;
+    }
+
+    private static int getBit(final Long userId) {
+        if (userId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "User id too large to be indexed: " + userId);
+        }
+
+        return userId.intValue();
+    }
+
+    private static Comparable getKey(final Object value) {
+        // java.sql.Timestamp does not compare properly with java.util.Date
+        return value instanceof Date
+                ? new Date(((Date) value).getTime()) : (Comparable) value;
+    }
+
+    private static CompressedIdSet union(
+            final Collection<CompressedIdSet> sets) {
+
+        CompressedIdSet result = new CompressedIdSet();
+        for (CompressedIdSet set : sets) {
+            result.or(set);
+        }
+
+        return result;
+    }
+
+    private static CompressedIdSet copy(final CompressedIdSet set) {
+        return set == null ? new CompressedIdSet() : set.clone();
+    }
+
+    /**
+     * Run the given change after commit, then tell other nodes, once per
+     * transaction, to drop their index.
+     */
+    private void afterCommit(final Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            changeSignal.send();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCommit() {
+                        task.run();
+                    }
+                });
+
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCommit() {
+                            changeSignal.send();
+                        }
+
+                        @Override
+                        public void afterCompletion(final int status) {
+                            TransactionSynchronizationManager.
+                                    unbindResourceIfPossible(
+                                    MemoryUserSearchDAOImpl.this);
+                        }
+                    });
+        }
+    }
+
+    private UserEntry getEntry(final SyncopeUser user) {
+        UserEntry entry = new UserEntry(user.getId());
+
+        List<? extends AbstractAttrValue> values;
+        for (AbstractAttr attribute : user.getAttributes()) {
+            if (attribute.getSchema() == null) {
+                continue;
+            }
+
+            values = attribute.getUniqueValue() == null
+                    ? attribute.getValues()
+                    : Collections.singletonList(
+                    (AbstractAttrValue) attribute.getUniqueValue());
+            for (AbstractAttrValue value : values) {
+                if (value.getValue() != null) {
+                    entry.addValue(attribute.getSchema().getName(),
+                            getKey(value.getValue()));
+                }
+            }
+        }
+
+        for (Membership membership : user.getMemberships()) {
+            if (membership.getSyncopeRole() != null) {
+                entry.addRoleId(membership.getSyncopeRole().getId());
+            }
+        }
+
+        return entry;
+    }
+
+    private void add(final UserEntry entry) {
+        int bit = getBit(entry.getId());
+
+        users.set(bit);
+
+        NavigableMap<Comparable, CompressedIdSet> schemaValues;
+        CompressedIdSet valueUsers;
+        for (Map.Entry<String, List<Comparable>> schemaEntry :
+                entry.getValues().entrySet()) {
+
+            schemaValues = valueIndex.get(schemaEntry.getKey());
+            if (schemaValues == null) {
+                schemaValues = new TreeMap<Comparable, CompressedIdSet>();
+                valueIndex.put(schemaEntry.getKey(), schemaValues);
+            }
+            for (Comparable value : schemaEntry.getValue()) {
+                valueUsers = schemaValues.get(value);
+                if (valueUsers == null) {
+                    valueUsers = new CompressedIdSet();
+                    schemaValues.put(value, valueUsers);
+                }
+                valueUsers.set(bit);
+            }
+
+            valueUsers = presenceIndex.get(schemaEntry.getKey());
+            if (valueUsers == null) {
+                valueUsers = new CompressedIdSet();
+                presenceIndex.put(schemaEntry.getKey(), valueUsers);
+            }
+            valueUsers.set(bit);
+        }
+
+        CompressedIdSet roleUsers;
+        for (Long roleId : entry.getRoleIds()) {
+            roleUsers = roleIndex.get(roleId);
+            if (roleUsers == null) {
+                roleUsers = new CompressedIdSet();
+                roleIndex.put(roleId, roleUsers);
+            }
+            roleUsers.set(bit);
+
+            members.set(bit);
+        }
+
+        entries.put(entry.getId(), entry);
+    }
+
+    private void remove(final Long userId) {
+        UserEntry entry = entries.remove(userId);
+        if (entry == null) {
+            return;
+        }
+
+        int bit = getBit(userId);
+
+        users.clear(bit);
+        members.clear(bit);
+
+        NavigableMap<Comparable, CompressedIdSet> schemaValues;
+        CompressedIdSet valueUsers;
+        for (Map.Entry<String, List<Comparable>> schemaEntry :
+                entry.getValues().entrySet()) {
+
+            schemaValues = valueIndex.get(schemaEntry.getKey());
+            for (Comparable value : schemaEntry.getValue()) {
+                valueUsers = schemaValues.get(value);
+                valueUsers.clear(bit);
+                if (valueUsers.isEmpty()) {
+                    schemaValues.remove(value);
+                }
+            }
+
+            presenceIndex.get(schemaEntry.getKey()).clear(bit);
+        }
+
+        CompressedIdSet roleUsers;
+        for (Long roleId : entry.getRoleIds()) {
+            roleUsers = roleIndex.get(roleId);
+            roleUsers.clear(bit);
+            if (roleUsers.isEmpty()) {
+                roleIndex.remove(roleId);
+            }
+        }
+    }
+
+    private void update(final Long userId, final UserEntry entry) {
+        lock.writeLock().lock();
+        try {
+            // when not built, changes will be read from the database anyway
+            if (built) {
+                remove(userId);
+                if (entry != null) {
+                    add(entry);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void invalidate() {
+        lock.writeLock().lock();
+        try {
+            built = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the index from the database, if not done yet: at startup, after
+     * a rebuild of the search index or when dropped because of changes made
+     * by other nodes.
+     */
+    private void ensureBuilt() {
+        lock.readLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // own transaction, as the persistence context is cleared meanwhile
+        TransactionTemplate template =
+                new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setReadOnly(true);
+
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+
+            template.execute(new TransactionCallbackWithoutResult() {
+
+                @Override
+                protected void doInTransactionWithoutResult(
+                        final TransactionStatus status) {
+
+                    build();
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void build() {
+        users.clear();
+        members.clear();
+        roleIndex.clear();
+        valueIndex.clear();
+        presenceIndex.clear();
+        entries.clear();
+
+        List<Long> userIds = entityManager.createQuery(
+                "SELECT e.id FROM " + SyncopeUser.class.getSimpleName()
+                + " e ORDER BY e.id").getResultList();
+        for (int i = 0; i < userIds.size(); i += REBUILD_CHUNK_SIZE) {
+            for (SyncopeUser user : userDAO.findByIds(userIds.subList(i,
+                    Math.min(i + REBUILD_CHUNK_SIZE, userIds.size())))) {
+
+                add(getEntry(user));
+            }
+
+            // loaded users are not needed anymore
+            entityManager.clear();
+        }
+
+        built = true;
+
+        LOG.debug("In-memory user search index built for {} users",
+                entries.size());
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param searchCondition the search condition
+     * @return ids of the matching users visible to the caller
+     */
+    private CompressedIdSet getMatching(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
+
+        ensureBuilt();
+
+        CompressedIdSet result;
+        lock.readLock().lock();
+        try {
+            result = evaluate(searchCondition);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        result.andNot(getHidden(adminRoles));
+
+        return result;
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @return users with at least one membership outside the given roles,
+     * hence not visible to the caller
+     */
+    private CompressedIdSet getHidden(final Set<Long> adminRoles) {
+        List<Object> parameters = new ArrayList<Object>();
+        Query query = entityManager.createNativeQuery(
+                adminRolesFilter.getHiddenQuery(adminRoles, parameters));
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        governor.setTimeout(query);
+
+        CompressedIdSet result = new CompressedIdSet();
+        try {
+            for (Object userId : query.getResultList()) {
+                // users not fitting into an int are not indexed anyway
+                if (((Number) userId).longValue() <= Integer.MAX_VALUE) {
+                    result.set(((Number) userId).intValue());
+                }
+            }
+        } catch (PersistenceException e) {
+            throw governor.translate(e);
+        }
+
+        return result;
+    }
+
+    private CompressedIdSet evaluate(final NodeCond nodeCond) {
+        CompressedIdSet result;
+
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                result = nodeCond.getMembershipCond() != null
+                        ? evaluate(nodeCond.getMembershipCond(),
+                        nodeCond.getType() == NodeCond.Type.NOT_LEAF)
+                        : evaluate(nodeCond.getAttributeCond(),
+                        nodeCond.getType() == NodeCond.Type.NOT_LEAF);
+                break;
+
+            case AND:
+                result = evaluate(nodeCond.getLeftNodeCond());
+                result.and(evaluate(nodeCond.getRightNodeCond()));
+                break;
+
+            case OR:
+                result = evaluate(nodeCond.getLeftNodeCond());
+                result.or(evaluate(nodeCond.getRightNodeCond()));
+                break;
+
+            default:
+                result = new CompressedIdSet();
+        }
+
+        return result;
+    }
+
+    private CompressedIdSet evaluate(final MembershipCond cond,
+            final boolean not) {
+
+        Set<Long> roleIds = new HashSet<Long>();
+        if (cond.getRoleId() != null) {
+            roleIds.add(cond.getRoleId());
+        } else {
+            for (SyncopeRole role : roleDAO.find(cond.getRoleName())) {
+                roleIds.add(role.getId());
+            }
+        }
+
+        CompressedIdSet result = new CompressedIdSet();
+        for (Long roleId : roleIds) {
+            if (roleIndex.containsKey(roleId)) {
+                result.or(roleIndex.get(roleId));
+            }
+        }
+
+        // as for SQL, NOT only applies to users with memberships
+        if (not) {
+            CompressedIdSet others = copy(members);
+            others.andNot(result);
+            result = others;
+        }
+
+        return result;
+    }
+
+    private CompressedIdSet evaluate(final AttributeCond cond,
+            final boolean not) {
+
+        USchema schema = schemaDAO.find(cond.getSchema(), USchema.class);
+        if (schema == null) {
+            LOG.warn("Ignoring invalid schema '{}'", cond.getSchema());
+            return new CompressedIdSet();
+        }
+
+        Comparable value = null;
+        try {
+            if (cond.getType() != AttributeCond.Type.LIKE
+                    && cond.getType() != AttributeCond.Type.ISNULL
+                    && cond.getType() != AttributeCond.Type.ISNOTNULL) {
+
+                value = getKey(schema.getValidator().getValue(
+                        cond.getExpression(), new UAttrValue()).getValue());
+            }
+        } catch (ValidationException e) {
+            LOG.error("Could not validate expression '"
+                    + cond.getExpression() + "'", e);
+            return new CompressedIdSet();
+        }
+
+        AttributeCond.Type type = not
+                ? UserSearchDAOImpl.getNegatedType(cond.getType())
+                : cond.getType();
+
+        NavigableMap<Comparable, CompressedIdSet> values =
+                valueIndex.get(schema.getName());
+        if (values == null) {
+            values = new TreeMap<Comparable, CompressedIdSet>();
+        }
+
+        CompressedIdSet result;
+        switch (type) {
+
+            case ISNULL:
+                result = copy(users);
+                result.andNot(copy(presenceIndex.get(schema.getName())));
+                break;
+
+            case ISNOTNULL:
+                result = copy(presenceIndex.get(schema.getName()));
+                break;
+
+            case LIKE:
+                if (schema.getType() == SchemaType.String) {
+                    result = like(values, cond.getExpression(), not);
+                } else {
+                    LOG.error("LIKE is only compatible with string schemas");
+                    result = copy(presenceIndex.get(schema.getName()));
+                }
+                break;
+
+            case EQ:
+                if (not) {
+                    result = union(values.headMap(value, false).values());
+                    result.or(union(values.tailMap(value, false).values()));
+                } else {
+                    result = copy(values.get(value));
+                }
+                break;
+
+            case GE:
+                result = union(values.tailMap(value, true).values());
+                break;
+
+            case GT:
+                result = union(values.tailMap(value, false).values());
+                break;
+
+            case LE:
+                result = union(values.headMap(value, true).values());
+                break;
+
+            case LT:
+                result = union(values.headMap(value, false).values());
+                break;
+
+            default:
+                result = new CompressedIdSet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Evaluate SQL LIKE: when the pattern has a literal prefix and is not
+     * negated, only values in the matching range are checked.
+     */
+    private CompressedIdSet like(
+            final NavigableMap<Comparable, CompressedIdSet> values,
+            final String expression, final boolean not) {
+
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        int prefixLength = -1;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '%' || c == '_') {
+                if (prefixLength == -1) {
+                    prefixLength = i;
+                }
+                regex.append(Pattern.quote(literal.toString())).
+                        append(c == '%' ? ".*" : ".");
+                literal.setLength(0);
+            } else {
+                literal.append(c);
+            }
+        }
+        regex.append(Pattern.quote(literal.toString()));
+        Pattern pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+
+        Map<Comparable, CompressedIdSet> candidates = values;
+        if (!not && prefixLength > 0) {
+            String prefix = expression.substring(0, prefixLength);
+            candidates = values.subMap(prefix, true,
+                    prefix + Character.MAX_VALUE, false);
+        }
+
+        CompressedIdSet result = new CompressedIdSet();
+        for (Map.Entry<Comparable, CompressedIdSet> entry :
+                candidates.entrySet()) {
+
+            if (pattern.matcher((String) entry.getKey()).matches() != not) {
+                result.or(entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sort matching ids according to the given criteria; as for SQL,
+     * multivalue schemas are ignored and nulls come last in ascending order.
+     * Users removed from the index since matching are skipped.
+     */
+    private List<Long> getOrderedIds(final CompressedIdSet matching,
+            final List<OrderByClause> orderBy) {
+
+        lock.readLock().lock();
+        try {
+            return doGetOrderedIds(matching, orderBy);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Long> doGetOrderedIds(final CompressedIdSet matching,
+            final List<OrderByClause> orderBy) {
+
+        List<Long> result = new ArrayList<Long>(matching.cardinality());
+        for (int i = matching.nextSetBit(0); i >= 0;
+                i = matching.nextSetBit(i + 1)) {
+
+            if (entries.containsKey(Long.valueOf(i))) {
+                result.add(Long.valueOf(i));
+            }
+        }
+
+        if (orderBy == null || orderBy.isEmpty()) {
+            return result;
+        }
+
+        final List<OrderByClause> clauses = new ArrayList<OrderByClause>();
+        USchema schema;
+        for (OrderByClause clause : orderBy) {
+            schema = schemaDAO.find(clause.getSchema(), USchema.class);
+            if (schema == null || schema.isMultivalue()) {
+                LOG.warn("Ignoring invalid or multivalue schema '{}' "
+                        + "for ordering", clause.getSchema());
+            } else {
+                clauses.add(clause);
+            }
+        }
+
+        // stable sort: ties are left ordered by id
+        Collections.sort(result, new Comparator<Long>() {
+
+            @Override
+            public int compare(final Long userId1, final Long userId2) {
+                int result = 0;
+                for (int i = 0; i < clauses.size() && result == 0; i++) {
+                    Comparable value1 = entries.get(userId1).
+                            getFirstValue(clauses.get(i).getSchema());
+                    Comparable value2 = entries.get(userId2).
+                            getFirstValue(clauses.get(i).getSchema());
+
+                    if (value1 == null) {
+                        result = value2 == null ? 0 : 1;
+                    } else {
+                        result = value2 == null ? -1 : value1.compareTo(value2);
+                    }
+
+                    if (clauses.get(i).getDirection()
+                            == OrderByClause.Direction.DESC) {
+
+                        result = -result;
+                    }
+                }
+
+                return result;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Indexed content of a user.
+     */
+    private static class UserEntry {
+
+        private final Long id;
+
+        private final Map<String, List<Comparable>> values;
+
+        private final Set<Long> roleIds;
+
+        public UserEntry(final Long id) {
+            this.id = id;
+            this.values = new HashMap<String, List<Comparable>>();
+            this.roleIds = new HashSet<Long>();
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Map<String, List<Comparable>> getValues() {
+            return values;
+        }
+
+        public Set<Long> getRoleIds() {
+            return roleIds;
+        }
+
+        public void addValue(final String schemaName, final Comparable value) {
+            List<Comparable> schemaValues = values.get(schemaName);
+            if (schemaValues == null) {
+                schemaValues = new ArrayList<Comparable>();
+                values.put(schemaName, schemaValues);
+            }
+            schemaValues.add(value);
+        }
+
+        public Comparable getFirstValue(final String schemaName) {
+            List<Comparable> schemaValues = values.get(schemaName);
+            return schemaValues == null || schemaValues.isEmpty()
+                    ? null : schemaValues.get(0);
+        }
+
+        public void addRoleId(final Long roleId) {
+            roleIds.add(roleId);
+        }
+    }
+}
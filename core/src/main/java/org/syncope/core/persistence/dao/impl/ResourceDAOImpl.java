@@ -18,7 +18,9 @@ import java.util.List;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.syncope.core.persistence.MetadataRegistry;
 import org.syncope.core.persistence.beans.TargetResource;
 import org.syncope.core.persistence.beans.SchemaMapping;
 import org.syncope.core.persistence.beans.role.SyncopeRole;
@@ -30,6 +32,9 @@ import org.syncope.types.SourceMappingType;
 public class ResourceDAOImpl extends AbstractDAOImpl
         implements ResourceDAO {
 
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
     @Override
     public TargetResource find(final String name) {
         Query query = entityManager.createQuery(
@@ -54,7 +59,10 @@ public class ResourceDAOImpl extends AbstractDAOImpl
 
     @Override
     public TargetResource save(final TargetResource resource) {
-        return entityManager.merge(resource);
+        TargetResource merged = entityManager.merge(resource);
+        metadataRegistry.changed();
+
+        return merged;
     }
 
     @Override
@@ -100,6 +108,7 @@ public class ResourceDAOImpl extends AbstractDAOImpl
 
         int items = query.executeUpdate();
         LOG.debug("Removed {} schema mappings", items);
+        metadataRegistry.changed();
 
         // Make empty SchemaMapping query cache
         ((Session) entityManager.getDelegate()).getSessionFactory().
@@ -117,6 +126,7 @@ public class ResourceDAOImpl extends AbstractDAOImpl
         LOG.debug("Removed {} schema mappings", items);
 
         resource.getMappings().clear();
+        metadataRegistry.changed();
 
         // Make empty SchemaMapping query cache
         ((Session) entityManager.getDelegate()).getSessionFactory().
@@ -153,5 +163,6 @@ public class ResourceDAOImpl extends AbstractDAOImpl
         resource.setConnector(null);
 
         entityManager.remove(resource);
+        metadataRegistry.changed();
     }
 }
@@ -16,6 +16,7 @@ package org.syncope.core.persistence.dao.impl;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,8 +24,10 @@ import org.springframework.stereotype.Repository;
 import org.syncope.core.persistence.beans.Entitlement;
 import org.syncope.core.persistence.beans.membership.Membership;
 import org.syncope.core.persistence.beans.role.SyncopeRole;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.dao.EntitlementDAO;
 import org.syncope.core.persistence.dao.RoleDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 import org.syncope.core.util.EntitlementUtil;
 
 @Repository
@@ -33,6 +36,9 @@ public class RoleDAOImpl extends AbstractDAOImpl implements RoleDAO {
     @Autowired
     private EntitlementDAO entitlementDAO;
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
     @Override
     public SyncopeRole find(final Long id) {
         Query query = entityManager.createQuery(
@@ -103,6 +109,48 @@ public class RoleDAOImpl extends AbstractDAOImpl implements RoleDAO {
         return query.getResultList();
     }
 
+    @Override
+    public List<SyncopeRole> findByResource(final Set<Long> adminRoles,
+            final String resourceName, final int page,
+            final int itemsPerPage) {
+
+        if (adminRoles == null || adminRoles.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+
+        Query query = entityManager.createQuery(
+                "SELECT e FROM SyncopeRole e JOIN e.targetResources r "
+                + "WHERE r.name = :resourceName AND e.id IN (:adminRoles) "
+                + "ORDER BY e.id");
+        query.setParameter("resourceName", resourceName);
+        query.setParameter("adminRoles", adminRoles);
+
+        query.setFirstResult(itemsPerPage * (page <= 0 ? 0 : page - 1));
+
+        if (itemsPerPage > 0) {
+            query.setMaxResults(itemsPerPage);
+        }
+
+        return query.getResultList();
+    }
+
+    @Override
+    public Integer countByResource(final Set<Long> adminRoles,
+            final String resourceName) {
+
+        if (adminRoles == null || adminRoles.isEmpty()) {
+            return 0;
+        }
+
+        Query query = entityManager.createQuery(
+                "SELECT COUNT(e) FROM SyncopeRole e JOIN e.targetResources r "
+                + "WHERE r.name = :resourceName AND e.id IN (:adminRoles)");
+        query.setParameter("resourceName", resourceName);
+        query.setParameter("adminRoles", adminRoles);
+
+        return ((Number) query.getSingleResult()).intValue();
+    }
+
     @Override
     public List<Membership> getMemberships(final SyncopeRole role) {
         Query query = entityManager.createQuery(
@@ -137,12 +185,17 @@ public class RoleDAOImpl extends AbstractDAOImpl implements RoleDAO {
             delete(child.getId());
         }
 
+        SyncopeUser user;
         for (Membership membership : getMemberships(role)) {
+            user = membership.getSyncopeUser();
+
             membership.setSyncopeRole(null);
-            membership.getSyncopeUser().removeMembership(membership);
+            user.removeMembership(membership);
             membership.setSyncopeUser(null);
 
             entityManager.remove(membership);
+
+            userSearchIndexDAO.index(user);
         }
 
         for (Entitlement entitlement : role.getEntitlements()) {
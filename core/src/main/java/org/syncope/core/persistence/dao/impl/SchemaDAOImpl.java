@@ -20,6 +20,7 @@ import java.util.Set;
 import javax.persistence.Query;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.syncope.core.persistence.MetadataRegistry;
 import org.syncope.core.persistence.beans.AbstractAttr;
 import org.syncope.core.persistence.beans.AbstractDerSchema;
 import org.syncope.core.persistence.beans.AbstractSchema;
@@ -38,6 +39,9 @@ public class SchemaDAOImpl extends AbstractDAOImpl
     @Autowired
     private ResourceDAO resourceDAO;
 
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
     @Override
     public <T extends AbstractSchema> T find(final String name,
             final Class<T> reference) {
@@ -70,7 +74,10 @@ public class SchemaDAOImpl extends AbstractDAOImpl
 
     @Override
     public <T extends AbstractSchema> T save(final T schema) {
-        return entityManager.merge(schema);
+        T merged = entityManager.merge(schema);
+        metadataRegistry.changed();
+
+        return merged;
     }
 
     @Override
@@ -101,5 +108,6 @@ public class SchemaDAOImpl extends AbstractDAOImpl
         resourceDAO.deleteMappings(name, attributableUtil.sourceMappingType());
 
         entityManager.remove(schema);
+        metadataRegistry.changed();
     }
 }
@@ -18,8 +18,12 @@ import java.lang.Long;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
@@ -29,23 +33,67 @@ import org.springframework.stereotype.Repository;
 import org.syncope.core.persistence.beans.AbstractAttrValue;
 import org.syncope.core.persistence.beans.membership.Membership;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.UAttr;
 import org.syncope.core.persistence.beans.user.UAttrUniqueValue;
 import org.syncope.core.persistence.beans.user.UAttrValue;
 import org.syncope.core.persistence.beans.user.USchema;
 import org.syncope.core.persistence.dao.SchemaDAO;
 import org.syncope.core.persistence.dao.RoleDAO;
+import org.syncope.core.persistence.dao.UserCountEstimate;
 import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.persistence.dao.UserProjection;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
 
 @Repository
 public class UserDAOImpl extends AbstractDAOImpl
         implements UserDAO {
 
+    /**
+     * Maximum number of ids bound to a single IN clause (Oracle's limit).
+     */
+    private static final int MAX_IN_IDS = 1000;
+
+    private static final String FIND_BY_IDS =
+            "SELECT e FROM " + SyncopeUser.class.getSimpleName() + " e "
+            + "WHERE e.id IN (:ids)";
+
+    /**
+     * Queries below initialize, for a set of users, one lazy association
+     * each: fetching them all at once would produce the cartesian product.
+     */
+    private static final String FETCH_ATTRIBUTES =
+            "SELECT DISTINCT e FROM " + SyncopeUser.class.getSimpleName()
+            + " e LEFT JOIN FETCH e.attributes WHERE e.id IN (:ids)";
+
+    private static final String FETCH_DERIVED_ATTRIBUTES =
+            "SELECT DISTINCT e FROM " + SyncopeUser.class.getSimpleName()
+            + " e LEFT JOIN FETCH e.derivedAttributes WHERE e.id IN (:ids)";
+
+    private static final String FETCH_MEMBERSHIPS =
+            "SELECT DISTINCT e FROM " + SyncopeUser.class.getSimpleName()
+            + " e LEFT JOIN FETCH e.memberships m "
+            + "LEFT JOIN FETCH m.syncopeRole WHERE e.id IN (:ids)";
+
+    private static final String FETCH_ATTRIBUTE_VALUES =
+            "SELECT DISTINCT e FROM " + UAttr.class.getSimpleName() + " e "
+            + "LEFT JOIN FETCH e.values LEFT JOIN FETCH e.uniqueValue "
+            + "WHERE e.owner.id IN (:ids)";
+
     @Autowired
     private SchemaDAO schemaDAO;
 
     @Autowired
     private RoleDAO roleDAO;
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
+    @Autowired
+    private AdminRolesFilter adminRolesFilter;
+
+    @Autowired
+    private UserSearchPlanner planner;
+
     @Override
     public SyncopeUser find(final Long id) {
         Query query = entityManager.createQuery(
@@ -61,6 +109,14 @@ public class UserDAOImpl extends AbstractDAOImpl
         }
     }
 
+    @Override
+    public SyncopeUser find(final Long id, final UserProjection projection) {
+        List<SyncopeUser> result = findByIds(
+                Collections.singleton(id), projection);
+
+        return result.isEmpty() ? null : result.get(0);
+    }
+
     @Override
     public SyncopeUser findByWorkflowId(final Long workflowId) {
         Query query = entityManager.createQuery(
@@ -72,6 +128,113 @@ public class UserDAOImpl extends AbstractDAOImpl
         return (SyncopeUser) query.getSingleResult();
     }
 
+    @Override
+    public List<SyncopeUser> findByIds(final Collection<Long> ids) {
+        return findByIds(ids, UserProjection.ALL);
+    }
+
+    /**
+     * @param projection parts of users to be returned
+     * @return queries loading users with the associations needed by the
+     * given projection; the first one returns users
+     */
+    private static List<String> getFindByIdsQueries(
+            final UserProjection projection) {
+
+        List<String> result = new ArrayList<String>();
+        if (projection.isAllAttributes()) {
+            result.add(FETCH_ATTRIBUTES);
+            result.add(FETCH_DERIVED_ATTRIBUTES);
+        }
+        if (projection.isMemberships()) {
+            result.add(FETCH_MEMBERSHIPS);
+        }
+        if (result.isEmpty()) {
+            result.add(FIND_BY_IDS);
+        }
+        if (projection.isAllAttributes()) {
+            result.add(FETCH_ATTRIBUTE_VALUES);
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<SyncopeUser> findByIds(final Collection<Long> ids,
+            final UserProjection projection) {
+
+        if (ids == null || ids.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+
+        List<Long> idList = new ArrayList<Long>(new LinkedHashSet<Long>(ids));
+        Map<Long, SyncopeUser> users =
+                new HashMap<Long, SyncopeUser>(idList.size());
+        List<String> queries = getFindByIdsQueries(projection);
+
+        Query query;
+        for (int i = 0; i < idList.size(); i += MAX_IN_IDS) {
+            List<Long> chunk = idList.subList(i,
+                    Math.min(i + MAX_IN_IDS, idList.size()));
+
+            for (int j = 0; j < queries.size(); j++) {
+                query = entityManager.createQuery(queries.get(j));
+                query.setParameter("ids", chunk);
+
+                List<?> resultList = query.getResultList();
+                // the first query returns users, the others just initialize
+                // associations of entities already in persistence context
+                if (j == 0) {
+                    for (SyncopeUser user : (List<SyncopeUser>) resultList) {
+                        users.put(user.getId(), user);
+                    }
+                }
+            }
+        }
+
+        List<SyncopeUser> result = new ArrayList<SyncopeUser>(users.size());
+        SyncopeUser user;
+        for (Long id : idList) {
+            user = users.get(id);
+            if (user == null) {
+                LOG.error("Could not find user with id {}", id);
+            } else {
+                result.add(user);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<UAttr> findAttributes(final Collection<Long> userIds,
+            final Set<String> schemaNames) {
+
+        if (userIds == null || userIds.isEmpty()
+                || schemaNames == null || schemaNames.isEmpty()) {
+
+            return Collections.EMPTY_LIST;
+        }
+
+        List<Long> idList =
+                new ArrayList<Long>(new LinkedHashSet<Long>(userIds));
+        List<UAttr> result = new ArrayList<UAttr>();
+
+        Query query = entityManager.createQuery(
+                "SELECT DISTINCT e FROM " + UAttr.class.getSimpleName() + " e "
+                + "LEFT JOIN FETCH e.values "
+                + "WHERE e.owner.id IN (:ids) "
+                + "AND e.schema.name IN (:schemaNames)");
+        query.setParameter("schemaNames", schemaNames);
+        for (int i = 0; i < idList.size(); i += MAX_IN_IDS) {
+            query.setParameter("ids", idList.subList(i,
+                    Math.min(i + MAX_IN_IDS, idList.size())));
+            result.addAll(query.getResultList());
+        }
+
+        return result;
+    }
+
     @Override
     public List<SyncopeUser> findByAttrValue(final String schemaName,
             final UAttrValue attrValue) {
@@ -143,37 +306,20 @@ public class UserDAOImpl extends AbstractDAOImpl
         return result.isEmpty() ? null : result.iterator().next();
     }
 
-    private StringBuilder getFindAllQuery(final Set<Long> adminRoles) {
-        final StringBuilder queryString = new StringBuilder(
-                "SELECT id FROM SyncopeUser WHERE id NOT IN (");
-
-        if (adminRoles == null || adminRoles.isEmpty()) {
-            queryString.append("SELECT syncopeUser_id AS id FROM Membership");
-        } else {
-            queryString.append("SELECT syncopeUser_id FROM Membership M1 ").
-                    append("WHERE syncopeRole_id IN (");
-            queryString.append("SELECT syncopeRole_id FROM Membership M2 ").
-                    append("WHERE M2.syncopeUser_id=M1.syncopeUser_id ").
-                    append("AND syncopeRole_id NOT IN (");
-
-            queryString.append("SELECT id AS syncopeRole_id FROM SyncopeRole");
-            boolean firstRole = true;
-            for (Long adminRoleId : adminRoles) {
-                if (firstRole) {
-                    queryString.append(" WHERE");
-                    firstRole = false;
-                } else {
-                    queryString.append(" OR");
-                }
+    private StringBuilder getFindAllQuery(final Set<Long> adminRoles,
+            final List<Object> parameters) {
 
-                queryString.append(" id=").append(adminRoleId);
-            }
+        return new StringBuilder("SELECT id FROM SyncopeUser u WHERE ").
+                append(adminRolesFilter.getPredicate("u.id",
+                adminRoles, parameters));
+    }
 
-            queryString.append("))");
-        }
-        queryString.append(")");
+    private void fillWithParameters(final Query query,
+            final List<Object> parameters) {
 
-        return queryString;
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
     }
 
     @Override
@@ -185,8 +331,73 @@ public class UserDAOImpl extends AbstractDAOImpl
     public final List<SyncopeUser> findAll(final Set<Long> adminRoles,
             final int page, final int itemsPerPage) {
 
+        return findAll(adminRoles, page, itemsPerPage, UserProjection.ALL);
+    }
+
+    @Override
+    public final List<SyncopeUser> findAll(final Set<Long> adminRoles,
+            final int page, final int itemsPerPage,
+            final UserProjection projection) {
+
+        final List<Object> parameters = new ArrayList<Object>();
         final Query query = entityManager.createNativeQuery(
-                getFindAllQuery(adminRoles).toString());
+                getFindAllQuery(adminRoles, parameters).toString());
+        fillWithParameters(query, parameters);
+
+        query.setFirstResult(itemsPerPage * (page <= 0 ? 0 : page - 1));
+
+        if (itemsPerPage > 0) {
+            query.setMaxResults(itemsPerPage);
+        }
+
+        return findByNativeQuery(query, projection);
+    }
+
+    @Override
+    public final List<SyncopeUser> findAllAfter(final Set<Long> adminRoles,
+            final Long lastId, final int itemsPerPage) {
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder queryString = getFindAllQuery(adminRoles, parameters);
+        parameters.add(lastId == null ? 0L : lastId);
+        queryString.append(" AND id > ?").append(parameters.size()).
+                append(" ORDER BY id");
+
+        Query query = entityManager.createNativeQuery(queryString.toString());
+        fillWithParameters(query, parameters);
+
+        if (itemsPerPage > 0) {
+            query.setMaxResults(itemsPerPage);
+        }
+
+        return findByNativeQuery(query, UserProjection.ALL);
+    }
+
+    private StringBuilder getFindByResourceQuery(final Set<Long> adminRoles,
+            final String resourceName, final List<Object> parameters) {
+
+        StringBuilder queryString = getFindAllQuery(adminRoles, parameters);
+        parameters.add(resourceName);
+        queryString.append(" AND id IN (SELECT users_id FROM ").
+                append("SyncopeUser_TargetResource ").
+                append("WHERE targetResources_name = ?").
+                append(parameters.size()).append(")");
+
+        return queryString;
+    }
+
+    @Override
+    public final List<SyncopeUser> findByResource(final Set<Long> adminRoles,
+            final String resourceName, final int page,
+            final int itemsPerPage, final UserProjection projection) {
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder queryString =
+                getFindByResourceQuery(adminRoles, resourceName, parameters);
+        queryString.append(" ORDER BY id");
+
+        Query query = entityManager.createNativeQuery(queryString.toString());
+        fillWithParameters(query, parameters);
 
         query.setFirstResult(itemsPerPage * (page <= 0 ? 0 : page - 1));
 
@@ -194,52 +405,76 @@ public class UserDAOImpl extends AbstractDAOImpl
             query.setMaxResults(itemsPerPage);
         }
 
-        List<Number> userIds = new ArrayList<Number>();
+        return findByNativeQuery(query, projection);
+    }
+
+    @Override
+    public final Integer countByResource(final Set<Long> adminRoles,
+            final String resourceName) {
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder queryString =
+                getFindByResourceQuery(adminRoles, resourceName, parameters);
+        queryString.insert(0, "SELECT COUNT(id) FROM (");
+        queryString.append(") count_user_id");
+
+        Query countQuery =
+                entityManager.createNativeQuery(queryString.toString());
+        fillWithParameters(countQuery, parameters);
+
+        return ((Number) countQuery.getSingleResult()).intValue();
+    }
+
+    private List<SyncopeUser> findByNativeQuery(final Query query,
+            final UserProjection projection) {
+        List<Long> userIds = new ArrayList<Long>();
         List resultList = query.getResultList();
 
         //fix for HHH-5902 - bug hibernate
         if (resultList != null) {
             for (Object userId : resultList) {
                 if (userId instanceof Object[]) {
-                    userIds.add((Number) ((Object[]) userId)[0]);
+                    userIds.add(((Number) ((Object[]) userId)[0]).longValue());
                 } else {
-                    userIds.add((Number) userId);
+                    userIds.add(((Number) userId).longValue());
                 }
             }
         }
 
-        List<SyncopeUser> result =
-                new ArrayList<SyncopeUser>(userIds.size());
-
-        SyncopeUser user;
-        for (Object userId : userIds) {
-            user = find(((Number) userId).longValue());
-            if (user == null) {
-                LOG.error("Could not find user with id {}, "
-                        + "even though returned by the native query", userId);
-            } else {
-                result.add(user);
-            }
-        }
-
-        return result;
+        return findByIds(userIds, projection);
     }
 
     @Override
     public final Integer count(final Set<Long> adminRoles) {
-        StringBuilder queryString = getFindAllQuery(adminRoles);
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder queryString = getFindAllQuery(adminRoles, parameters);
         queryString.insert(0, "SELECT COUNT(id) FROM (");
         queryString.append(") count_user_id");
 
         Query countQuery =
                 entityManager.createNativeQuery(queryString.toString());
+        fillWithParameters(countQuery, parameters);
 
         return ((Number) countQuery.getSingleResult()).intValue();
     }
 
+    @Override
+    public UserCountEstimate approximateCount(final Set<Long> adminRoles) {
+        int estimate = planner.estimateVisibleUsers(adminRoles);
+
+        // statistics may be out of date, and hidden users are only known
+        // as of changes made on this node: no upper bound can be given
+        return estimate < planner.getExactCountThreshold()
+                ? UserCountEstimate.getExact(count(adminRoles))
+                : new UserCountEstimate(estimate, null, false);
+    }
+
     @Override
     public SyncopeUser save(final SyncopeUser user) {
-        return entityManager.merge(user);
+        SyncopeUser merged = entityManager.merge(user);
+        userSearchIndexDAO.index(merged);
+
+        return merged;
     }
 
     @Override
@@ -267,6 +502,8 @@ public class UserDAOImpl extends AbstractDAOImpl
         }
         user.getMemberships().clear();
 
+        userSearchIndexDAO.unindex(user.getId());
+
         entityManager.remove(user);
     }
 }
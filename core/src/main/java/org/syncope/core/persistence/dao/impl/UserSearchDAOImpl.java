@@ -15,29 +15,50 @@
 package org.syncope.core.persistence.dao.impl;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TemporalType;
 import javax.validation.ValidationException;
+import org.hibernate.Session;
+import org.hibernate.dialect.DB2Dialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.syncope.client.search.AttributeCond;
 import org.syncope.client.search.MembershipCond;
 import org.syncope.client.search.NodeCond;
+import org.syncope.client.search.OrderByClause;
+import org.syncope.core.persistence.beans.role.SyncopeRole;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.beans.user.UAttrValue;
 import org.syncope.core.persistence.beans.user.USchema;
+import org.syncope.core.persistence.beans.user.USearchTrigram;
+import org.syncope.core.persistence.dao.RoleDAO;
 import org.syncope.core.persistence.dao.SchemaDAO;
+import org.syncope.core.persistence.dao.SearchLimitExceededException;
+import org.syncope.core.persistence.dao.UserCountEstimate;
 import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.persistence.dao.UserProjection;
 import org.syncope.core.persistence.dao.UserSearchDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
+import org.syncope.core.persistence.dao.UserSearchResult;
+import org.syncope.core.persistence.search.CompressedIdSet;
+import org.syncope.core.persistence.search.RoleMembershipIndex;
+import org.syncope.core.persistence.search.UserSearchGovernor;
+import org.syncope.core.persistence.search.UserSearchResultCache;
 import org.syncope.types.SchemaType;
 
 @Repository
@@ -45,7 +66,17 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         implements UserSearchDAO {
 
     static final private String EMPTY_ATTR_QUERY =
-            "SELECT user_id FROM user_search_attr WHERE 1=2";
+            "SELECT user_id FROM USearchAttrValue WHERE 1=2";
+
+    /**
+     * Maximum number of search plans kept in cache.
+     */
+    static final private int PLAN_CACHE_SIZE = 512;
+
+    /**
+     * Maximum number of trigrams used to narrow a LIKE search.
+     */
+    static final private int MAX_LIKE_TRIGRAMS = 16;
 
     @Autowired
     private UserDAO userDAO;
@@ -53,60 +84,117 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
     @Autowired
     private SchemaDAO schemaDAO;
 
-    private final Random random;
+    @Autowired
+    private RoleDAO roleDAO;
+
+    @Autowired
+    private AdminRolesFilter adminRolesFilter;
+
+    @Autowired
+    private RoleMembershipIndex roleMembershipIndex;
+
+    @Autowired
+    private UserSearchIndexDAO searchIndexDAO;
+
+    @Autowired
+    private UserSearchResultCache resultCache;
+
+    @Autowired
+    private UserSearchPlanner planner;
+
+    @Autowired
+    private UserSearchGovernor governor;
+
+    /**
+     * LRU cache of search plans: SQL templates with positional parameters,
+     * keyed by the canonical shape of the search condition they implement.
+     */
+    private final Map<String, String> planCache;
+
+    private final AtomicLong planCacheHits;
+
+    private final AtomicLong planCacheMisses;
 
     public UserSearchDAOImpl() {
         super();
 
-        random = new Random(Calendar.getInstance().getTimeInMillis());
+        planCache = Collections.synchronizedMap(
+                new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+                    private static final long serialVersionUID =
+                            -1286658397616573262L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, String> eldest) {
+
+                        return size() > PLAN_CACHE_SIZE;
+                    }
+                });
+        planCacheHits = new AtomicLong();
+        planCacheMisses = new AtomicLong();
     }
 
-    private String getAdminRolesFilter(final Set<Long> adminRoles) {
-        final StringBuilder adminRolesFilter = new StringBuilder();
-        if (adminRoles == null || adminRoles.isEmpty()) {
-            adminRolesFilter.append("SELECT syncopeUser_id AS user_id ").
-                    append("FROM Membership");
-        } else {
-            adminRolesFilter.append("SELECT syncopeUser_id AS user_id ").
-                    append("FROM Membership M1 ").
-                    append("WHERE syncopeRole_id IN (");
-            adminRolesFilter.append("SELECT syncopeRole_id ").
-                    append("FROM Membership M2 ").
-                    append("WHERE M2.syncopeUser_id=M1.syncopeUser_id ").
-                    append("AND syncopeRole_id NOT IN (");
-            adminRolesFilter.append(
-                    "SELECT id AS syncopeRole_id FROM SyncopeRole");
-            boolean firstRole = true;
-            for (Long adminRoleId : adminRoles) {
-                if (firstRole) {
-                    adminRolesFilter.append(" WHERE");
-                    firstRole = false;
-                } else {
-                    adminRolesFilter.append(" OR");
-                }
+    @Override
+    public Integer count(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
 
-                adminRolesFilter.append(" id=").append(adminRoleId);
-            }
-            adminRolesFilter.append("))");
+        governor.checkCondition(searchCondition);
+        searchIndexDAO.indexPending();
+
+        if (!resultCache.isUsable()) {
+            return doCount(adminRoles, searchCondition);
+        }
+
+        String key = getCacheKey("count", adminRoles, searchCondition);
+        Integer result = (Integer) resultCache.get(key);
+        if (result == null) {
+            long generation = resultCache.getGeneration();
+            result = doCount(adminRoles, searchCondition);
+            resultCache.put(key, result, generation,
+                    getDependencies(adminRoles, searchCondition));
         }
 
-        return adminRolesFilter.toString();
+        return result;
     }
 
     @Override
-    public Integer count(final Set<Long> adminRoles,
+    public UserCountEstimate approximateCount(final Set<Long> adminRoles,
             final NodeCond searchCondition) {
 
-        Map<Integer, Object> parameters = Collections.synchronizedMap(
-                new HashMap<Integer, Object>());
+        governor.checkCondition(searchCondition);
+
+        int visible = planner.estimateVisibleUsers(adminRoles);
+        int upperBound = (int) Math.min(visible,
+                planner.getUpperBound(searchCondition));
+        int estimate = (int) Math.min(upperBound,
+                Math.round(planner.estimate(searchCondition) * visible));
+
+        return estimate < planner.getExactCountThreshold()
+                ? UserCountEstimate.getExact(
+                count(adminRoles, searchCondition))
+                : new UserCountEstimate(estimate, upperBound, false);
+    }
+
+    private Integer doCount(final Set<Long> adminRoles,
+            final NodeCond searchCondition) {
+
+        CompressedIdSet matching =
+                getMembershipMatching(adminRoles, searchCondition);
+        if (matching != null) {
+            return matching.cardinality();
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
 
         // 1. get the query string from the search condition
-        StringBuilder queryString = getQuery(searchCondition, parameters);
+        StringBuilder queryString =
+                new StringBuilder(getPlan(searchCondition, parameters));
 
         // 2. take into account administrative roles
         queryString.insert(0, "SELECT u.user_id FROM (");
-        queryString.append(") u WHERE user_id NOT IN (");
-        queryString.append(getAdminRolesFilter(adminRoles)).append(")");
+        queryString.append(") u WHERE ").append(adminRolesFilter.
+                getPredicate("u.user_id", adminRoles, parameters));
 
         // 3. prepare the COUNT query
         queryString.insert(0, "SELECT COUNT(user_id) FROM (");
@@ -119,7 +207,14 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         LOG.debug("Native count query\n{}\nwith parameters\n{}",
                 queryString.toString(), parameters);
 
-        Integer result = ((Number) countQuery.getSingleResult()).intValue();
+        governor.setTimeout(countQuery);
+
+        Integer result;
+        try {
+            result = ((Number) countQuery.getSingleResult()).intValue();
+        } catch (PersistenceException e) {
+            throw governor.translate(e);
+        }
         LOG.debug("Native count query result: {}", result);
 
         return result;
@@ -138,6 +233,17 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
             final int page,
             final int itemsPerPage) {
 
+        return search(adminRoles, searchCondition, page, itemsPerPage,
+                UserProjection.ALL);
+    }
+
+    @Override
+    public List<SyncopeUser> search(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage,
+            final UserProjection projection) {
+
         List<SyncopeUser> result;
 
         LOG.debug("Search condition:\n{}", searchCondition);
@@ -148,7 +254,10 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         }
 
         try {
-            result = doSearch(adminRoles, searchCondition, page, itemsPerPage);
+            result = doSearch(adminRoles, searchCondition,
+                    page, null, itemsPerPage, false, projection).getUsers();
+        } catch (SearchLimitExceededException e) {
+            throw e;
         } catch (Throwable t) {
             LOG.error("While searching users", t);
 
@@ -158,59 +267,345 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         return result;
     }
 
-    private Integer setParameter(final Random random,
-            final Map<Integer, Object> parameters,
-            final Object parameter) {
+    @Override
+    public UserSearchResult searchWithCount(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final int page,
+            final int itemsPerPage) {
+
+        UserSearchResult result;
+
+        LOG.debug("Search condition:\n{}", searchCondition);
+        if (!searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition:\n{}", searchCondition);
+
+            return new UserSearchResult(Collections.EMPTY_LIST, 0);
+        }
+
+        try {
+            result = doSearch(adminRoles, searchCondition,
+                    page, null, itemsPerPage, true, UserProjection.ALL);
+        } catch (SearchLimitExceededException e) {
+            throw e;
+        } catch (Throwable t) {
+            LOG.error("While searching users", t);
+
+            result = new UserSearchResult(Collections.EMPTY_LIST, 0);
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<SyncopeUser> searchAfter(final Set<Long> adminRoles,
+            final NodeCond searchCondition,
+            final Long lastId,
+            final int itemsPerPage) {
+
+        List<SyncopeUser> result;
+
+        LOG.debug("Search condition:\n{}", searchCondition);
+        if (!searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition:\n{}", searchCondition);
 
-        Integer key;
-        synchronized (parameters) {
-            do {
-                key = random.nextInt(Integer.MAX_VALUE);
-            } while (parameters.containsKey(key));
+            return Collections.EMPTY_LIST;
+        }
 
-            parameters.put(key, parameter);
+        try {
+            result = doSearch(adminRoles, searchCondition,
+                    -1, lastId == null ? 0L : lastId, itemsPerPage, false,
+                    UserProjection.ALL).getUsers();
+        } catch (SearchLimitExceededException e) {
+            throw e;
+        } catch (Throwable t) {
+            LOG.error("While searching users", t);
+
+            result = Collections.EMPTY_LIST;
         }
 
-        return key;
+        return result;
+    }
+
+    @Override
+    public long getLimitExceededCount(
+            final SearchLimitExceededException.Limit limit) {
+
+        return governor.getExceededCount(limit);
+    }
+
+    @Override
+    public long getPlanCacheHits() {
+        return planCacheHits.get();
+    }
+
+    @Override
+    public long getPlanCacheMisses() {
+        return planCacheMisses.get();
+    }
+
+    @Override
+    public long getResultCacheHits() {
+        return resultCache.getHits();
+    }
+
+    @Override
+    public long getResultCacheMisses() {
+        return resultCache.getMisses();
+    }
+
+    /**
+     * @return whether the underlying database can compute COUNT(*) OVER ()
+     * along with a page of results
+     */
+    private boolean isWindowCountSupported() {
+        Dialect dialect = ((SessionFactoryImplementor) ((Session) entityManager.
+                getDelegate()).getSessionFactory()).getDialect();
+
+        return dialect instanceof PostgreSQLDialect
+                || dialect instanceof Oracle8iDialect
+                || dialect instanceof DB2Dialect;
     }
 
     private void fillWithParameters(final Query query,
-            final Map<Integer, Object> parameters) {
+            final List<Object> parameters) {
 
-        for (Integer key : parameters.keySet()) {
-            if (parameters.get(key) instanceof Date) {
-                query.setParameter("param" + key,
-                        (Date) parameters.get(key), TemporalType.TIMESTAMP);
+        for (int i = 0; i < parameters.size(); i++) {
+            if (parameters.get(i) instanceof Date) {
+                query.setParameter(i + 1,
+                        (Date) parameters.get(i), TemporalType.TIMESTAMP);
             } else {
-                query.setParameter("param" + key, parameters.get(key));
+                query.setParameter(i + 1, parameters.get(i));
+            }
+        }
+    }
+
+    /**
+     * Build the result cache key: normalized search condition with parameter
+     * values, sort criteria and admin roles.
+     *
+     * @param operation operation and paging
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param nodeCond the search condition
+     * @return cache key
+     */
+    private String getCacheKey(final String operation,
+            final Set<Long> adminRoles, final NodeCond nodeCond) {
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder key = new StringBuilder(operation).append('|');
+        visit(nodeCond, parameters, key, null);
+
+        // length-prefixed, so that values cannot be confused
+        String value;
+        for (Object parameter : parameters) {
+            value = parameter instanceof Date
+                    ? String.valueOf(((Date) parameter).getTime())
+                    : String.valueOf(parameter);
+            key.append('|').append(value.length()).append(':').append(value);
+        }
+
+        if (nodeCond.getOrderBy() != null) {
+            for (OrderByClause clause : nodeCond.getOrderBy()) {
+                key.append("|O(").append(clause.getSchema()).append(',').
+                        append(clause.getDirection()).append(')');
+            }
+        }
+
+        key.append('|').append(adminRoles == null
+                ? "" : new TreeSet<Long>(adminRoles).toString());
+
+        return key.toString();
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param nodeCond the search condition
+     * @return schemas and roles the result of the given search depends on
+     */
+    private UserSearchResultCache.Dependencies getDependencies(
+            final Set<Long> adminRoles, final NodeCond nodeCond) {
+
+        UserSearchResultCache.Dependencies dependencies =
+                new UserSearchResultCache.Dependencies(adminRoles);
+        addDependencies(nodeCond, dependencies);
+
+        if (nodeCond.getOrderBy() != null) {
+            for (OrderByClause clause : nodeCond.getOrderBy()) {
+                dependencies.addSchemaName(clause.getSchema());
+            }
+        }
+
+        return dependencies;
+    }
+
+    private void addDependencies(final NodeCond nodeCond,
+            final UserSearchResultCache.Dependencies dependencies) {
+
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                boolean not = nodeCond.getType() == NodeCond.Type.NOT_LEAF;
+
+                MembershipCond membershipCond = nodeCond.getMembershipCond();
+                if (membershipCond != null) {
+                    // NOT matches members of any other role
+                    if (not) {
+                        dependencies.setAnyRole();
+                    }
+
+                    if (membershipCond.getRoleId() != null) {
+                        dependencies.addRoleId(membershipCond.getRoleId());
+                    } else {
+                        for (SyncopeRole role :
+                                roleDAO.find(membershipCond.getRoleName())) {
+
+                            dependencies.addRoleId(role.getId());
+                        }
+                    }
+                }
+
+                AttributeCond attributeCond = nodeCond.getAttributeCond();
+                if (attributeCond != null) {
+                    dependencies.addSchemaName(attributeCond.getSchema());
+
+                    // matches users without values, i.e. any new user
+                    if ((!not && attributeCond.getType()
+                            == AttributeCond.Type.ISNULL)
+                            || (not && attributeCond.getType()
+                            == AttributeCond.Type.ISNOTNULL)) {
+
+                        dependencies.setAnyUser();
+                    }
+                }
+                break;
+
+            case AND:
+            case OR:
+                addDependencies(nodeCond.getLeftNodeCond(), dependencies);
+                addDependencies(nodeCond.getRightNodeCond(), dependencies);
+                break;
+
+            default:
+        }
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param nodeCond the search condition
+     * @param page page to return, ignored when lastId is not null
+     * @param lastId when not null, return users with greater ids, ordered by
+     * id (keyset pagination)
+     * @param itemsPerPage number of results per page
+     * @param withCount whether the total number of matching users is needed
+     * @param projection parts of users to be returned
+     * @return the list of users matching the given search condition, with
+     * total count if requested
+     */
+    private UserSearchResult doSearch(final Set<Long> adminRoles,
+            final NodeCond nodeCond,
+            final int page, final Long lastId, final int itemsPerPage,
+            final boolean withCount, final UserProjection projection) {
+
+        governor.checkCondition(nodeCond);
+        searchIndexDAO.indexPending();
+
+        UserIdPage userIdPage;
+        if (resultCache.isUsable()) {
+            String key = getCacheKey("search(" + page + ',' + lastId + ','
+                    + itemsPerPage + ',' + withCount + ')',
+                    adminRoles, nodeCond);
+
+            userIdPage = (UserIdPage) resultCache.get(key);
+            if (userIdPage == null) {
+                long generation = resultCache.getGeneration();
+                userIdPage = doSearchIds(adminRoles, nodeCond,
+                        page, lastId, itemsPerPage, withCount);
+                resultCache.put(key, userIdPage, generation,
+                        getDependencies(adminRoles, nodeCond));
             }
+        } else {
+            userIdPage = doSearchIds(adminRoles, nodeCond,
+                    page, lastId, itemsPerPage, withCount);
+        }
+
+        // limits might have changed since results were cached
+        if (itemsPerPage < 0) {
+            governor.checkResultSize(userIdPage.getUserIds().size());
         }
+
+        return new UserSearchResult(
+                userDAO.findByIds(userIdPage.getUserIds(), projection),
+                userIdPage.getTotalCount());
     }
 
-    private List<SyncopeUser> doSearch(final Set<Long> adminRoles,
+    /**
+     * Same as above, only returning ids of matching users.
+     */
+    private UserIdPage doSearchIds(final Set<Long> adminRoles,
             final NodeCond nodeCond,
-            final int page, final int itemsPerPage) {
+            final int page, final Long lastId, final int itemsPerPage,
+            final boolean withCount) {
+
+        if (lastId != null || nodeCond.getOrderBy() == null
+                || nodeCond.getOrderBy().isEmpty()) {
+
+            CompressedIdSet matching =
+                    getMembershipMatching(adminRoles, nodeCond);
+            if (matching != null) {
+                return doSearchIds(matching, page, lastId, itemsPerPage,
+                        withCount);
+            }
+        }
 
-        Map<Integer, Object> parameters = Collections.synchronizedMap(
-                new HashMap<Integer, Object>());
+        List<Object> parameters = new ArrayList<Object>();
 
         // 1. get the query string from the search condition
-        StringBuilder queryString = getQuery(nodeCond, parameters);
+        StringBuilder queryString =
+                new StringBuilder(getPlan(nodeCond, parameters));
+
+        // 2. take into account administrative roles and requested ordering
+        // (not applicable to keyset pagination, always ordered by id)
+        StringBuilder orderByColumns = new StringBuilder();
+        StringBuilder orderByJoins = new StringBuilder();
+        StringBuilder orderByClauses = new StringBuilder();
+        if (lastId == null) {
+            getOrderBy(nodeCond.getOrderBy(), parameters,
+                    orderByColumns, orderByJoins, orderByClauses);
+        }
 
-        // 2. take into account administrative roles
-        queryString.insert(0, "SELECT u.user_id FROM (");
-        queryString.append(") u WHERE user_id NOT IN (");
-        queryString.append(getAdminRolesFilter(adminRoles)).append(")");
+        boolean windowCount = withCount && isWindowCountSupported();
+        queryString.insert(0, "SELECT u.user_id"
+                + (windowCount ? ", COUNT(*) OVER () AS total_count" : "")
+                + orderByColumns + " FROM (");
+        queryString.append(") u").append(orderByJoins).append(" WHERE ").
+                append(adminRolesFilter.getPredicate("u.user_id",
+                adminRoles, parameters));
+        if (lastId != null) {
+            parameters.add(lastId);
+            queryString.append(" AND u.user_id > ?").append(parameters.size()).
+                    append(" ORDER BY u.user_id");
+        } else if (orderByClauses.length() > 0) {
+            queryString.append(" ORDER BY ").append(orderByClauses).
+                    append(", u.user_id");
+        }
 
         // 3. prepare the search query
         Query query = entityManager.createNativeQuery(queryString.toString());
 
         // page starts from 1, while setFirtResult() starts from 0
-        query.setFirstResult(itemsPerPage * (page <= 0 ? 0 : page - 1));
+        int firstResult = itemsPerPage * (page <= 0 ? 0 : page - 1);
+        if (lastId == null) {
+            query.setFirstResult(firstResult);
+        }
 
         if (itemsPerPage >= 0) {
             query.setMaxResults(itemsPerPage);
+        } else if (governor.getMaxResults() > 0) {
+            // one more, for telling whether the limit is exceeded
+            query.setMaxResults(governor.getMaxResults() + 1);
         }
+        governor.setTimeout(query);
 
         // 4. populate the search query with parameter values
         fillWithParameters(query, parameters);
@@ -218,90 +613,425 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         LOG.debug("Native query\n{}\nwith parameters\n{}",
                 queryString.toString(), parameters);
 
-        // 5. Prepare the result (avoiding duplicates - set)
-        Set<Number> userIds = new HashSet<Number>();
-        List resultList = query.getResultList();
+        // 5. Prepare the result (avoiding duplicates - set, preserving the
+        // order returned by the native query)
+        Set<Long> userIds = new LinkedHashSet<Long>();
+        Integer totalCount = null;
+        List resultList;
+        try {
+            resultList = query.getResultList();
+        } catch (PersistenceException e) {
+            throw governor.translate(e);
+        }
 
         //fix for HHH-5902 - bug hibernate
         if (resultList != null) {
             for (Object userId : resultList) {
                 if (userId instanceof Object[]) {
-                    userIds.add((Number) ((Object[]) userId)[0]);
+                    userIds.add(((Number) ((Object[]) userId)[0]).longValue());
+                    if (windowCount && totalCount == null) {
+                        totalCount = ((Number) ((Object[]) userId)[1]).
+                                intValue();
+                    }
                 } else {
-                    userIds.add((Number) userId);
+                    userIds.add(((Number) userId).longValue());
                 }
             }
         }
 
-        List<SyncopeUser> result =
-                new ArrayList<SyncopeUser>(userIds.size());
+        if (itemsPerPage < 0) {
+            governor.checkResultSize(userIds.size());
+        }
+
+        // 6. when not computed by the query, the total count can be derived
+        // from a partial page; otherwise a COUNT query is needed
+        if (withCount && totalCount == null) {
+            if (!userIds.isEmpty()
+                    && (itemsPerPage < 0 || userIds.size() < itemsPerPage)) {
 
-        SyncopeUser user;
-        for (Object userId : userIds) {
-            user = userDAO.find(((Number) userId).longValue());
-            if (user == null) {
-                LOG.error("Could not find user with id {}, "
-                        + "even though returned by the native query", userId);
+                totalCount = (itemsPerPage < 0 ? 0 : firstResult)
+                        + userIds.size();
+            } else if (userIds.isEmpty() && firstResult == 0) {
+                totalCount = 0;
             } else {
-                result.add(user);
+                totalCount = count(adminRoles, nodeCond);
             }
         }
 
+        return new UserIdPage(new ArrayList<Long>(userIds),
+                totalCount == null ? -1 : totalCount);
+    }
+
+    /**
+     * Same as above, for users already known to match, ordered by id.
+     *
+     * @param matching ids of users matching the search condition
+     * @param page page to return, ignored when lastId is not null
+     * @param lastId when not null, return users with greater ids
+     * @param itemsPerPage number of results per page
+     * @param withCount whether the total number of matching users is needed
+     * @return ids of the users in the requested page, with total count if
+     * requested
+     */
+    private UserIdPage doSearchIds(final CompressedIdSet matching,
+            final int page, final Long lastId, final int itemsPerPage,
+            final boolean withCount) {
+
+        if (itemsPerPage < 0) {
+            governor.checkResultSize(matching.cardinality());
+        }
+
+        int fromIndex;
+        if (lastId == null) {
+            // page starts from 1
+            fromIndex = matching.nextSetBit(0);
+            for (int i = 0; fromIndex >= 0
+                    && i < itemsPerPage * (page <= 0 ? 0 : page - 1); i++) {
+
+                fromIndex = matching.nextSetBit(fromIndex + 1);
+            }
+        } else {
+            fromIndex = lastId >= Integer.MAX_VALUE
+                    ? -1 : matching.nextSetBit(lastId.intValue() + 1);
+        }
+
+        List<Long> userIds = new ArrayList<Long>();
+        for (int i = fromIndex;
+                i >= 0 && (itemsPerPage < 0 || userIds.size() < itemsPerPage);
+                i = matching.nextSetBit(i + 1)) {
+
+            userIds.add(Long.valueOf(i));
+        }
+
+        return new UserIdPage(userIds,
+                withCount ? matching.cardinality() : -1);
+    }
+
+    /**
+     * Evaluate conditions only made of role memberships by intersecting,
+     * joining and subtracting role member sets, then remove users not
+     * visible to the caller. Visibility is not taken from the role
+     * membership index, which learns about changes made on other nodes
+     * asynchronously, but from the database, as for SQL searches: a single
+     * query, whose cost depends on the number of hidden users, not on the
+     * number of role members.
+     *
+     * @param adminRoles the set of admin roles owned by the caller
+     * @param nodeCond the search condition
+     * @return ids of matching users, or null when the condition cannot be
+     * evaluated on the role membership index
+     */
+    private CompressedIdSet getMembershipMatching(final Set<Long> adminRoles,
+            final NodeCond nodeCond) {
+
+        if (!isMembershipOnly(nodeCond) || !roleMembershipIndex.isUsable()) {
+            return null;
+        }
+
+        CompressedIdSet result = getMembershipMatching(nodeCond);
+        result.andNot(getHidden(adminRoles));
+
+        return result;
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @return users with at least one membership outside the given roles,
+     * hence not visible to the caller
+     */
+    private CompressedIdSet getHidden(final Set<Long> adminRoles) {
+        List<Object> parameters = new ArrayList<Object>();
+
+        Query query = entityManager.createNativeQuery(
+                adminRolesFilter.getHiddenQuery(adminRoles, parameters));
+        fillWithParameters(query, parameters);
+        governor.setTimeout(query);
+
+        CompressedIdSet result = new CompressedIdSet();
+        try {
+            for (Object userId : query.getResultList()) {
+                result.set(((Number) userId).intValue());
+            }
+        } catch (PersistenceException e) {
+            throw governor.translate(e);
+        }
+
+        return result;
+    }
+
+    private CompressedIdSet getMembershipMatching(final NodeCond nodeCond) {
+        CompressedIdSet result;
+
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                MembershipCond cond = nodeCond.getMembershipCond();
+
+                Set<Long> roleIds = new HashSet<Long>();
+                if (cond.getRoleId() != null) {
+                    roleIds.add(cond.getRoleId());
+                } else {
+                    for (SyncopeRole role : roleDAO.find(cond.getRoleName())) {
+                        roleIds.add(role.getId());
+                    }
+                }
+
+                result = roleMembershipIndex.getMembers(roleIds);
+
+                // as for the SQL view, NOT only applies to role members
+                if (nodeCond.getType() == NodeCond.Type.NOT_LEAF) {
+                    CompressedIdSet others =
+                            roleMembershipIndex.getAllMembers();
+                    others.andNot(result);
+                    result = others;
+                }
+                break;
+
+            case AND:
+                result = getMembershipMatching(nodeCond.getLeftNodeCond());
+                result.and(getMembershipMatching(nodeCond.getRightNodeCond()));
+                break;
+
+            case OR:
+                result = getMembershipMatching(nodeCond.getLeftNodeCond());
+                result.or(getMembershipMatching(nodeCond.getRightNodeCond()));
+                break;
+
+            default:
+                result = new CompressedIdSet();
+        }
+
+        return result;
+    }
+
+    private static boolean isMembershipOnly(final NodeCond nodeCond) {
+        boolean result;
+
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                result = nodeCond.getMembershipCond() != null
+                        && nodeCond.getAttributeCond() == null;
+                break;
+
+            case AND:
+            case OR:
+                result = isMembershipOnly(nodeCond.getLeftNodeCond())
+                        && isMembershipOnly(nodeCond.getRightNodeCond());
+                break;
+
+            default:
+                result = false;
+        }
+
         return result;
     }
 
-    private StringBuilder getQuery(final NodeCond nodeCond,
-            final Map<Integer, Object> parameters) {
+    /**
+     * Translate sort criteria into a LEFT OUTER JOIN on the search table for
+     * each schema, ordering on the value column matching the schema type.
+     * Multivalue schemas are ignored, since they would give duplicate rows.
+     *
+     * @param orderBy sort criteria
+     * @param parameters query parameters
+     * @param columns where to add the selected sort columns
+     * @param joins where to add the joins
+     * @param clauses where to add ORDER BY clauses
+     */
+    private void getOrderBy(final List<OrderByClause> orderBy,
+            final List<Object> parameters,
+            final StringBuilder columns,
+            final StringBuilder joins,
+            final StringBuilder clauses) {
+
+        if (orderBy == null) {
+            return;
+        }
+
+        USchema schema;
+        String alias;
+        int aliasIndex = 0;
+        for (OrderByClause clause : orderBy) {
+            schema = schemaDAO.find(clause.getSchema(), USchema.class);
+            if (schema == null || schema.isMultivalue()) {
+                LOG.warn("Ignoring invalid or multivalue schema '{}' "
+                        + "for ordering", clause.getSchema());
+                continue;
+            }
+
+            alias = "ob" + aliasIndex++;
+            parameters.add(schema.getName());
+
+            columns.append(", ").append(alias).append('.').
+                    append(getFieldName(schema.getType())).
+                    append(" AS ").append(alias).append("_value");
+            joins.append(" LEFT OUTER JOIN USearchAttrValue ").append(alias).
+                    append(" ON ").append(alias).append(".user_id=u.user_id").
+                    append(" AND ").append(alias).
+                    append(".schema_name=?").append(parameters.size());
+
+            if (clauses.length() > 0) {
+                clauses.append(", ");
+            }
+            clauses.append(alias).append("_value ").
+                    append(clause.getDirection().name());
+        }
+    }
+
+    /**
+     * Get the SQL template for the given search condition, from the plan
+     * cache if available, and collect the matching parameter values.
+     *
+     * @param nodeCond the search condition
+     * @param parameters where to add parameter values, in positional order
+     * @return SQL template with positional parameters
+     */
+    private String getPlan(final NodeCond searchCondition,
+            final List<Object> parameters) {
+
+        // operand order is part of the key
+        NodeCond nodeCond = planner.optimize(searchCondition);
+
+        StringBuilder key = new StringBuilder();
+        visit(nodeCond, parameters, key, null);
+
+        String plan = planCache.get(key.toString());
+        if (plan == null) {
+            planCacheMisses.incrementAndGet();
+
+            StringBuilder query = new StringBuilder();
+            visit(nodeCond, new ArrayList<Object>(), new StringBuilder(),
+                    query);
+            plan = query.toString();
+
+            planCache.put(key.toString(), plan);
+        } else {
+            planCacheHits.incrementAndGet();
+        }
+
+        return plan;
+    }
 
-        StringBuilder query = new StringBuilder();
+    /**
+     * Visit the given search condition, collecting parameter values and the
+     * canonical key; also build the SQL template when query is not null.
+     *
+     * @param nodeCond the search condition
+     * @param parameters where to add parameter values, in positional order
+     * @param key where to build the canonical key
+     * @param query where to build the SQL template, or null
+     */
+    private void visit(final NodeCond nodeCond,
+            final List<Object> parameters,
+            final StringBuilder key,
+            final StringBuilder query) {
 
         switch (nodeCond.getType()) {
 
             case LEAF:
             case NOT_LEAF:
                 if (nodeCond.getMembershipCond() != null) {
-                    query.append(getQuery(nodeCond.getMembershipCond(),
+                    visit(nodeCond.getMembershipCond(),
                             nodeCond.getType() == NodeCond.Type.NOT_LEAF,
-                            parameters));
+                            parameters, key, query);
                 }
                 if (nodeCond.getAttributeCond() != null) {
-                    query.append(getQuery(nodeCond.getAttributeCond(),
+                    visit(nodeCond.getAttributeCond(),
                             nodeCond.getType() == NodeCond.Type.NOT_LEAF,
-                            parameters));
+                            parameters, key, query);
                 }
                 break;
 
             case AND:
-                query.append("(").
-                        append(getQuery(nodeCond.getLeftNodeCond(),
-                        parameters)).
-                        append(" INTERSECT ").
-                        append(getQuery(nodeCond.getRightNodeCond(),
-                        parameters).
-                        append(")"));
+                // all operands of a chain of ANDs are joined at once, in
+                // the given order
+                List<NodeCond> operands = new ArrayList<NodeCond>();
+                addAndOperands(nodeCond, operands);
+
+                key.append(nodeCond.getType().name()).append('(');
+                for (int i = 0; i < operands.size(); i++) {
+                    if (i > 0) {
+                        key.append(',');
+                    }
+                    if (query != null) {
+                        query.append(i == 0
+                                ? "SELECT t0.user_id FROM ("
+                                : " INNER JOIN (");
+                    }
+
+                    visit(operands.get(i), parameters, key, query);
+
+                    if (query != null) {
+                        query.append(") t").append(i);
+                        if (i > 0) {
+                            query.append(" ON t").append(i).
+                                    append(".user_id=t0.user_id");
+                        }
+                    }
+                }
+                key.append(')');
                 break;
 
             case OR:
-                query.append("(").
-                        append(getQuery(nodeCond.getLeftNodeCond(),
-                        parameters)).
-                        append(" UNION ").
-                        append(getQuery(nodeCond.getRightNodeCond(),
-                        parameters).
-                        append(")"));
+                key.append(nodeCond.getType().name()).append('(');
+                if (query != null) {
+                    query.append("(");
+                }
+
+                visit(nodeCond.getLeftNodeCond(), parameters, key, query);
+
+                key.append(',');
+                if (query != null) {
+                    query.append(" UNION ");
+                }
+
+                visit(nodeCond.getRightNodeCond(), parameters, key, query);
+
+                key.append(')');
+                if (query != null) {
+                    query.append(")");
+                }
                 break;
 
             default:
         }
+    }
 
-        return query;
+    private void addAndOperands(final NodeCond nodeCond,
+            final List<NodeCond> operands) {
+
+        if (nodeCond.getType() == NodeCond.Type.AND) {
+            addAndOperands(nodeCond.getLeftNodeCond(), operands);
+            addAndOperands(nodeCond.getRightNodeCond(), operands);
+        } else {
+            operands.add(nodeCond);
+        }
     }
 
-    private String getQuery(final MembershipCond cond,
-            final boolean not, final Map<Integer, Object> parameters) {
+    private void visit(final MembershipCond cond, final boolean not,
+            final List<Object> parameters,
+            final StringBuilder key,
+            final StringBuilder query) {
+
+        String column;
+        if (cond.getRoleId() != null) {
+            column = "role_id";
+            parameters.add(cond.getRoleId());
+        } else {
+            column = "role_name";
+            parameters.add(cond.getRoleName());
+        }
+
+        key.append(not ? "NOT_" : "").append("M(").append(column).append(')');
 
-        StringBuilder query = new StringBuilder(
-                "SELECT DISTINCT user_id FROM user_search_membership WHERE ");
+        if (query == null) {
+            return;
+        }
+
+        query.append("SELECT DISTINCT user_id FROM user_search_membership ").
+                append("WHERE ");
 
         if (not) {
             query.append("user_id NOT IN (").
@@ -309,21 +1039,11 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
                     append("FROM user_search_membership WHERE ");
         }
 
-        Integer paramKey;
-        if (cond.getRoleId() != null) {
-            paramKey = setParameter(random, parameters, cond.getRoleId());
-            query.append("role_id=:param").append(paramKey);
-        } else if (cond.getRoleName() != null) {
-            paramKey = setParameter(random, parameters, cond.getRoleName());
-            query.append("role_name=:param").append(paramKey);
-        }
+        query.append(column).append("=?").append(parameters.size());
 
         if (not) {
             query.append(")");
         }
-
-
-        return query.toString();
     }
 
     private String getFieldName(final SchemaType type) {
@@ -357,13 +1077,86 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         return result;
     }
 
-    private String getQuery(final AttributeCond cond,
-            final boolean not, final Map<Integer, Object> parameters) {
+    /**
+     * Extract trigrams from the literal parts of a LIKE pattern: any value
+     * matching the pattern contains all of them.
+     *
+     * @param expression LIKE pattern
+     * @return at most MAX_LIKE_TRIGRAMS distinct trigrams
+     */
+    private static List<String> getLikeTrigrams(final String expression) {
+        Set<String> result = new LinkedHashSet<String>();
+
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i <= expression.length(); i++) {
+            char c = i < expression.length() ? expression.charAt(i) : '%';
+            if (c == '%' || c == '_' || c == '\\') {
+                result.addAll(USearchTrigram.getTrigrams(literal.toString()));
+                literal.setLength(0);
+
+                // escaped characters are not considered
+                if (c == '\\') {
+                    i++;
+                }
+            } else {
+                literal.append(c);
+            }
+        }
+
+        return new ArrayList<String>(result).subList(0,
+                Math.min(result.size(), MAX_LIKE_TRIGRAMS));
+    }
+
+    static AttributeCond.Type getNegatedType(final AttributeCond.Type type) {
+        AttributeCond.Type result;
+
+        switch (type) {
+            case ISNULL:
+                result = AttributeCond.Type.ISNOTNULL;
+                break;
+
+            case ISNOTNULL:
+                result = AttributeCond.Type.ISNULL;
+                break;
+
+            case GE:
+                result = AttributeCond.Type.LT;
+                break;
+
+            case GT:
+                result = AttributeCond.Type.LE;
+                break;
+
+            case LE:
+                result = AttributeCond.Type.GT;
+                break;
+
+            case LT:
+                result = AttributeCond.Type.GE;
+                break;
+
+            default:
+                // EQ and LIKE are negated in the generated SQL
+                result = type;
+        }
+
+        return result;
+    }
+
+    private void visit(final AttributeCond cond, final boolean not,
+            final List<Object> parameters,
+            final StringBuilder key,
+            final StringBuilder query) {
 
         USchema schema = schemaDAO.find(cond.getSchema(), USchema.class);
         if (schema == null) {
             LOG.warn("Ignoring invalid schema '{}'", cond.getSchema());
-            return EMPTY_ATTR_QUERY;
+
+            key.append("EMPTY");
+            if (query != null) {
+                query.append(EMPTY_ATTR_QUERY);
+            }
+            return;
         }
 
         UAttrValue attrValue = new UAttrValue();
@@ -378,51 +1171,72 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
         } catch (ValidationException e) {
             LOG.error("Could not validate expression '"
                     + cond.getExpression() + "'", e);
-            return EMPTY_ATTR_QUERY;
-        }
-
-        if (not) {
-            switch (cond.getType()) {
 
-                case ISNULL:
-                    cond.setType(AttributeCond.Type.ISNOTNULL);
-                    break;
-
-                case ISNOTNULL:
-                    cond.setType(AttributeCond.Type.ISNULL);
-                    break;
+            key.append("EMPTY");
+            if (query != null) {
+                query.append(EMPTY_ATTR_QUERY);
+            }
+            return;
+        }
 
-                case GE:
-                    cond.setType(AttributeCond.Type.LT);
-                    break;
+        AttributeCond.Type type = not
+                ? getNegatedType(cond.getType()) : cond.getType();
+
+        // trigrams can only narrow positive LIKE matches
+        List<String> trigrams = type == AttributeCond.Type.LIKE && !not
+                && schema.getType() == SchemaType.String
+                ? getLikeTrigrams(cond.getExpression())
+                : Collections.<String>emptyList();
+
+        key.append(not ? "NOT_" : "").append("A(").
+                append(schema.getName()).append(',').
+                append(schema.getType()).append(',').
+                append(type.name());
+        if (type == AttributeCond.Type.LIKE) {
+            key.append(",T").append(trigrams.size());
+        }
+        key.append(')');
 
-                case GT:
-                    cond.setType(AttributeCond.Type.LE);
-                    break;
+        int likePosition = 0;
+        switch (type) {
+            case EQ:
+            case GE:
+            case GT:
+            case LE:
+            case LT:
+                parameters.add(attrValue.getValue());
+                break;
 
-                case LE:
-                    cond.setType(AttributeCond.Type.GT);
-                    break;
+            case LIKE:
+                if (schema.getType() == SchemaType.String) {
+                    parameters.add(cond.getExpression());
+                    likePosition = parameters.size();
+                    parameters.addAll(trigrams);
+                }
+                break;
 
-                case LT:
-                    cond.setType(AttributeCond.Type.GE);
-                    break;
+            default:
+        }
 
-                default:
-            }
+        if (query == null) {
+            return;
         }
 
-        StringBuilder query = new StringBuilder(
-                "SELECT DISTINCT user_id FROM user_search_attr WHERE ").append(
-                "schema_name='").append(schema.getName());
+        // users without values for the given schema have no rows at all in
+        // the search index: ISNULL is hence evaluated as complement
+        if (type == AttributeCond.Type.ISNULL) {
+            query.append("SELECT id AS user_id FROM SyncopeUser ").
+                    append("WHERE id NOT IN (").
+                    append("SELECT user_id FROM USearchAttrValue WHERE ").
+                    append("schema_name='").append(schema.getName()).
+                    append("')");
+            return;
+        }
 
-        Integer paramKey;
-        switch (cond.getType()) {
+        query.append("SELECT DISTINCT user_id FROM USearchAttrValue WHERE ").
+                append("schema_name='").append(schema.getName());
 
-            case ISNULL:
-                query.append("' AND ").append(getFieldName(schema.getType())).
-                        append(" IS NULL");
-                break;
+        switch (type) {
 
             case ISNOTNULL:
                 query.append("' AND ").append(getFieldName(schema.getType())).
@@ -434,10 +1248,27 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
                     query.append("' AND ").
                             append(getFieldName(schema.getType()));
                     if (not) {
-                        query.append(" NOT ");
+                        query.append(" NOT");
+                    }
+                    query.append(" LIKE ?").append(likePosition);
+
+                    // only values containing all trigrams can match
+                    if (!trigrams.isEmpty()) {
+                        query.append(" AND id IN (SELECT value_id ").
+                                append("FROM USearchTrigram WHERE ").
+                                append("schema_name='").
+                                append(schema.getName()).
+                                append("' AND trigram IN (");
+                        for (int i = 0; i < trigrams.size(); i++) {
+                            if (i > 0) {
+                                query.append(',');
+                            }
+                            query.append('?').append(likePosition + 1 + i);
+                        }
+                        query.append(") GROUP BY value_id ").
+                                append("HAVING COUNT(value_id)=").
+                                append(trigrams.size()).append(')');
                     }
-                    query.append(" LIKE '").append(cond.getExpression()).
-                            append("'");
                 } else {
                     query.append("' AND 1=1");
                     LOG.error("LIKE is only compatible with string schemas");
@@ -445,48 +1276,59 @@ public class UserSearchDAOImpl extends AbstractDAOImpl
                 break;
 
             case EQ:
-                paramKey = setParameter(random, parameters,
-                        attrValue.getValue());
                 query.append("' AND ").append(getFieldName(schema.getType()));
                 if (not) {
                     query.append("<>");
                 } else {
                     query.append("=");
                 }
-                query.append(":param").append(paramKey);
+                query.append("?").append(parameters.size());
                 break;
 
             case GE:
-                paramKey = setParameter(random, parameters,
-                        attrValue.getValue());
                 query.append("' AND ").append(getFieldName(schema.getType())).
-                        append(">=:param").append(paramKey);
+                        append(">=?").append(parameters.size());
                 break;
 
             case GT:
-                paramKey = setParameter(random, parameters,
-                        attrValue.getValue());
                 query.append("' AND ").append(getFieldName(schema.getType())).
-                        append(">:param").append(paramKey);
+                        append(">?").append(parameters.size());
                 break;
 
             case LE:
-                paramKey = setParameter(random, parameters,
-                        attrValue.getValue());
                 query.append("' AND ").append(getFieldName(schema.getType())).
-                        append("<=:param").append(paramKey);
+                        append("<=?").append(parameters.size());
                 break;
 
             case LT:
-                paramKey = setParameter(random, parameters,
-                        attrValue.getValue());
                 query.append("' AND ").append(getFieldName(schema.getType())).
-                        append("<:param").append(paramKey);
+                        append("<?").append(parameters.size());
                 break;
 
             default:
         }
+    }
+
+    /**
+     * Ids of the users in a page of search results, with total count.
+     */
+    private static class UserIdPage {
+
+        private final List<Long> userIds;
+
+        private final int totalCount;
 
-        return query.toString();
+        public UserIdPage(final List<Long> userIds, final int totalCount) {
+            this.userIds = Collections.unmodifiableList(userIds);
+            this.totalCount = totalCount;
+        }
+
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
     }
 }
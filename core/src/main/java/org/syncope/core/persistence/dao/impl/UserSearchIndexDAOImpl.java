@@ -0,0 +1,382 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.persistence.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.syncope.core.persistence.beans.AbstractAttr;
+import org.syncope.core.persistence.beans.AbstractAttrValue;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.UAttr;
+import org.syncope.core.persistence.beans.user.UAttrUniqueValue;
+import org.syncope.core.persistence.beans.user.UAttrValue;
+import org.syncope.core.persistence.beans.user.USearchAttrValue;
+import org.syncope.core.persistence.beans.user.USearchTrigram;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexEvent;
+
+@Repository
+public class UserSearchIndexDAOImpl extends AbstractDAOImpl
+        implements UserSearchIndexDAO {
+
+    /**
+     * Number of string values processed at once when rebuilding trigrams.
+     */
+    private static final int REBUILD_CHUNK_SIZE = 1000;
+
+    /**
+     * Maximum number of ids in a single IN clause.
+     */
+    private static final int MAX_IN_IDS = 1000;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @param userIds user ids
+     * @return existing index entries of the given users, by user id
+     */
+    private Map<Long, List<USearchAttrValue>> findByUsers(
+            final Collection<Long> userIds) {
+
+        Map<Long, List<USearchAttrValue>> result =
+                new HashMap<Long, List<USearchAttrValue>>();
+        for (List<Long> chunk : split(userIds)) {
+            Query query = entityManager.createQuery(
+                    "SELECT e FROM " + USearchAttrValue.class.getSimpleName()
+                    + " e WHERE e.userId IN (:userIds)");
+            query.setParameter("userIds", chunk);
+
+            for (USearchAttrValue entry :
+                    (List<USearchAttrValue>) query.getResultList()) {
+
+                List<USearchAttrValue> entries = result.get(entry.getUserId());
+                if (entries == null) {
+                    entries = new ArrayList<USearchAttrValue>();
+                    result.put(entry.getUserId(), entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<List<Long>> split(final Collection<Long> ids) {
+        List<Long> all = new ArrayList<Long>(ids);
+        List<List<Long>> result = new ArrayList<List<Long>>();
+        for (int i = 0; i < all.size(); i += MAX_IN_IDS) {
+            result.add(all.subList(i, Math.min(i + MAX_IN_IDS, all.size())));
+        }
+
+        return result;
+    }
+
+    private void addTrigrams(final USearchAttrValue value) {
+        for (String trigram :
+                USearchTrigram.getTrigrams(value.getStringValue())) {
+
+            entityManager.persist(new USearchTrigram(value, trigram));
+        }
+    }
+
+    /**
+     * @param property either valueId or userId
+     * @param ids ids of the trigrams to be removed
+     */
+    private void removeTrigrams(final String property,
+            final Collection<Long> ids) {
+
+        for (List<Long> chunk : split(ids)) {
+            Query query = entityManager.createQuery("DELETE FROM "
+                    + USearchTrigram.class.getSimpleName()
+                    + " e WHERE e." + property + " IN (:ids)");
+            query.setParameter("ids", chunk);
+            query.executeUpdate();
+        }
+    }
+
+    @Override
+    public void index(final SyncopeUser user) {
+        if (user.getId() != null) {
+            schedule(user.getId(), false);
+        }
+    }
+
+    @Override
+    public void unindex(final Long userId) {
+        schedule(userId, true);
+    }
+
+    /**
+     * Record the given user as to be indexed before the current transaction
+     * commits, or at the first search made by the transaction: statements
+     * reading and deleting index entries flush the persistence context, and
+     * running them at each user change would break JDBC batching of the
+     * changes themselves.
+     *
+     * @param userId user id
+     * @param removed whether the user was deleted
+     */
+    private void schedule(final Long userId, final boolean removed) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Collections.singletonMap(userId, removed));
+            return;
+        }
+
+        Map<Long, Boolean> pending = (Map<Long, Boolean>)
+                TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new LinkedHashMap<Long, Boolean>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void beforeCommit(final boolean readOnly) {
+                            applyPending();
+                        }
+
+                        @Override
+                        public void afterCompletion(final int status) {
+                            TransactionSynchronizationManager.
+                                    unbindResourceIfPossible(
+                                    UserSearchIndexDAOImpl.this);
+                        }
+                    });
+        }
+
+        // a user deleted after being changed needs to be removed only
+        Boolean wasRemoved = pending.get(userId);
+        pending.put(userId, removed
+                || (wasRemoved != null && wasRemoved.booleanValue()));
+    }
+
+    /**
+     * @return whether there were changes not yet applied to the index
+     */
+    private boolean applyPending() {
+        Map<Long, Boolean> pending = (Map<Long, Boolean>)
+                TransactionSynchronizationManager.getResource(this);
+        if (pending == null || pending.isEmpty()) {
+            return false;
+        }
+
+        Map<Long, Boolean> users = new LinkedHashMap<Long, Boolean>(pending);
+        pending.clear();
+        apply(users);
+
+        return true;
+    }
+
+    @Override
+    public void indexPending() {
+        if (applyPending()) {
+            entityManager.flush();
+        }
+    }
+
+    /**
+     * @param user user
+     * @return index entries for the current attribute values of the given
+     * user, by value id
+     */
+    private static Map<Long, USearchAttrValue> getEntries(
+            final SyncopeUser user) {
+
+        Map<Long, USearchAttrValue> result =
+                new HashMap<Long, USearchAttrValue>();
+        List<? extends AbstractAttrValue> values;
+        for (AbstractAttr attribute : user.getAttributes()) {
+            if (attribute.getSchema() == null) {
+                continue;
+            }
+
+            values = attribute.getUniqueValue() == null
+                    ? attribute.getValues()
+                    : Collections.singletonList(
+                    (AbstractAttrValue) attribute.getUniqueValue());
+            for (AbstractAttrValue value : values) {
+                if (value.getId() != null) {
+                    result.put(value.getId(), new USearchAttrValue(
+                            user.getId(), attribute.getSchema().getName(),
+                            value));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Align the index entries of the given users with their attribute
+     * values.
+     *
+     * @param users user ids, mapped to whether the user was deleted
+     */
+    private void apply(final Map<Long, Boolean> users) {
+        // 1. read what is needed: the first query flushes the changes made
+        // by the transaction so far, all together
+        Map<Long, List<USearchAttrValue>> existingByUser =
+                findByUsers(users.keySet());
+
+        List<Long> removedUserIds = new ArrayList<Long>();
+        List<Long> staleTrigramValueIds = new ArrayList<Long>();
+        List<USearchAttrValue> removed = new ArrayList<USearchAttrValue>();
+        List<USearchAttrValue> changed = new ArrayList<USearchAttrValue>();
+        List<USearchAttrValue> added = new ArrayList<USearchAttrValue>();
+        List<UserSearchIndexEvent> events =
+                new ArrayList<UserSearchIndexEvent>();
+        for (Map.Entry<Long, Boolean> user : users.entrySet()) {
+            List<USearchAttrValue> existing =
+                    existingByUser.get(user.getKey());
+            if (existing == null) {
+                existing = Collections.emptyList();
+            }
+
+            SyncopeUser syncopeUser = user.getValue()
+                    ? null
+                    : entityManager.find(SyncopeUser.class, user.getKey());
+            Map<Long, USearchAttrValue> entries = syncopeUser == null
+                    ? Collections.<Long, USearchAttrValue>emptyMap()
+                    : getEntries(syncopeUser);
+
+            // 2. compare existing entries with current values
+            Set<String> schemaNames = new HashSet<String>();
+            for (USearchAttrValue entry : existing) {
+                USearchAttrValue current = entries.remove(entry.getId());
+                if (current == null) {
+                    removed.add(entry);
+                    schemaNames.add(entry.getSchemaName());
+                    staleTrigramValueIds.add(entry.getId());
+                } else if (!current.hasSameContent(entry)) {
+                    changed.add(current);
+                    schemaNames.add(entry.getSchemaName());
+                    schemaNames.add(current.getSchemaName());
+                    staleTrigramValueIds.add(entry.getId());
+                }
+            }
+            for (USearchAttrValue current : entries.values()) {
+                added.add(current);
+                schemaNames.add(current.getSchemaName());
+            }
+
+            if (syncopeUser == null) {
+                removedUserIds.add(user.getKey());
+                events.add(new UserSearchIndexEvent(this,
+                        UserSearchIndexEvent.Type.UNINDEX, null,
+                        user.getKey(), schemaNames));
+            } else {
+                events.add(new UserSearchIndexEvent(this,
+                        UserSearchIndexEvent.Type.INDEX, syncopeUser,
+                        user.getKey(), schemaNames));
+            }
+        }
+
+        // 3. bulk deletes, before any entity change to be flushed
+        removeTrigrams("userId", removedUserIds);
+        removeTrigrams("valueId", staleTrigramValueIds);
+
+        // 4. entity changes, flushed in JDBC batches
+        for (USearchAttrValue entry : removed) {
+            entityManager.remove(entry);
+        }
+        for (USearchAttrValue entry : changed) {
+            entityManager.merge(entry);
+            addTrigrams(entry);
+        }
+        for (USearchAttrValue entry : added) {
+            entityManager.persist(entry);
+            addTrigrams(entry);
+        }
+
+        for (UserSearchIndexEvent event : events) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    @Override
+    public int rebuild() {
+        entityManager.createQuery("DELETE FROM "
+                + USearchAttrValue.class.getSimpleName()).executeUpdate();
+
+        int result = 0;
+        for (String valueTable : new String[]{
+                    UAttrValue.class.getSimpleName(),
+                    UAttrUniqueValue.class.getSimpleName()}) {
+
+            result += entityManager.createNativeQuery("INSERT INTO "
+                    + USearchAttrValue.class.getSimpleName()
+                    + " (id, user_id, schema_name, booleanvalue, datevalue, "
+                    + "doublevalue, longvalue, stringvalue) "
+                    + "SELECT uav.id, ua.owner_id, ua.schema_name, "
+                    + "uav.booleanvalue, uav.datevalue, uav.doublevalue, "
+                    + "uav.longvalue, uav.stringvalue "
+                    + "FROM " + valueTable + " uav, "
+                    + UAttr.class.getSimpleName() + " ua "
+                    + "WHERE uav.attribute_id = ua.id").executeUpdate();
+        }
+
+        // trigrams are computed here, as string functions vary among DBMSes
+        entityManager.createQuery("DELETE FROM "
+                + USearchTrigram.class.getSimpleName()).executeUpdate();
+
+        // chunks are read by id, not by offset, and the persistence context
+        // is cleared after each of them: the whole index is never in memory
+        Query query = entityManager.createQuery(
+                "SELECT e.id, e.userId, e.schemaName, e.stringValue FROM "
+                + USearchAttrValue.class.getSimpleName()
+                + " e WHERE e.stringValue IS NOT NULL AND e.id > :lastId "
+                + "ORDER BY e.id");
+        query.setMaxResults(REBUILD_CHUNK_SIZE);
+        List<Object[]> values;
+        Long lastId = Long.valueOf(-1);
+        do {
+            query.setParameter("lastId", lastId);
+            values = query.getResultList();
+            for (Object[] value : values) {
+                lastId = (Long) value[0];
+                for (String trigram :
+                        USearchTrigram.getTrigrams((String) value[3])) {
+
+                    entityManager.persist(new USearchTrigram(lastId,
+                            (Long) value[1], (String) value[2], trigram));
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        } while (values.size() == REBUILD_CHUNK_SIZE);
+
+        LOG.debug("User search index rebuilt with {} entries", result);
+
+        eventPublisher.publishEvent(new UserSearchIndexEvent(this,
+                UserSearchIndexEvent.Type.REBUILD, null, null, null));
+
+        return result;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.syncope.client.search.AttributeCond;
+import org.syncope.client.search.MembershipCond;
+import org.syncope.client.search.NodeCond;
+import org.syncope.core.persistence.beans.role.SyncopeRole;
+import org.syncope.core.persistence.dao.RoleDAO;
+import org.syncope.core.persistence.search.CompressedIdSet;
+import org.syncope.core.persistence.search.RoleMembershipIndex;
+import org.syncope.core.persistence.search.UserSearchStatistics;
+
+/**
+ * Rewrite search conditions before they are translated into SQL: operands
+ * of nested ANDs are gathered and sorted by estimated selectivity, so that
+ * the most selective ones are joined first.
+ *
+ * Selectivity is the estimated fraction of users matching a condition,
+ * derived from UserSearchStatistics and from the role membership index.
+ */
+@Component
+public class UserSearchPlanner {
+
+    /**
+     * Fraction of users with values for a schema matching a range.
+     */
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    /**
+     * Fraction of users with values for a schema matching a LIKE pattern.
+     */
+    private static final double LIKE_SELECTIVITY = 0.1;
+
+    /**
+     * Fraction of users member of a role, when unknown.
+     */
+    private static final double MEMBERSHIP_SELECTIVITY = 0.1;
+
+    @Autowired
+    private UserSearchStatistics statistics;
+
+    @Autowired
+    private RoleMembershipIndex roleMembershipIndex;
+
+    @Autowired
+    private RoleDAO roleDAO;
+
+    /**
+     * Approximate counts below this value are replaced by exact counts.
+     */
+    private int exactCountThreshold = 10000;
+
+    public int getExactCountThreshold() {
+        return exactCountThreshold;
+    }
+
+    public void setExactCountThreshold(final int exactCountThreshold) {
+        this.exactCountThreshold = exactCountThreshold;
+    }
+
+    /**
+     * @param nodeCond the search condition
+     * @return equivalent search condition, where each chain of ANDs is a
+     * left-deep tree with operands sorted by increasing selectivity
+     */
+    public NodeCond optimize(final NodeCond nodeCond) {
+        NodeCond result;
+
+        switch (nodeCond.getType()) {
+
+            case AND:
+                List<NodeCond> operands = new ArrayList<NodeCond>();
+                addAndOperands(nodeCond, operands);
+
+                final List<Double> selectivities = new ArrayList<Double>();
+                List<Integer> order = new ArrayList<Integer>();
+                for (int i = 0; i < operands.size(); i++) {
+                    selectivities.add(estimate(operands.get(i)));
+                    order.add(i);
+                }
+
+                // stable sort: equally selective operands keep their order
+                Collections.sort(order, new Comparator<Integer>() {
+
+                    @Override
+                    public int compare(final Integer index1,
+                            final Integer index2) {
+
+                        return Double.compare(selectivities.get(index1),
+                                selectivities.get(index2));
+                    }
+                });
+
+                result = operands.get(order.get(0));
+                for (int i = 1; i < order.size(); i++) {
+                    result = NodeCond.getAndCond(result,
+                            operands.get(order.get(i)));
+                }
+                break;
+
+            case OR:
+                result = NodeCond.getOrCond(
+                        optimize(nodeCond.getLeftNodeCond()),
+                        optimize(nodeCond.getRightNodeCond()));
+                break;
+
+            default:
+                result = nodeCond;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param nodeCond the search condition
+     * @return estimated fraction of users matching the given condition
+     */
+    public double estimate(final NodeCond nodeCond) {
+        double result;
+
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                boolean not = nodeCond.getType() == NodeCond.Type.NOT_LEAF;
+                result = nodeCond.getMembershipCond() != null
+                        ? estimate(nodeCond.getMembershipCond(), not)
+                        : estimate(nodeCond.getAttributeCond(), not);
+                break;
+
+            case AND:
+                result = estimate(nodeCond.getLeftNodeCond())
+                        * estimate(nodeCond.getRightNodeCond());
+                break;
+
+            case OR:
+                double left = estimate(nodeCond.getLeftNodeCond());
+                double right = estimate(nodeCond.getRightNodeCond());
+                result = left + right - left * right;
+                break;
+
+            default:
+                result = 1.0;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @return estimated number of users visible with the given admin roles
+     */
+    public int estimateVisibleUsers(final Set<Long> adminRoles) {
+        long result = statistics.getUserCount();
+        if (roleMembershipIndex.isUsable()) {
+            result -= roleMembershipIndex.getHidden(adminRoles).cardinality();
+        }
+
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, result));
+    }
+
+    /**
+     * Upper bound of the number of users matching the given condition, as
+     * of the last refresh of statistics: an AND cannot match more users than
+     * any of its operands, an OR no more than the sum of its operands.
+     *
+     * @param nodeCond the search condition
+     * @return upper bound of the number of users matching the given condition
+     */
+    public long getUpperBound(final NodeCond nodeCond) {
+        long userCount = statistics.getUserCount();
+
+        long result;
+        switch (nodeCond.getType()) {
+
+            case LEAF:
+            case NOT_LEAF:
+                boolean not = nodeCond.getType() == NodeCond.Type.NOT_LEAF;
+                result = nodeCond.getMembershipCond() != null
+                        ? getUpperBound(nodeCond.getMembershipCond(), not)
+                        : getUpperBound(nodeCond.getAttributeCond(), not);
+                break;
+
+            case AND:
+                result = Math.min(getUpperBound(nodeCond.getLeftNodeCond()),
+                        getUpperBound(nodeCond.getRightNodeCond()));
+                break;
+
+            case OR:
+                result = getUpperBound(nodeCond.getLeftNodeCond())
+                        + getUpperBound(nodeCond.getRightNodeCond());
+                break;
+
+            default:
+                result = userCount;
+        }
+
+        return Math.min(userCount, result);
+    }
+
+    /**
+     * Collect operands of a chain of ANDs, optimizing them.
+     */
+    private void addAndOperands(final NodeCond nodeCond,
+            final List<NodeCond> operands) {
+
+        if (nodeCond.getType() == NodeCond.Type.AND) {
+            addAndOperands(nodeCond.getLeftNodeCond(), operands);
+            addAndOperands(nodeCond.getRightNodeCond(), operands);
+        } else {
+            operands.add(optimize(nodeCond));
+        }
+    }
+
+    private double estimate(final AttributeCond cond, final boolean not) {
+        long userCount = statistics.getUserCount();
+        UserSearchStatistics.SchemaStatistics schemaStatistics =
+                statistics.getSchemaStatistics(cond.getSchema());
+        if (userCount == 0) {
+            return 0.0;
+        }
+
+        double present = schemaStatistics == null
+                ? 0.0 : 1.0 - schemaStatistics.getNullFraction(userCount);
+        double equal = schemaStatistics == null
+                ? 0.0 : present / Math.max(1,
+                schemaStatistics.getDistinctValueCount());
+
+        AttributeCond.Type type = not
+                ? UserSearchDAOImpl.getNegatedType(cond.getType())
+                : cond.getType();
+
+        double result;
+        switch (type) {
+            case ISNULL:
+                result = 1.0 - present;
+                break;
+
+            case ISNOTNULL:
+                result = present;
+                break;
+
+            case EQ:
+                result = not ? present - equal : equal;
+                break;
+
+            case LIKE:
+                result = present
+                        * (not ? 1.0 - LIKE_SELECTIVITY : LIKE_SELECTIVITY);
+                break;
+
+            case GE:
+            case GT:
+            case LE:
+            case LT:
+                result = present * RANGE_SELECTIVITY;
+                break;
+
+            default:
+                result = 1.0;
+        }
+
+        return result;
+    }
+
+    private long getUpperBound(final AttributeCond cond, final boolean not) {
+        long userCount = statistics.getUserCount();
+        UserSearchStatistics.SchemaStatistics schemaStatistics =
+                statistics.getSchemaStatistics(cond.getSchema());
+        long present = schemaStatistics == null
+                ? 0 : schemaStatistics.getUserCount();
+
+        AttributeCond.Type type = not
+                ? UserSearchDAOImpl.getNegatedType(cond.getType())
+                : cond.getType();
+
+        // only users with values for the schema match any other type
+        return type == AttributeCond.Type.ISNULL
+                ? userCount - present : present;
+    }
+
+    private long getUpperBound(final MembershipCond cond, final boolean not) {
+        if (!roleMembershipIndex.isUsable()) {
+            return statistics.getUserCount();
+        }
+
+        return getMembers(cond, not).cardinality();
+    }
+
+    private CompressedIdSet getMembers(final MembershipCond cond,
+            final boolean not) {
+
+        Set<Long> roleIds = new HashSet<Long>();
+        if (cond.getRoleId() != null) {
+            roleIds.add(cond.getRoleId());
+        } else {
+            for (SyncopeRole role : roleDAO.find(cond.getRoleName())) {
+                roleIds.add(role.getId());
+            }
+        }
+
+        CompressedIdSet members = roleMembershipIndex.getMembers(roleIds);
+        if (not) {
+            CompressedIdSet others = roleMembershipIndex.getAllMembers();
+            others.andNot(members);
+            members = others;
+        }
+
+        return members;
+    }
+
+    private double estimate(final MembershipCond cond, final boolean not) {
+        if (!roleMembershipIndex.isUsable()) {
+            return not
+                    ? 1.0 - MEMBERSHIP_SELECTIVITY : MEMBERSHIP_SELECTIVITY;
+        }
+
+        long userCount = statistics.getUserCount();
+        if (userCount == 0) {
+            return 0.0;
+        }
+
+        return Math.min(1.0,
+                (double) getMembers(cond, not).cardinality() / userCount);
+    }
+}
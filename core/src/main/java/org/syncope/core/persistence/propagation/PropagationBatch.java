@@ -0,0 +1,84 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.propagation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.syncope.core.persistence.beans.TaskExecution;
+
+/**
+ * Task executions whose propagation is deferred: used by bulk operations,
+ * where no connector is called until all users of a chunk have been saved.
+ * Mandatory executions are kept in order of addition, optional ones are
+ * grouped by target resource.
+ */
+public class PropagationBatch {
+
+    private final List<TaskExecution> mandatoryExecutions;
+
+    private final Map<String, List<TaskExecution>> executions;
+
+    public PropagationBatch() {
+        mandatoryExecutions = new ArrayList<TaskExecution>();
+        executions = new LinkedHashMap<String, List<TaskExecution>>();
+    }
+
+    /**
+     * @param execution deferred task execution
+     * @param mandatory whether the execution is mandatory
+     */
+    public void add(final TaskExecution execution, final boolean mandatory) {
+        if (mandatory) {
+            mandatoryExecutions.add(execution);
+            return;
+        }
+
+        String resourceName = execution.getTask().getResource().getName();
+
+        List<TaskExecution> resourceExecutions = executions.get(resourceName);
+        if (resourceExecutions == null) {
+            resourceExecutions = new ArrayList<TaskExecution>();
+            executions.put(resourceName, resourceExecutions);
+        }
+        resourceExecutions.add(execution);
+    }
+
+    /**
+     * @return deferred mandatory task executions, in order of addition
+     */
+    public List<TaskExecution> getMandatoryExecutions() {
+        return mandatoryExecutions;
+    }
+
+    /**
+     * @return deferred optional task executions, grouped by target resource
+     * name
+     */
+    public Collection<List<TaskExecution>> getExecutionsByResource() {
+        return executions.values();
+    }
+
+    public boolean isEmpty() {
+        return mandatoryExecutions.isEmpty() && executions.isEmpty();
+    }
+
+    public void clear() {
+        mandatoryExecutions.clear();
+        executions.clear();
+    }
+}
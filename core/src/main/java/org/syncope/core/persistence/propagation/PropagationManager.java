@@ -36,9 +36,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.syncope.core.persistence.ConnectorInstanceLoader;
+import org.syncope.core.persistence.Metadata;
+import org.syncope.core.persistence.Metadata.SchemaInfo;
+import org.syncope.core.persistence.MetadataRegistry;
 import org.syncope.core.persistence.beans.AbstractAttrValue;
-import org.syncope.core.persistence.beans.AbstractSchema;
 import org.syncope.core.persistence.beans.ConnectorInstance;
 import org.syncope.core.persistence.beans.TargetResource;
 import org.syncope.core.persistence.beans.SchemaMapping;
@@ -51,7 +60,6 @@ import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.beans.user.UAttr;
 import org.syncope.core.persistence.beans.user.UAttrValue;
 import org.syncope.core.persistence.beans.user.USchema;
-import org.syncope.core.persistence.dao.SchemaDAO;
 import org.syncope.core.persistence.dao.TaskDAO;
 import org.syncope.core.persistence.dao.TaskExecutionDAO;
 import org.syncope.core.workflow.Constants;
@@ -74,10 +82,10 @@ public class PropagationManager {
             LoggerFactory.getLogger(PropagationManager.class);
 
     /**
-     * Schema DAO.
+     * Schema and mapping metadata.
      */
     @Autowired
-    private SchemaDAO schemaDAO;
+    private MetadataRegistry metadataRegistry;
 
     /**
      * Task DAO.
@@ -97,6 +105,12 @@ public class PropagationManager {
     @Resource(name = "taskExecutionWorkflow")
     private Workflow workflow;
 
+    /**
+     * For performing deferred propagations in their own transaction.
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     /**
      * Create the user on every associated resource.
      * Exceptions will be ignored.
@@ -124,7 +138,26 @@ public class PropagationManager {
      * @throws PropagationException
      */
     public void create(final SyncopeUser user,
-            final String password, Set<String> mandatoryResourceNames)
+            final String password, final Set<String> mandatoryResourceNames)
+            throws PropagationException {
+
+        create(user, password, mandatoryResourceNames, null);
+    }
+
+    /**
+     * Same as create(), but propagations are deferred to the given batch,
+     * when not null.
+     *
+     * @param user to be created.
+     * @param password to be set.
+     * @param mandatoryResourceNames to ask for mandatory or optional
+     * provisioning.
+     * @param batch where to defer propagations, if not null
+     * @throws PropagationException
+     */
+    public void create(final SyncopeUser user,
+            final String password, Set<String> mandatoryResourceNames,
+            final PropagationBatch batch)
             throws PropagationException {
 
         if (mandatoryResourceNames == null) {
@@ -142,7 +175,8 @@ public class PropagationManager {
         ResourceOperations resourceOperations = new ResourceOperations();
         resourceOperations.set(ResourceOperationType.CREATE, resources);
 
-        provision(user, password, resourceOperations, mandatoryResourceNames);
+        provision(user, password, resourceOperations, mandatoryResourceNames,
+                batch);
     }
 
     /**
@@ -161,14 +195,37 @@ public class PropagationManager {
     public void update(final SyncopeUser user,
             final String password,
             final ResourceOperations resourceOperations,
-            Set<String> mandatoryResourceNames)
+            final Set<String> mandatoryResourceNames)
+            throws PropagationException {
+
+        update(user, password, resourceOperations, mandatoryResourceNames,
+                null);
+    }
+
+    /**
+     * Same as update(), but propagations are deferred to the given batch,
+     * when not null.
+     *
+     * @param user to be updated.
+     * @param password to be updated.
+     * @param affectedResources resources affected by this update
+     * @param mandatoryResourceNames to ask for mandatory or optional update.
+     * @param batch where to defer propagations, if not null
+     * @throws PropagationException if anything goes wrong
+     */
+    public void update(final SyncopeUser user,
+            final String password,
+            final ResourceOperations resourceOperations,
+            Set<String> mandatoryResourceNames,
+            final PropagationBatch batch)
             throws PropagationException {
 
         if (mandatoryResourceNames == null) {
             mandatoryResourceNames = Collections.EMPTY_SET;
         }
 
-        provision(user, password, resourceOperations, mandatoryResourceNames);
+        provision(user, password, resourceOperations, mandatoryResourceNames,
+                batch);
     }
 
     /**
@@ -182,7 +239,24 @@ public class PropagationManager {
      * @param mandatoryResourceNames to ask for mandatory or optyional delete
      * @throws PropagationException if anything goes wrong
      */
-    public void delete(SyncopeUser user, Set<String> mandatoryResourceNames)
+    public void delete(final SyncopeUser user,
+            final Set<String> mandatoryResourceNames)
+            throws PropagationException {
+
+        delete(user, mandatoryResourceNames, null);
+    }
+
+    /**
+     * Same as delete(), but propagations are deferred to the given batch,
+     * when not null.
+     *
+     * @param user to be deleted
+     * @param mandatoryResourceNames to ask for mandatory or optyional delete
+     * @param batch where to defer propagations, if not null
+     * @throws PropagationException if anything goes wrong
+     */
+    public void delete(final SyncopeUser user,
+            Set<String> mandatoryResourceNames, final PropagationBatch batch)
             throws PropagationException {
 
         if (mandatoryResourceNames == null) {
@@ -200,7 +274,8 @@ public class PropagationManager {
         ResourceOperations resourceOperations = new ResourceOperations();
         resourceOperations.set(ResourceOperationType.DELETE, resources);
 
-        provision(user, null, resourceOperations, mandatoryResourceNames);
+        provision(user, null, resourceOperations, mandatoryResourceNames,
+                batch);
     }
 
     /**
@@ -208,13 +283,15 @@ public class PropagationManager {
      * @param user
      * @param mandatoryResourceNames
      * @param merge
+     * @param batch where to defer propagations, if not null
      * @throws PropagationException
      */
     private void provision(
             final SyncopeUser user,
             final String password,
             final ResourceOperations resourceOperations,
-            final Set<String> mandatoryResourceNames)
+            final Set<String> mandatoryResourceNames,
+            final PropagationBatch batch)
             throws PropagationException {
 
         LOG.debug("Provisioning with user {}:\n{}", user, resourceOperations);
@@ -264,25 +341,51 @@ public class PropagationManager {
                             execution, e);
                 }
 
-                LOG.debug("Execution started for {}", task);
-
-                propagate(execution);
+                if (batch != null) {
+                    LOG.debug("Execution deferred for {}", task);
+                    batch.add(execution, mandatoryResourceNames.contains(
+                            resource.getName()));
+                    continue;
+                }
 
-                LOG.debug("Execution finished for {}", task);
+                if (mandatoryResourceNames.contains(resource.getName())) {
+                    propagateMandatory(execution);
+                } else {
+                    LOG.debug("Execution started for {}", task);
 
-                // Propagation is interrupted as soon as the result of the
-                // communication with a mandatory resource is in error
-                if (mandatoryResourceNames.contains(resource.getName())
-                        && WFUtils.getTaskExecutionStatus(workflow, execution)
-                        != TaskExecutionStatus.SUCCESS) {
+                    propagate(execution);
 
-                    throw new PropagationException(resource.getName(),
-                            execution.getMessage());
+                    LOG.debug("Execution finished for {}", task);
                 }
             }
         }
     }
 
+    /**
+     * Propagation is interrupted as soon as the result of the communication
+     * with a mandatory resource is in error.
+     *
+     * @param execution mandatory task execution
+     * @throws PropagationException if the propagation did not succeed
+     */
+    private void propagateMandatory(final TaskExecution execution)
+            throws PropagationException {
+
+        LOG.debug("Execution started for {}", execution.getTask());
+
+        propagate(execution);
+
+        LOG.debug("Execution finished for {}", execution.getTask());
+
+        if (WFUtils.getTaskExecutionStatus(workflow, execution)
+                != TaskExecutionStatus.SUCCESS) {
+
+            throw new PropagationException(
+                    execution.getTask().getResource().getName(),
+                    execution.getMessage());
+        }
+    }
+
     private Class getSourceMappingTypeClass(
             SourceMappingType sourceMappingType) {
 
@@ -327,9 +430,11 @@ public class PropagationManager {
         // resource field values
         Set objValues;
 
+        Metadata metadata = metadataRegistry.getMetadata();
+
         // syncope user attribute
         UAttr attr;
-        AbstractSchema schema;
+        SchemaInfo schema;
         // syncope user attribute schema type
         SchemaType schemaType = null;
         // syncope user attribute values
@@ -343,9 +448,10 @@ public class PropagationManager {
                     case UserSchema:
                     case RoleSchema:
                     case MembershipSchema:
-                        schema = schemaDAO.find(mapping.getSourceAttrName(),
+                        schema = metadata.getSchema(
                                 getSourceMappingTypeClass(
-                                mapping.getSourceMappingType()));
+                                mapping.getSourceMappingType()),
+                                mapping.getSourceAttrName());
                         schemaType = schema.getType();
 
                         attr = user.getAttribute(mapping.getSourceAttrName());
@@ -464,6 +570,120 @@ public class PropagationManager {
         return Collections.singletonMap(accountId, attributes);
     }
 
+    /**
+     * Perform the given mandatory propagations, in order.
+     *
+     * @param executions mandatory task executions, deferred to a batch
+     * @throws PropagationException as soon as a propagation does not succeed
+     */
+    public void propagateMandatory(final List<TaskExecution> executions)
+            throws PropagationException {
+
+        for (TaskExecution execution : executions) {
+            propagateMandatory(execution);
+        }
+    }
+
+    /**
+     * Record the given mandatory propagations as successful without
+     * performing them again, as they were already performed within a
+     * transaction that was rolled back afterwards.
+     *
+     * @param executions mandatory task executions, deferred to a batch
+     */
+    public void setPropagated(final List<TaskExecution> executions) {
+        for (TaskExecution execution : executions) {
+            try {
+                WFUtils.doExecuteAction(workflow,
+                        Constants.TASKEXECUTION_WORKFLOW,
+                        Constants.ACTION_OK,
+                        execution.getWorkflowId(),
+                        Collections.singletonMap(
+                        PropagationMode.SYNC.toString(), null));
+            } catch (WorkflowException e) {
+                LOG.error("While executing OK action on {}", execution, e);
+            }
+
+            Date now = new Date();
+            execution.setStartDate(now);
+            execution.setEndDate(now);
+            execution.setMessage("Already propagated");
+            taskExecutionDAO.save(execution);
+        }
+    }
+
+    /**
+     * Perform the optional propagations deferred to the given batch, in a
+     * new transaction once the current one is committed; nothing is
+     * propagated if the current transaction is rolled back.
+     *
+     * @param batch deferred propagations
+     */
+    public void propagateAfterCommit(final PropagationBatch batch) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            propagate(batch);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCommit() {
+                        try {
+                            propagateInNewTransaction(batch);
+                        } catch (RuntimeException e) {
+                            // the committed transaction is not affected
+                            LOG.error("While performing deferred "
+                                    + "propagations", e);
+                        }
+                    }
+                });
+    }
+
+    private void propagateInNewTransaction(final PropagationBatch batch) {
+        TransactionTemplate template =
+                new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.execute(new TransactionCallbackWithoutResult() {
+
+            @Override
+            protected void doInTransactionWithoutResult(
+                    final TransactionStatus status) {
+
+                propagate(batch);
+            }
+        });
+    }
+
+    /**
+     * Perform the optional propagations deferred to the given batch, then
+     * empty the batch. Executions are iterated grouped by target resource,
+     * one at a time: each is sent to its connector on its own, as no real
+     * batching is performed. Executions are looked up again, as the batch
+     * may outlive the transaction that created them.
+     *
+     * @param batch deferred propagations
+     */
+    public void propagate(final PropagationBatch batch) {
+        TaskExecution actual;
+        for (List<TaskExecution> executions :
+                batch.getExecutionsByResource()) {
+
+            for (TaskExecution execution : executions) {
+                actual = taskExecutionDAO.find(execution.getId());
+                if (actual == null) {
+                    LOG.error("Deferred execution {} not found", execution);
+                } else {
+                    propagate(actual);
+                }
+            }
+        }
+
+        batch.clear();
+    }
+
     public void propagate(final TaskExecution execution) {
         final Date startDate = new Date();
         String taskExecutionMessage = null;
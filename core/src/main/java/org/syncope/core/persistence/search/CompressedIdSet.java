@@ -0,0 +1,635 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import java.util.Arrays;
+
+/**
+ * Set of non-negative int ids, compressed as Roaring bitmaps do: ids are
+ * grouped by their 16 high bits, and each group holds its 16 low bits
+ * either as a sorted array, while it has at most 4096 ids, or as a 65536
+ * bits bitmap. Unlike java.util.BitSet, memory depends on the number of
+ * ids, not on the largest one, so that sparse or high user ids stay cheap;
+ * set operations only visit groups present on both sides, when possible.
+ *
+ * Same methods and semantics as the BitSet ones with the same name; not
+ * thread-safe.
+ */
+public class CompressedIdSet implements Cloneable {
+
+    /**
+     * Maximum number of ids in an array container; beyond, a bitmap takes
+     * less memory.
+     */
+    private static final int ARRAY_MAX_SIZE = 4096;
+
+    /**
+     * Words of a bitmap container.
+     */
+    private static final int BITMAP_WORDS = 1024;
+
+    /**
+     * High 16 bits of the ids in each container, sorted.
+     */
+    private char[] keys;
+
+    private Container[] containers;
+
+    private int size;
+
+    public CompressedIdSet() {
+        keys = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    private static char high(final int id) {
+        if (id < 0) {
+            throw new IndexOutOfBoundsException("id < 0: " + id);
+        }
+
+        return (char) (id >>> 16);
+    }
+
+    private static char low(final int id) {
+        return (char) id;
+    }
+
+    private int indexOf(final char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertAt(final int index, final char key,
+            final Container container) {
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1,
+                size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeAt(final int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index,
+                size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    /**
+     * @param id id to be added
+     */
+    public void set(final int id) {
+        char key = high(id);
+        int index = indexOf(key);
+        if (index >= 0) {
+            containers[index] = containers[index].add(low(id));
+        } else {
+            insertAt(-index - 1, key, new ArrayContainer().add(low(id)));
+        }
+    }
+
+    /**
+     * @param id id to be removed
+     */
+    public void clear(final int id) {
+        int index = indexOf(high(id));
+        if (index >= 0) {
+            Container container = containers[index].remove(low(id));
+            if (container.getCardinality() == 0) {
+                removeAt(index);
+            } else {
+                containers[index] = container;
+            }
+        }
+    }
+
+    /**
+     * Remove all ids.
+     */
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * @param id id
+     * @return whether the given id is in this set
+     */
+    public boolean get(final int id) {
+        int index = indexOf(high(id));
+        return index >= 0 && containers[index].contains(low(id));
+    }
+
+    /**
+     * @return whether this set has no ids
+     */
+    public boolean isEmpty() {
+        // empty containers are never kept
+        return size == 0;
+    }
+
+    /**
+     * @return number of ids in this set
+     */
+    public int cardinality() {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            result += containers[i].getCardinality();
+        }
+
+        return result;
+    }
+
+    /**
+     * @param fromId id to start from, inclusive
+     * @return the first id in this set not lower than the given one, or -1
+     */
+    public int nextSetBit(final int fromId) {
+        char key = high(fromId);
+        int index = indexOf(key);
+        if (index >= 0) {
+            int next = containers[index].next(low(fromId));
+            if (next >= 0) {
+                return (key << 16) | next;
+            }
+            index++;
+        } else {
+            index = -index - 1;
+        }
+
+        return index < size
+                ? (keys[index] << 16) | containers[index].next(0)
+                : -1;
+    }
+
+    /**
+     * Add all ids in the given set to this one.
+     *
+     * @param other set
+     */
+    public void or(final CompressedIdSet other) {
+        if (other == this) {
+            return;
+        }
+
+        char[] newKeys = new char[size + other.size];
+        Container[] newContainers = new Container[size + other.size];
+        int newSize = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                newKeys[newSize] = keys[i];
+                newContainers[newSize++] = containers[i++];
+            } else if (i == size || keys[i] > other.keys[j]) {
+                newKeys[newSize] = other.keys[j];
+                newContainers[newSize++] = other.containers[j++].copy();
+            } else {
+                newKeys[newSize] = keys[i];
+                newContainers[newSize++] =
+                        containers[i++].or(other.containers[j++]);
+            }
+        }
+
+        keys = newKeys;
+        containers = newContainers;
+        size = newSize;
+        if (keys.length == 0) {
+            keys = new char[4];
+            containers = new Container[4];
+        }
+    }
+
+    /**
+     * Keep only ids also in the given set.
+     *
+     * @param other set
+     */
+    public void and(final CompressedIdSet other) {
+        if (other == this) {
+            return;
+        }
+
+        int newSize = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.getCardinality() > 0) {
+                    keys[newSize] = keys[i];
+                    containers[newSize++] = container;
+                }
+            }
+        }
+
+        Arrays.fill(containers, newSize, size, null);
+        size = newSize;
+    }
+
+    /**
+     * Remove all ids in the given set from this one.
+     *
+     * @param other set
+     */
+    public void andNot(final CompressedIdSet other) {
+        if (other == this) {
+            clear();
+            return;
+        }
+
+        int newSize = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.size && other.keys[j] == keys[i]
+                    ? containers[i].andNot(other.containers[j])
+                    : containers[i];
+            if (container.getCardinality() > 0) {
+                keys[newSize] = keys[i];
+                containers[newSize++] = container;
+            }
+        }
+
+        Arrays.fill(containers, newSize, size, null);
+        size = newSize;
+    }
+
+    @Override
+    public CompressedIdSet clone() {
+        CompressedIdSet result;
+        try {
+            result = (CompressedIdSet) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e.getMessage());
+        }
+
+        result.keys = keys.clone();
+        result.containers = new Container[containers.length];
+        for (int i = 0; i < size; i++) {
+            result.containers[i] = containers[i].copy();
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(i);
+            if (i == Integer.MAX_VALUE) {
+                break;
+            }
+        }
+
+        return result.append('}').toString();
+    }
+
+    /**
+     * Low 16 bits of the ids sharing the same high 16 bits. Operations
+     * change this container, possibly replacing it with the returned one;
+     * the argument container is never changed.
+     */
+    private abstract static class Container {
+
+        abstract int getCardinality();
+
+        abstract boolean contains(char value);
+
+        /**
+         * @param value value to start from, inclusive
+         * @return the first value not lower than the given one, or -1
+         */
+        abstract int next(int value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container or(Container other);
+
+        abstract Container and(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract BitmapContainer toBitmap();
+    }
+
+    private static class ArrayContainer extends Container {
+
+        private char[] values;
+
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(final char[] values, final int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int getCardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int next(final int value) {
+            int index = Arrays.binarySearch(values, 0, cardinality,
+                    (char) value);
+            if (index < 0) {
+                index = -index - 1;
+            }
+
+            return index < cardinality ? values[index] : -1;
+        }
+
+        @Override
+        Container add(final char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                return toBitmap().add(value);
+            }
+
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values,
+                        Math.min(cardinality * 2, ARRAY_MAX_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1,
+                    cardinality - index);
+            values[index] = value;
+            cardinality++;
+
+            return this;
+        }
+
+        @Override
+        Container remove(final char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index,
+                        cardinality - index - 1);
+                cardinality--;
+            }
+
+            return this;
+        }
+
+        @Override
+        Container or(final Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.copy().or(this);
+            }
+
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int resultSize = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality
+                        || (i < cardinality && values[i] < array.values[j])) {
+
+                    result[resultSize++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[resultSize++] = array.values[j++];
+                } else {
+                    result[resultSize++] = values[i++];
+                    j++;
+                }
+            }
+
+            ArrayContainer union = new ArrayContainer(result, resultSize);
+            return resultSize > ARRAY_MAX_SIZE ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container and(final Container other) {
+            int resultSize = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    values[resultSize++] = values[i];
+                }
+            }
+            cardinality = resultSize;
+
+            return this;
+        }
+
+        @Override
+        Container andNot(final Container other) {
+            int resultSize = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    values[resultSize++] = values[i];
+                }
+            }
+            cardinality = resultSize;
+
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(
+                    Arrays.copyOf(values, Math.max(cardinality, 4)),
+                    cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                result.add(values[i]);
+            }
+
+            return result;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+
+        private final long[] words;
+
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int getCardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int next(final int value) {
+            int index = value >>> 6;
+            long word = words[index] & (-1L << value);
+            while (word == 0) {
+                if (++index == BITMAP_WORDS) {
+                    return -1;
+                }
+                word = words[index];
+            }
+
+            return (index << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        Container add(final char value) {
+            if (!contains(value)) {
+                words[value >>> 6] |= 1L << value;
+                cardinality++;
+            }
+
+            return this;
+        }
+
+        @Override
+        Container remove(final char value) {
+            if (contains(value)) {
+                words[value >>> 6] &= ~(1L << value);
+                cardinality--;
+            }
+
+            return toArrayIfSparse();
+        }
+
+        @Override
+        Container or(final Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    add(array.values[i]);
+                }
+
+                return this;
+            }
+
+            BitmapContainer bitmap = (BitmapContainer) other;
+            cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] |= bitmap.words[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+
+            return this;
+        }
+
+        @Override
+        Container and(final Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.copy().and(this);
+            }
+
+            BitmapContainer bitmap = (BitmapContainer) other;
+            cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= bitmap.words[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+
+            return toArrayIfSparse();
+        }
+
+        @Override
+        Container andNot(final Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (contains(array.values[i])) {
+                        words[array.values[i] >>> 6] &=
+                                ~(1L << array.values[i]);
+                        cardinality--;
+                    }
+                }
+
+                return toArrayIfSparse();
+            }
+
+            BitmapContainer bitmap = (BitmapContainer) other;
+            cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= ~bitmap.words[i];
+                cardinality += Long.bitCount(words[i]);
+            }
+
+            return toArrayIfSparse();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        private Container toArrayIfSparse() {
+            if (cardinality > ARRAY_MAX_SIZE) {
+                return this;
+            }
+
+            char[] values = new char[Math.max(cardinality, 4)];
+            int index = 0;
+            for (int i = next(0); i >= 0; i = i < 0xFFFF ? next(i + 1) : -1) {
+                values[index++] = (char) i;
+            }
+
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import net.sf.ehcache.CacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.syncope.core.persistence.beans.membership.Membership;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.cache.ChangeSignal;
+import org.syncope.core.persistence.dao.UserSearchIndexEvent;
+
+/**
+ * In-memory role to member users index, as compressed sets of user ids: role
+ * membership conditions become set operations instead of SQL joins.
+ *
+ * The index is built from the database upon first use and kept in sync by
+ * listening to UserSearchIndexEvent; changes are applied once the
+ * transaction that originated them is committed. Meanwhile such transaction
+ * must not rely on the index, as it would not see its own changes: see
+ * isUsable(). Other nodes are then told to drop their index, which they
+ * build again upon next use; as such signals are asynchronous, the index is
+ * never used for enforcing administrative scope, always checked in SQL.
+ */
+@Component
+public class RoleMembershipIndex
+        implements ApplicationListener<UserSearchIndexEvent> {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(RoleMembershipIndex.class);
+
+    @PersistenceContext(type = PersistenceContextType.TRANSACTION)
+    private EntityManager entityManager;
+
+    private ChangeSignal changeSignal;
+
+    private final ReadWriteLock lock;
+
+    /**
+     * Whether the index was built from the database.
+     */
+    private boolean built;
+
+    /**
+     * Whether the index was found not to be applicable, i.e. because of user
+     * ids not fitting into an int.
+     */
+    private boolean disabled;
+
+    /**
+     * Role id to member users.
+     */
+    private final Map<Long, CompressedIdSet> roleIndex;
+
+    /**
+     * User id to role ids.
+     */
+    private final Map<Long, Set<Long>> userRoles;
+
+    /**
+     * Users with at least one membership.
+     */
+    private final CompressedIdSet members;
+
+    public RoleMembershipIndex() {
+        lock = new ReentrantReadWriteLock();
+        roleIndex = new HashMap<Long, CompressedIdSet>();
+        userRoles = new HashMap<Long, Set<Long>>();
+        members = new CompressedIdSet();
+    }
+
+    @Autowired
+    public void setCacheManager(final CacheManager cacheManager) {
+        changeSignal = new ChangeSignal(cacheManager,
+                RoleMembershipIndex.class.getName(), new Runnable() {
+
+            @Override
+            public void run() {
+                invalidate();
+            }
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(final UserSearchIndexEvent event) {
+        switch (event.getType()) {
+            case INDEX:
+                final Long userId = event.getUserId();
+                final Set<Long> roleIds = getRoleIds(event.getUser());
+                if (!roleIds.equals(getIndexedRoleIds(userId))) {
+                    onChange(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            update(userId, roleIds);
+                        }
+                    });
+                }
+                break;
+
+            case UNINDEX:
+                final Long deletedId = event.getUserId();
+                final Set<Long> indexed = getIndexedRoleIds(deletedId);
+                if (indexed == null || !indexed.isEmpty()) {
+                    onChange(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            update(deletedId, null);
+                        }
+                    });
+                }
+                break;
+
+            case REBUILD:
+                invalidate();
+                if (TransactionSynchronizationManager.
+                        isSynchronizationActive()) {
+
+                    TransactionSynchronizationManager.registerSynchronization(
+                            new TransactionSynchronizationAdapter() {
+
+                                @Override
+                                public void afterCompletion(final int status) {
+                                    invalidate();
+                                }
+                            });
+                }
+                break;
+
+            default:
+        }
+    }
+
+    /**
+     * @return whether the index reflects what the current transaction sees
+     */
+    public boolean isUsable() {
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return false;
+        }
+
+        ensureBuilt();
+
+        lock.readLock().lock();
+        try {
+            return !disabled;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param roleIds role ids
+     * @return users member of at least one of the given roles
+     */
+    public CompressedIdSet getMembers(final Collection<Long> roleIds) {
+        ensureBuilt();
+
+        CompressedIdSet result = new CompressedIdSet();
+        lock.readLock().lock();
+        try {
+            for (Long roleId : roleIds) {
+                if (roleIndex.containsKey(roleId)) {
+                    result.or(roleIndex.get(roleId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return users with at least one membership
+     */
+    public CompressedIdSet getAllMembers() {
+        ensureBuilt();
+
+        lock.readLock().lock();
+        try {
+            return members.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param adminRoles the set of admin roles owned by the caller
+     * @return users with at least one membership outside the given roles,
+     * hence not visible to the caller
+     */
+    public CompressedIdSet getHidden(final Set<Long> adminRoles) {
+        ensureBuilt();
+
+        CompressedIdSet result = new CompressedIdSet();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, CompressedIdSet> entry :
+                    roleIndex.entrySet()) {
+
+                if (adminRoles == null
+                        || !adminRoles.contains(entry.getKey())) {
+
+                    result.or(entry.getValue());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    static Set<Long> getRoleIds(final SyncopeUser user) {
+        Set<Long> result = new HashSet<Long>();
+        if (user != null) {
+            for (Membership membership : user.getMemberships()) {
+                if (membership.getSyncopeRole() != null) {
+                    result.add(membership.getSyncopeRole().getId());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param userId user id
+     * @return indexed role ids for the given user, or null when unknown
+     */
+    Set<Long> getIndexedRoleIds(final Long userId) {
+        lock.readLock().lock();
+        try {
+            if (!built || disabled) {
+                return null;
+            }
+
+            Set<Long> result = userRoles.get(userId);
+            return result == null
+                    ? new HashSet<Long>() : new HashSet<Long>(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply the given change after commit, then tell other nodes, once per
+     * transaction; until then, mark the current transaction as not able to
+     * use the index.
+     */
+    private void onChange(final Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            changeSignal.send();
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+
+                        @Override
+                        public void afterCommit() {
+                            changeSignal.send();
+                        }
+
+                        @Override
+                        public void afterCompletion(final int status) {
+                            TransactionSynchronizationManager.
+                                    unbindResourceIfPossible(
+                                    RoleMembershipIndex.this);
+                        }
+                    });
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCommit() {
+                        change.run();
+                    }
+                });
+    }
+
+    private void add(final Long userId, final Long roleId) {
+        if (userId > Integer.MAX_VALUE) {
+            LOG.warn("User id {} too large, disabling role membership index",
+                    userId);
+            disabled = true;
+            return;
+        }
+
+        CompressedIdSet roleMembers = roleIndex.get(roleId);
+        if (roleMembers == null) {
+            roleMembers = new CompressedIdSet();
+            roleIndex.put(roleId, roleMembers);
+        }
+        roleMembers.set(userId.intValue());
+        members.set(userId.intValue());
+
+        Set<Long> roleIds = userRoles.get(userId);
+        if (roleIds == null) {
+            roleIds = new HashSet<Long>();
+            userRoles.put(userId, roleIds);
+        }
+        roleIds.add(roleId);
+    }
+
+    private void update(final Long userId, final Set<Long> roleIds) {
+        lock.writeLock().lock();
+        try {
+            // when not built, changes will be read from the database anyway
+            if (!built || disabled) {
+                return;
+            }
+
+            Set<Long> indexed = userRoles.remove(userId);
+            if (indexed != null) {
+                for (Long roleId : indexed) {
+                    CompressedIdSet roleMembers = roleIndex.get(roleId);
+                    roleMembers.clear(userId.intValue());
+                    if (roleMembers.isEmpty()) {
+                        roleIndex.remove(roleId);
+                    }
+                }
+                members.clear(userId.intValue());
+            }
+
+            if (roleIds != null) {
+                for (Long roleId : roleIds) {
+                    add(userId, roleId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void invalidate() {
+        lock.writeLock().lock();
+        try {
+            built = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Build the index from the database, if not done yet.
+     */
+    private void ensureBuilt() {
+        lock.readLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+
+            roleIndex.clear();
+            userRoles.clear();
+            members.clear();
+            disabled = false;
+
+            List<Object[]> memberships = entityManager.createQuery(
+                    "SELECT e.syncopeUser.id, e.syncopeRole.id FROM "
+                    + Membership.class.getSimpleName() + " e").
+                    getResultList();
+            for (Object[] membership : memberships) {
+                if (membership[0] != null && membership[1] != null) {
+                    add((Long) membership[0], (Long) membership[1]);
+                }
+            }
+
+            built = true;
+
+            LOG.debug("Role membership index built for {} roles",
+                    roleIndex.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
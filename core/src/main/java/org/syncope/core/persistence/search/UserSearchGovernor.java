@@ -0,0 +1,240 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.syncope.client.search.NodeCond;
+import org.syncope.core.persistence.dao.SearchLimitExceededException;
+import org.syncope.core.persistence.dao.SearchLimitExceededException.Limit;
+
+/**
+ * Limits applied to user searches, so that a single broad search condition
+ * cannot tie up a database connection: statement timeout, maximum number of
+ * results of unpaged searches, maximum depth and number of leaves of search
+ * conditions. Each limit can be disabled by setting it to 0.
+ */
+public class UserSearchGovernor {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(UserSearchGovernor.class);
+
+    /**
+     * SQL states reported by JDBC drivers for cancelled statements.
+     */
+    private static final String[] TIMEOUT_SQL_STATES = new String[]{
+        "57014", "HYT00", "HYT01"};
+
+    /**
+     * Oracle error code (ORA-01013) and SQL state for cancelled statements.
+     */
+    private static final int ORACLE_TIMEOUT_ERROR_CODE = 1013;
+
+    private static final String ORACLE_TIMEOUT_SQL_STATE = "72000";
+
+    /**
+     * Statement timeout, in seconds.
+     */
+    private int statementTimeoutSeconds = 30;
+
+    /**
+     * Maximum number of users returned by unpaged searches.
+     */
+    private int maxResults = 10000;
+
+    /**
+     * Maximum depth of search conditions.
+     */
+    private int maxDepth = 20;
+
+    /**
+     * Maximum number of leaves of search conditions.
+     */
+    private int maxLeaves = 100;
+
+    private final Map<Limit, AtomicLong> exceeded;
+
+    public UserSearchGovernor() {
+        exceeded = new EnumMap<Limit, AtomicLong>(Limit.class);
+        for (Limit limit : Limit.values()) {
+            exceeded.put(limit, new AtomicLong());
+        }
+    }
+
+    public int getStatementTimeoutSeconds() {
+        return statementTimeoutSeconds;
+    }
+
+    public void setStatementTimeoutSeconds(final int statementTimeoutSeconds) {
+        this.statementTimeoutSeconds = statementTimeoutSeconds;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(final int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxLeaves() {
+        return maxLeaves;
+    }
+
+    public void setMaxLeaves(final int maxLeaves) {
+        this.maxLeaves = maxLeaves;
+    }
+
+    /**
+     * @param limit limit
+     * @return how many times the given limit was exceeded
+     */
+    public long getExceededCount(final Limit limit) {
+        return exceeded.get(limit).get();
+    }
+
+    private SearchLimitExceededException exceeded(final Limit limit,
+            final String message) {
+
+        exceeded.get(limit).incrementAndGet();
+        LOG.warn("User search limit exceeded: {}", message);
+
+        return new SearchLimitExceededException(limit, message);
+    }
+
+    /**
+     * @param nodeCond search condition
+     * @throws SearchLimitExceededException if the given search condition is
+     * nested too deeply or has too many leaves
+     */
+    public void checkCondition(final NodeCond nodeCond) {
+        int[] leaves = new int[1];
+        int depth = getDepth(nodeCond, 1, leaves);
+
+        if (maxDepth > 0 && depth > maxDepth) {
+            throw exceeded(Limit.MAX_DEPTH, "Search condition depth "
+                    + depth + " exceeds " + maxDepth);
+        }
+        if (maxLeaves > 0 && leaves[0] > maxLeaves) {
+            throw exceeded(Limit.MAX_LEAVES, "Search condition with "
+                    + leaves[0] + " leaves exceeds " + maxLeaves);
+        }
+    }
+
+    /**
+     * Visit stops as soon as the maximum depth is exceeded, so that huge
+     * conditions are not visited in full.
+     */
+    private int getDepth(final NodeCond nodeCond, final int depth,
+            final int[] leaves) {
+
+        if (maxDepth > 0 && depth > maxDepth) {
+            return depth;
+        }
+
+        int result;
+        switch (nodeCond.getType()) {
+
+            case AND:
+            case OR:
+                result = Math.max(
+                        getDepth(nodeCond.getLeftNodeCond(), depth + 1,
+                        leaves),
+                        getDepth(nodeCond.getRightNodeCond(), depth + 1,
+                        leaves));
+                break;
+
+            default:
+                leaves[0]++;
+                result = depth;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param query native search query
+     */
+    public void setTimeout(final Query query) {
+        if (statementTimeoutSeconds > 0) {
+            query.setHint("org.hibernate.timeout", statementTimeoutSeconds);
+        }
+    }
+
+    /**
+     * @param size number of users matching an unpaged search
+     * @throws SearchLimitExceededException if more than allowed
+     */
+    public void checkResultSize(final int size) {
+        if (maxResults > 0 && size > maxResults) {
+            throw exceeded(Limit.MAX_RESULTS, "Unpaged search matching more "
+                    + "than " + maxResults + " users");
+        }
+    }
+
+    /**
+     * @param e exception thrown while executing a search query
+     * @return SearchLimitExceededException if the statement timed out, the
+     * given exception otherwise
+     */
+    public RuntimeException translate(final PersistenceException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException
+                    && isTimeout((SQLException) cause)) {
+
+                return exceeded(Limit.STATEMENT_TIMEOUT,
+                        "Search statement cancelled after "
+                        + statementTimeoutSeconds + " seconds");
+            }
+        }
+
+        return e;
+    }
+
+    private static boolean isTimeout(final SQLException e) {
+        if (e instanceof SQLTimeoutException
+                || (e.getErrorCode() == ORACLE_TIMEOUT_ERROR_CODE
+                && ORACLE_TIMEOUT_SQL_STATE.equals(e.getSQLState()))) {
+
+            return true;
+        }
+
+        for (String sqlState : TIMEOUT_SQL_STATES) {
+            if (sqlState.equals(e.getSQLState())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
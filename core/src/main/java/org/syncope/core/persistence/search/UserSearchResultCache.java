@@ -0,0 +1,422 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.CacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.syncope.core.persistence.cache.ChangeSignal;
+import org.syncope.core.persistence.dao.UserSearchIndexEvent;
+
+/**
+ * Cache of user search results (user ids or counts), keyed by normalized
+ * search condition, admin roles and paging.
+ *
+ * Each entry records the schemas and roles its search condition depends on,
+ * and is evicted as soon as a change involving any of them is committed;
+ * entries also expire after a configurable time to live. Transactions with
+ * pending user changes bypass the cache, so they still see their own
+ * changes. Other nodes are told to clear their own caches, shortly after
+ * each committed change.
+ *
+ * Disabled unless maxSize is set, to the same value on all nodes.
+ */
+public class UserSearchResultCache
+        implements ApplicationListener<UserSearchIndexEvent> {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(UserSearchResultCache.class);
+
+    @Autowired
+    private RoleMembershipIndex roleMembershipIndex;
+
+    /**
+     * Tells the other nodes about committed changes.
+     */
+    private ChangeSignal changeSignal;
+
+    /**
+     * Maximum number of cached results; 0 disables the cache.
+     */
+    private int maxSize = 0;
+
+    /**
+     * Time to live of cached results, in seconds.
+     */
+    private int timeToLiveSeconds = 60;
+
+    private final Map<String, CacheEntry> entries;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong misses;
+
+    /**
+     * Incremented at each invalidation, in order not to cache results
+     * computed before it.
+     */
+    private final AtomicLong generation;
+
+    public UserSearchResultCache() {
+        entries = Collections.synchronizedMap(
+                new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+                    private static final long serialVersionUID =
+                            3326618414829409556L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, CacheEntry> eldest) {
+
+                        return size() > maxSize;
+                    }
+                });
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        generation = new AtomicLong();
+    }
+
+    @Autowired
+    public void setCacheManager(final CacheManager cacheManager) {
+        changeSignal = new ChangeSignal(cacheManager,
+                UserSearchResultCache.class.getName(), new Runnable() {
+
+            @Override
+            public void run() {
+                // the change is not known: anything could be affected
+                clear();
+            }
+        });
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(final int timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return whether the current transaction can read from and write to
+     * the cache
+     */
+    public boolean isUsable() {
+        return maxSize > 0
+                && !TransactionSynchronizationManager.hasResource(this);
+    }
+
+    /**
+     * @return current generation, to be given back to put()
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @param key cache key
+     * @return cached result, or null if not found or expired
+     */
+    public Object get(final String key) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && entry.isExpired()) {
+            entries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.getValue();
+    }
+
+    /**
+     * Cache the given result, unless an invalidation occurred since it was
+     * computed.
+     *
+     * @param key cache key
+     * @param value result
+     * @param generation value of getGeneration() before computing the result
+     * @param dependencies what the result depends on
+     */
+    public void put(final String key, final Object value,
+            final long generation, final Dependencies dependencies) {
+
+        synchronized (entries) {
+            if (generation == this.generation.get()) {
+                entries.put(key, new CacheEntry(value, dependencies,
+                        System.currentTimeMillis()
+                        + timeToLiveSeconds * 1000L));
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(final UserSearchIndexEvent event) {
+        if (maxSize <= 0) {
+            return;
+        }
+
+        // no need to bypass the cache here, as a rebuild does not change
+        // search results
+        if (event.getType() == UserSearchIndexEvent.Type.REBUILD) {
+            clear();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(
+                        new TransactionSynchronizationAdapter() {
+
+                            @Override
+                            public void afterCommit() {
+                                clear();
+                                changeSignal.send();
+                            }
+                        });
+            } else {
+                changeSignal.send();
+            }
+            return;
+        }
+
+        // role ids before the change are still in the index at this point
+        Set<Long> roleIds = null;
+        Set<Long> indexedRoleIds =
+                roleMembershipIndex.getIndexedRoleIds(event.getUserId());
+        if (indexedRoleIds != null) {
+            roleIds = new HashSet<Long>(indexedRoleIds);
+            if (event.getUser() != null) {
+                Set<Long> newRoleIds = RoleMembershipIndex.getRoleIds(
+                        event.getUser());
+                Set<Long> unchanged = new HashSet<Long>(roleIds);
+                unchanged.retainAll(newRoleIds);
+
+                roleIds.addAll(newRoleIds);
+                roleIds.removeAll(unchanged);
+            }
+        }
+
+        onCompletion(new HashSet<String>(event.getSchemaNames()), roleIds);
+    }
+
+    /**
+     * Evict entries depending on the given changes once the current
+     * transaction is over, and bypass the cache until then.
+     *
+     * @param schemaNames changed schemas
+     * @param roleIds roles whose members changed, or null when unknown
+     */
+    private void onCompletion(final Set<String> schemaNames,
+            final Set<Long> roleIds) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(schemaNames, roleIds);
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+
+                    @Override
+                    public void afterCompletion(final int status) {
+                        TransactionSynchronizationManager.
+                                unbindResourceIfPossible(
+                                UserSearchResultCache.this);
+
+                        if (status == STATUS_COMMITTED) {
+                            invalidate(schemaNames, roleIds);
+                        }
+                    }
+                });
+    }
+
+    private void invalidate(final Set<String> schemaNames,
+            final Set<Long> roleIds) {
+
+        int evicted = 0;
+        synchronized (entries) {
+            generation.incrementAndGet();
+
+            for (Iterator<CacheEntry> itor = entries.values().iterator();
+                    itor.hasNext();) {
+
+                if (itor.next().getDependencies().
+                        isAffected(schemaNames, roleIds)) {
+
+                    itor.remove();
+                    evicted++;
+                }
+            }
+        }
+
+        LOG.debug("Evicted {} search results after changes on schemas {} "
+                + "and roles {}", new Object[]{evicted, schemaNames, roleIds});
+
+        changeSignal.send();
+    }
+
+    /**
+     * What a search result depends on.
+     */
+    public static class Dependencies {
+
+        private final Set<String> schemaNames;
+
+        private final Set<Long> roleIds;
+
+        private final Set<Long> adminRoles;
+
+        private boolean anyRole;
+
+        private boolean anyUser;
+
+        public Dependencies(final Set<Long> adminRoles) {
+            this.schemaNames = new HashSet<String>();
+            this.roleIds = new HashSet<Long>();
+            this.adminRoles = adminRoles == null
+                    ? Collections.<Long>emptySet()
+                    : new HashSet<Long>(adminRoles);
+        }
+
+        public void addSchemaName(final String schemaName) {
+            schemaNames.add(schemaName);
+        }
+
+        public void addRoleId(final Long roleId) {
+            roleIds.add(roleId);
+        }
+
+        /**
+         * The result depends on members of any role.
+         */
+        public void setAnyRole() {
+            anyRole = true;
+        }
+
+        /**
+         * The result depends on any user, including those with no values
+         * for the referenced schemas.
+         */
+        public void setAnyUser() {
+            anyUser = true;
+        }
+
+        /**
+         * @param changedSchemaNames schemas whose values changed
+         * @param changedRoleIds roles whose members changed, null when
+         * unknown
+         * @return whether the result may be affected by the given changes
+         */
+        public boolean isAffected(final Set<String> changedSchemaNames,
+                final Set<Long> changedRoleIds) {
+
+            if (anyUser || changedRoleIds == null) {
+                return true;
+            }
+
+            for (String schemaName : changedSchemaNames) {
+                if (schemaNames.contains(schemaName)) {
+                    return true;
+                }
+            }
+
+            for (Long roleId : changedRoleIds) {
+                // role members outside admin roles are not visible
+                if (anyRole || roleIds.contains(roleId)
+                        || !adminRoles.contains(roleId)) {
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final Object value;
+
+        private final Dependencies dependencies;
+
+        private final long expireTime;
+
+        public CacheEntry(final Object value, final Dependencies dependencies,
+                final long expireTime) {
+
+            this.value = value;
+            this.dependencies = dependencies;
+            this.expireTime = expireTime;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Dependencies getDependencies() {
+            return dependencies;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() > expireTime;
+        }
+    }
+}
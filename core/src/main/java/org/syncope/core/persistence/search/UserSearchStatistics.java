@@ -0,0 +1,214 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceContextType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.USearchAttrValue;
+import org.syncope.core.persistence.dao.UserSearchIndexEvent;
+
+/**
+ * Per-schema statistics over the user search index, used to estimate how
+ * selective search conditions are. Statistics are computed upon first use
+ * and then refreshed periodically, or when the index is rebuilt: they are
+ * only meant to be approximate.
+ */
+@Component
+public class UserSearchStatistics
+        implements ApplicationListener<UserSearchIndexEvent> {
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(UserSearchStatistics.class);
+
+    /**
+     * Statistics older than this (in milliseconds) are refreshed.
+     */
+    private static final long REFRESH_INTERVAL = 10 * 60 * 1000L;
+
+    @PersistenceContext(type = PersistenceContextType.TRANSACTION)
+    private EntityManager entityManager;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * @return total number of users
+     */
+    public long getUserCount() {
+        return getSnapshot().getUserCount();
+    }
+
+    /**
+     * @param schemaName schema name
+     * @return statistics for the given schema, or null if no user has values
+     * for it
+     */
+    public SchemaStatistics getSchemaStatistics(final String schemaName) {
+        return getSnapshot().getSchemaStatistics().get(schemaName);
+    }
+
+    @Override
+    public void onApplicationEvent(final UserSearchIndexEvent event) {
+        if (event.getType() == UserSearchIndexEvent.Type.REBUILD) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Force statistics to be computed again upon next access.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.getTimestamp()
+                < System.currentTimeMillis() - REFRESH_INTERVAL) {
+
+            current = compute();
+            snapshot = current;
+        }
+
+        return current;
+    }
+
+    private Snapshot compute() {
+        long userCount = ((Number) entityManager.createQuery(
+                "SELECT COUNT(e) FROM " + SyncopeUser.class.getSimpleName()
+                + " e").getSingleResult()).longValue();
+
+        // only one value column is populated for each schema
+        List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT schema_name, COUNT(*), COUNT(DISTINCT user_id), "
+                + "COUNT(DISTINCT stringvalue), COUNT(DISTINCT datevalue), "
+                + "COUNT(DISTINCT longvalue), COUNT(DISTINCT doublevalue), "
+                + "COUNT(DISTINCT booleanvalue) "
+                + "FROM " + USearchAttrValue.class.getSimpleName()
+                + " GROUP BY schema_name").getResultList();
+
+        Map<String, SchemaStatistics> schemaStatistics =
+                new HashMap<String, SchemaStatistics>();
+        for (Object[] row : rows) {
+            long distinctValues = 0;
+            for (int i = 3; i < row.length; i++) {
+                distinctValues += ((Number) row[i]).longValue();
+            }
+
+            schemaStatistics.put((String) row[0], new SchemaStatistics(
+                    ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue(),
+                    distinctValues));
+        }
+
+        LOG.debug("User search statistics computed for {} users and {} "
+                + "schemas", userCount, schemaStatistics.size());
+
+        return new Snapshot(userCount, schemaStatistics);
+    }
+
+    /**
+     * Statistics about values of a schema.
+     */
+    public static class SchemaStatistics {
+
+        private final long valueCount;
+
+        private final long userCount;
+
+        private final long distinctValueCount;
+
+        public SchemaStatistics(final long valueCount, final long userCount,
+                final long distinctValueCount) {
+
+            this.valueCount = valueCount;
+            this.userCount = userCount;
+            this.distinctValueCount = distinctValueCount;
+        }
+
+        /**
+         * @return number of values
+         */
+        public long getValueCount() {
+            return valueCount;
+        }
+
+        /**
+         * @return number of users with at least a value
+         */
+        public long getUserCount() {
+            return userCount;
+        }
+
+        /**
+         * @return number of distinct values
+         */
+        public long getDistinctValueCount() {
+            return distinctValueCount;
+        }
+
+        /**
+         * @param totalUserCount total number of users
+         * @return fraction of users without values
+         */
+        public double getNullFraction(final long totalUserCount) {
+            return totalUserCount == 0
+                    ? 0.0
+                    : Math.max(0.0, 1.0 - (double) userCount / totalUserCount);
+        }
+    }
+
+    private static class Snapshot {
+
+        private final long timestamp;
+
+        private final long userCount;
+
+        private final Map<String, SchemaStatistics> schemaStatistics;
+
+        public Snapshot(final long userCount,
+                final Map<String, SchemaStatistics> schemaStatistics) {
+
+            this.timestamp = System.currentTimeMillis();
+            this.userCount = userCount;
+            this.schemaStatistics =
+                    Collections.unmodifiableMap(schemaStatistics);
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getUserCount() {
+            return userCount;
+        }
+
+        public Map<String, SchemaStatistics> getSchemaStatistics() {
+            return schemaStatistics;
+        }
+    }
+}
@@ -132,6 +132,8 @@ public class ConfigurationController extends AbstractController {
                 syncopeConfigurationDAO.find(configurationTO.getConfKey());
 
         syncopeConfiguration.setConfValue(configurationTO.getConfValue());
+        syncopeConfiguration =
+                syncopeConfigurationDAO.save(syncopeConfiguration);
 
         return configurationDataBinder.getConfigurationTO(syncopeConfiguration);
     }
@@ -0,0 +1,64 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.rest.controller;
+
+import javassist.NotFoundException;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.syncope.core.persistence.PooledDataSource;
+
+@Controller
+@RequestMapping("/datasource")
+public class DataSourceController extends AbstractController {
+
+    @Resource(name = "primaryDataSource")
+    private DataSource dataSource;
+
+    /**
+     * Connection pool metrics; not transactional, in order not to borrow a
+     * connection from the pool being observed.
+     */
+    @PreAuthorize("hasRole('CONFIGURATION_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/stats")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ModelAndView stats()
+            throws NotFoundException {
+
+        if (!(dataSource instanceof PooledDataSource)) {
+            throw new NotFoundException("Connection pool (a container "
+                    + "provided datasource is in use)");
+        }
+
+        PooledDataSource pool = (PooledDataSource) dataSource;
+        return new ModelAndView().
+                addObject("active", pool.getNumActive()).
+                addObject("idle", pool.getNumIdle()).
+                addObject("minIdle", pool.getMinIdle()).
+                addObject("maxIdle", pool.getMaxIdle()).
+                addObject("maxActive", pool.getMaxActive()).
+                addObject("waitCount", pool.getWaitCount()).
+                addObject("averageWaitMillis", pool.getAverageWaitMillis()).
+                addObject("longestWaitMillis", pool.getLongestWaitMillis()).
+                addObject("failureCount", pool.getFailureCount());
+    }
+}
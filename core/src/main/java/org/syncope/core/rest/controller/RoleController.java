@@ -26,6 +26,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
 import org.syncope.client.mod.RoleMod;
 import org.syncope.client.to.RoleTO;
 import org.syncope.client.validation.SyncopeClientCompositeErrorException;
@@ -121,6 +122,47 @@ public class RoleController extends AbstractController {
         return roleTOs;
     }
 
+    @PreAuthorize("hasRole('ROLE_LIST') and hasRole('RESOURCE_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/resource/{resourceName}/list/{page}/{size}")
+    public List<RoleTO> listByResource(
+            @PathVariable("resourceName") final String resourceName,
+            @PathVariable("page") final int page,
+            @PathVariable("size") final int size) {
+
+        Set<Long> allowedRoleIds = EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames());
+
+        List<SyncopeRole> roles = roleDAO.findByResource(allowedRoleIds,
+                resourceName, page, size);
+        List<RoleTO> roleTOs = new ArrayList<RoleTO>(roles.size());
+        RoleTO roleTO;
+        for (SyncopeRole role : roles) {
+            roleTO = roleDataBinder.getRoleTO(role);
+            if (roleTO.getParent() != 0
+                    && !allowedRoleIds.contains(roleTO.getParent())) {
+
+                roleTO.setParent(0);
+            }
+            roleTOs.add(roleTO);
+        }
+
+        return roleTOs;
+    }
+
+    @PreAuthorize("hasRole('ROLE_LIST') and hasRole('RESOURCE_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/resource/{resourceName}/count")
+    public ModelAndView countByResource(
+            @PathVariable("resourceName") final String resourceName) {
+
+        Set<Long> allowedRoleIds = EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames());
+
+        return new ModelAndView().addObject(
+                roleDAO.countByResource(allowedRoleIds, resourceName));
+    }
+
     @PreAuthorize("hasRole('ROLE_READ')")
     @RequestMapping(method = RequestMethod.GET,
     value = "/parent/{roleId}")
@@ -25,7 +25,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.dao.SearchLimitExceededException;
+import org.syncope.core.persistence.dao.UserCountEstimate;
 import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.persistence.dao.UserProjection;
 import org.syncope.core.persistence.propagation.PropagationException;
 import org.syncope.core.rest.data.UserDataBinder;
 import java.util.ArrayList;
@@ -37,28 +40,46 @@ import java.util.Map;
 import java.util.Set;
 import javassist.NotFoundException;
 import javax.annotation.Resource;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
 import javax.servlet.http.HttpServletResponse;
 import jpasymphony.dao.JPAWorkflowEntryDAO;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.servlet.ModelAndView;
 import org.syncope.client.mod.UserMod;
 import org.syncope.client.search.NodeCond;
+import org.syncope.client.to.BulkUserItemTO;
+import org.syncope.client.to.BulkUserResultTO;
+import org.syncope.client.to.BulkUserTO;
+import org.syncope.client.to.UserCountTO;
+import org.syncope.client.to.UserPageTO;
 import org.syncope.client.to.UserTO;
 import org.syncope.client.to.WorkflowActionsTO;
 import org.syncope.client.validation.SyncopeClientCompositeErrorException;
 import org.syncope.client.validation.SyncopeClientException;
 import org.syncope.core.persistence.beans.TargetResource;
+import org.syncope.core.persistence.beans.TaskExecution;
 import org.syncope.core.persistence.beans.role.SyncopeRole;
 import org.syncope.core.persistence.dao.UserSearchDAO;
+import org.syncope.core.persistence.dao.UserSearchIndexDAO;
+import org.syncope.core.persistence.dao.UserSearchResult;
+import org.syncope.core.persistence.propagation.PropagationBatch;
 import org.syncope.core.persistence.propagation.PropagationManager;
 import org.syncope.core.persistence.propagation.ResourceOperations;
 import org.syncope.core.rest.data.UserDataBinder.CheckInResult;
 import org.syncope.core.util.EntitlementUtil;
 import org.syncope.core.workflow.Constants;
 import org.syncope.core.workflow.WFUtils;
+import org.syncope.types.ResourceOperationType;
 import org.syncope.types.SyncopeClientExceptionType;
 
 @Controller
@@ -71,6 +92,9 @@ public class UserController extends AbstractController {
     @Autowired
     private UserSearchDAO userSearchDAO;
 
+    @Autowired
+    private UserSearchIndexDAO userSearchIndexDAO;
+
     @Autowired
     private JPAWorkflowEntryDAO workflowEntryDAO;
 
@@ -83,10 +107,64 @@ public class UserController extends AbstractController {
     @Autowired
     private PropagationManager propagationManager;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Item of a bulk request: the user to be created or updated, or the id
+     * of the user to be deleted.
+     */
+    private static class BulkItem {
+
+        private final ResourceOperationType operation;
+
+        private final int index;
+
+        private final Object payload;
+
+        public BulkItem(final ResourceOperationType operation,
+                final int index, final Object payload) {
+
+            this.operation = operation;
+            this.index = index;
+            this.payload = payload;
+        }
+
+        public BulkUserItemTO getOutcome() {
+            BulkUserItemTO outcome = new BulkUserItemTO();
+            outcome.setOperation(operation);
+            outcome.setIndex(index);
+            if (payload instanceof UserMod) {
+                outcome.setUserId(((UserMod) payload).getId());
+            } else if (payload instanceof Long) {
+                outcome.setUserId((Long) payload);
+            }
+
+            return outcome;
+        }
+    }
+
     private SyncopeUser getUserFromId(final Long userId)
             throws NotFoundException, UnauthorizedRoleException {
 
-        SyncopeUser user = userDAO.find(userId);
+        return getUserFromId(userId, null);
+    }
+
+    /**
+     * @param userId user id
+     * @param projection parts of user to be loaded upfront, null for none
+     * @return the user, if visible to the caller
+     */
+    private SyncopeUser getUserFromId(final Long userId,
+            final UserProjection projection)
+            throws NotFoundException, UnauthorizedRoleException {
+
+        SyncopeUser user = projection == null
+                ? userDAO.find(userId)
+                : userDAO.find(userId, projection);
         if (user == null) {
             throw new NotFoundException("User " + userId);
         }
@@ -106,6 +184,73 @@ public class UserController extends AbstractController {
         return user;
     }
 
+    /**
+     * @param lastId id of the last user returned, null when no more users
+     * @return the opaque continuation token for the next page
+     */
+    private static String encodeContinuation(final Long lastId) {
+        return lastId == null
+                ? null : Long.toString(lastId, Character.MAX_RADIX);
+    }
+
+    /**
+     * @param continuation the opaque continuation token
+     * @return the id of the last user of the previous page, null if the
+     * continuation is not valid
+     */
+    private static Long decodeContinuation(final String continuation) {
+        Long result = null;
+        try {
+            result = Long.valueOf(continuation, Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid continuation: {}", continuation);
+        }
+
+        return result == null || result < 0 ? null : result;
+    }
+
+    /**
+     * @param attributes schema names of attributes and derived attributes,
+     * repeated or comma separated; null for all
+     * @param memberships whether memberships are to be returned
+     * @param resources whether resources are to be returned
+     * @param status whether workflow status is to be returned
+     * @return parts of users to be returned
+     */
+    private static UserProjection getProjection(final String[] attributes,
+            final boolean memberships, final boolean resources,
+            final boolean status) {
+
+        Set<String> schemaNames = null;
+        if (attributes != null) {
+            schemaNames = new HashSet<String>();
+            for (String attribute : attributes) {
+                for (String schemaName : attribute.split(",")) {
+                    if (schemaName.trim().length() > 0) {
+                        schemaNames.add(schemaName.trim());
+                    }
+                }
+            }
+        }
+
+        return new UserProjection(schemaNames, memberships, resources, status);
+    }
+
+    private UserPageTO getUserPageTO(final List<SyncopeUser> users,
+            final int size) {
+
+        UserPageTO result = new UserPageTO();
+        for (SyncopeUser user : users) {
+            result.addUser(userDataBinder.getUserTO(user, workflow));
+        }
+        if (!users.isEmpty() && users.size() >= size) {
+            result.setContinuation(encodeContinuation(
+                    users.get(users.size() - 1).getId()));
+        }
+
+        return result;
+    }
+
     private UserTO executeAction(UserTO userTO, String actionName,
             Map<String, Object> moreInputs)
             throws WorkflowException, NotFoundException,
@@ -188,18 +333,25 @@ public class UserController extends AbstractController {
     @PreAuthorize("hasRole('TASK_LIST')")
     @RequestMapping(method = RequestMethod.GET,
     value = "/count")
-    public ModelAndView count() {
+    public ModelAndView count(@RequestParam(value = "approximate",
+            required = false, defaultValue = "false")
+            final boolean approximate) {
+
         Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
                 EntitlementUtil.getOwnedEntitlementNames());
 
-        return new ModelAndView().addObject(userDAO.count(adminRoleIds));
+        return new ModelAndView().addObject(approximate
+                ? getUserCountTO(userDAO.approximateCount(adminRoleIds))
+                : userDAO.count(adminRoleIds));
     }
 
     @PreAuthorize("hasRole('USER_READ')")
     @RequestMapping(method = RequestMethod.POST,
     value = "/search/count")
     @Transactional(readOnly = true)
-    public ModelAndView searchCount(@RequestBody NodeCond searchCondition)
+    public ModelAndView searchCount(@RequestBody NodeCond searchCondition,
+            @RequestParam(value = "approximate", required = false,
+            defaultValue = "false") final boolean approximate)
             throws InvalidSearchConditionException {
 
         if (!searchCondition.checkValidity()) {
@@ -210,23 +362,43 @@ public class UserController extends AbstractController {
         Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
                 EntitlementUtil.getOwnedEntitlementNames());
 
-        return new ModelAndView().addObject(
-                userSearchDAO.count(adminRoleIds, searchCondition));
+        return new ModelAndView().addObject(approximate
+                ? getUserCountTO(userSearchDAO.approximateCount(
+                adminRoleIds, searchCondition))
+                : userSearchDAO.count(adminRoleIds, searchCondition));
+    }
+
+    private UserCountTO getUserCountTO(final UserCountEstimate estimate) {
+        UserCountTO result = new UserCountTO();
+        result.setCount(estimate.getCount());
+        result.setUpperBound(estimate.getUpperBound());
+        result.setExact(estimate.isExact());
+
+        return result;
     }
 
     @PreAuthorize("hasRole('USER_LIST')")
     @RequestMapping(method = RequestMethod.GET,
     value = "/list")
     @Transactional(readOnly = true)
-    public List<UserTO> list() {
+    public List<UserTO> list(
+            @RequestParam(value = "attributes", required = false)
+            final String[] attributes,
+            @RequestParam(value = "memberships", required = false,
+            defaultValue = "true") final boolean memberships,
+            @RequestParam(value = "resources", required = false,
+            defaultValue = "true") final boolean resources,
+            @RequestParam(value = "status", required = false,
+            defaultValue = "true") final boolean status) {
+
+        UserProjection projection =
+                getProjection(attributes, memberships, resources, status);
+
         List<SyncopeUser> users = userDAO.findAll(EntitlementUtil.getRoleIds(
-                EntitlementUtil.getOwnedEntitlementNames()));
-        List<UserTO> userTOs = new ArrayList<UserTO>(users.size());
-        for (SyncopeUser user : users) {
-            userTOs.add(userDataBinder.getUserTO(user, workflow));
-        }
+                EntitlementUtil.getOwnedEntitlementNames()), -1, -1,
+                projection);
 
-        return userTOs;
+        return userDataBinder.getUserTOs(users, workflow, projection);
     }
 
     @PreAuthorize("hasRole('USER_LIST')")
@@ -235,18 +407,88 @@ public class UserController extends AbstractController {
     @Transactional(readOnly = true)
     public List<UserTO> list(
             @PathVariable("page") final int page,
-            @PathVariable("size") final int size) {
+            @PathVariable("size") final int size,
+            @RequestParam(value = "attributes", required = false)
+            final String[] attributes,
+            @RequestParam(value = "memberships", required = false,
+            defaultValue = "true") final boolean memberships,
+            @RequestParam(value = "resources", required = false,
+            defaultValue = "true") final boolean resources,
+            @RequestParam(value = "status", required = false,
+            defaultValue = "true") final boolean status) {
 
         Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
                 EntitlementUtil.getOwnedEntitlementNames());
+        UserProjection projection =
+                getProjection(attributes, memberships, resources, status);
 
-        List<SyncopeUser> users = userDAO.findAll(adminRoleIds, page, size);
-        List<UserTO> userTOs = new ArrayList<UserTO>(users.size());
-        for (SyncopeUser user : users) {
-            userTOs.add(userDataBinder.getUserTO(user, workflow));
+        List<SyncopeUser> users =
+                userDAO.findAll(adminRoleIds, page, size, projection);
+
+        return userDataBinder.getUserTOs(users, workflow, projection);
+    }
+
+    @PreAuthorize("hasRole('USER_LIST') and hasRole('RESOURCE_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/resource/{resourceName}/list/{page}/{size}")
+    @Transactional(readOnly = true)
+    public List<UserTO> listByResource(
+            @PathVariable("resourceName") final String resourceName,
+            @PathVariable("page") final int page,
+            @PathVariable("size") final int size,
+            @RequestParam(value = "attributes", required = false)
+            final String[] attributes,
+            @RequestParam(value = "memberships", required = false,
+            defaultValue = "true") final boolean memberships,
+            @RequestParam(value = "resources", required = false,
+            defaultValue = "true") final boolean resources,
+            @RequestParam(value = "status", required = false,
+            defaultValue = "true") final boolean status) {
+
+        Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames());
+        UserProjection projection =
+                getProjection(attributes, memberships, resources, status);
+
+        List<SyncopeUser> users = userDAO.findByResource(adminRoleIds,
+                resourceName, page, size, projection);
+
+        return userDataBinder.getUserTOs(users, workflow, projection);
+    }
+
+    @PreAuthorize("hasRole('USER_LIST') and hasRole('RESOURCE_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/resource/{resourceName}/count")
+    @Transactional(readOnly = true)
+    public ModelAndView countByResource(
+            @PathVariable("resourceName") final String resourceName) {
+
+        Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames());
+
+        return new ModelAndView().addObject(
+                userDAO.countByResource(adminRoleIds, resourceName));
+    }
+
+    @PreAuthorize("hasRole('USER_LIST')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/list/after/{continuation}/{size}")
+    @Transactional(readOnly = true)
+    public UserPageTO listAfter(
+            @PathVariable("continuation") final String continuation,
+            @PathVariable("size") final int size)
+            throws NotFoundException {
+
+        Long lastId = decodeContinuation(continuation);
+        if (lastId == null) {
+            throw new NotFoundException("Continuation " + continuation);
         }
 
-        return userTOs;
+        Set<Long> adminRoleIds = EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames());
+
+        return getUserPageTO(
+                userDAO.findAllAfter(adminRoleIds, lastId, size), size);
     }
 
     @PreAuthorize("hasRole('USER_READ')")
@@ -256,7 +498,7 @@ public class UserController extends AbstractController {
     public UserTO read(@PathVariable("userId") Long userId)
             throws NotFoundException, UnauthorizedRoleException {
 
-        SyncopeUser user = getUserFromId(userId);
+        SyncopeUser user = getUserFromId(userId, UserProjection.ALL);
 
         return userDataBinder.getUserTO(user, workflow);
     }
@@ -287,7 +529,15 @@ public class UserController extends AbstractController {
     @RequestMapping(method = RequestMethod.POST,
     value = "/search")
     @Transactional(readOnly = true)
-    public List<UserTO> search(@RequestBody NodeCond searchCondition)
+    public List<UserTO> search(@RequestBody NodeCond searchCondition,
+            @RequestParam(value = "attributes", required = false)
+            final String[] attributes,
+            @RequestParam(value = "memberships", required = false,
+            defaultValue = "true") final boolean memberships,
+            @RequestParam(value = "resources", required = false,
+            defaultValue = "true") final boolean resources,
+            @RequestParam(value = "status", required = false,
+            defaultValue = "true") final boolean status)
             throws InvalidSearchConditionException {
 
         LOG.debug("User search called with condition {}", searchCondition);
@@ -297,15 +547,15 @@ public class UserController extends AbstractController {
             throw new InvalidSearchConditionException();
         }
 
+        UserProjection projection =
+                getProjection(attributes, memberships, resources, status);
+
         List<SyncopeUser> matchingUsers = userSearchDAO.search(
                 EntitlementUtil.getRoleIds(EntitlementUtil.
-                getOwnedEntitlementNames()), searchCondition);
-        List<UserTO> result = new ArrayList<UserTO>(matchingUsers.size());
-        for (SyncopeUser user : matchingUsers) {
-            result.add(userDataBinder.getUserTO(user, workflow));
-        }
+                getOwnedEntitlementNames()), searchCondition, -1, -1,
+                projection);
 
-        return result;
+        return userDataBinder.getUserTOs(matchingUsers, workflow, projection);
     }
 
     @PreAuthorize("hasRole('USER_READ')")
@@ -315,7 +565,15 @@ public class UserController extends AbstractController {
     public List<UserTO> search(
             @RequestBody final NodeCond searchCondition,
             @PathVariable("page") final int page,
-            @PathVariable("size") final int size)
+            @PathVariable("size") final int size,
+            @RequestParam(value = "attributes", required = false)
+            final String[] attributes,
+            @RequestParam(value = "memberships", required = false,
+            defaultValue = "true") final boolean memberships,
+            @RequestParam(value = "resources", required = false,
+            defaultValue = "true") final boolean resources,
+            @RequestParam(value = "status", required = false,
+            defaultValue = "true") final boolean status)
             throws InvalidSearchConditionException {
 
         LOG.debug("User search called with condition {}", searchCondition);
@@ -325,19 +583,108 @@ public class UserController extends AbstractController {
             throw new InvalidSearchConditionException();
         }
 
+        final UserProjection projection =
+                getProjection(attributes, memberships, resources, status);
+
         final List<SyncopeUser> matchingUsers = userSearchDAO.search(
+                EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames()),
+                searchCondition, page, size, projection);
+
+        return userDataBinder.getUserTOs(matchingUsers, workflow, projection);
+    }
+
+    @PreAuthorize("hasRole('USER_READ')")
+    @RequestMapping(method = RequestMethod.POST,
+    value = "/search/withCount/{page}/{size}")
+    @Transactional(readOnly = true)
+    public UserPageTO searchWithCount(
+            @RequestBody final NodeCond searchCondition,
+            @PathVariable("page") final int page,
+            @PathVariable("size") final int size)
+            throws InvalidSearchConditionException {
+
+        LOG.debug("User search called with condition {}", searchCondition);
+
+        if (!searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition: {}", searchCondition);
+            throw new InvalidSearchConditionException();
+        }
+
+        UserSearchResult searchResult = userSearchDAO.searchWithCount(
                 EntitlementUtil.getRoleIds(
                 EntitlementUtil.getOwnedEntitlementNames()),
                 searchCondition, page, size);
 
-        final List<UserTO> result = new ArrayList<UserTO>(matchingUsers.size());
-        for (SyncopeUser user : matchingUsers) {
-            result.add(userDataBinder.getUserTO(user, workflow));
+        UserPageTO result = new UserPageTO();
+        for (SyncopeUser user : searchResult.getUsers()) {
+            result.addUser(userDataBinder.getUserTO(user, workflow));
         }
+        result.setTotalCount(searchResult.getTotalCount());
 
         return result;
     }
 
+    @PreAuthorize("hasRole('USER_READ')")
+    @RequestMapping(method = RequestMethod.POST,
+    value = "/search/after/{continuation}/{size}")
+    @Transactional(readOnly = true)
+    public UserPageTO searchAfter(
+            @RequestBody final NodeCond searchCondition,
+            @PathVariable("continuation") final String continuation,
+            @PathVariable("size") final int size)
+            throws InvalidSearchConditionException {
+
+        LOG.debug("User search called with condition {}", searchCondition);
+
+        Long lastId = decodeContinuation(continuation);
+        if (lastId == null || !searchCondition.checkValidity()) {
+            LOG.error("Invalid search condition: {}", searchCondition);
+            throw new InvalidSearchConditionException();
+        }
+
+        return getUserPageTO(userSearchDAO.searchAfter(
+                EntitlementUtil.getRoleIds(
+                EntitlementUtil.getOwnedEntitlementNames()),
+                searchCondition, lastId, size), size);
+    }
+
+    @PreAuthorize("hasRole('USER_READ')")
+    @RequestMapping(method = RequestMethod.GET,
+    value = "/search/stats")
+    public ModelAndView searchStats() {
+        long resultCacheHits = userSearchDAO.getResultCacheHits();
+        long resultCacheMisses = userSearchDAO.getResultCacheMisses();
+
+        Map<String, Long> limitsExceeded = new HashMap<String, Long>();
+        for (SearchLimitExceededException.Limit limit :
+                SearchLimitExceededException.Limit.values()) {
+
+            limitsExceeded.put(limit.name(),
+                    userSearchDAO.getLimitExceededCount(limit));
+        }
+
+        return new ModelAndView().
+                addObject("limitsExceeded", limitsExceeded).
+                addObject("planCacheHits", userSearchDAO.getPlanCacheHits()).
+                addObject("planCacheMisses",
+                userSearchDAO.getPlanCacheMisses()).
+                addObject("resultCacheHits", resultCacheHits).
+                addObject("resultCacheMisses", resultCacheMisses).
+                addObject("resultCacheHitRatio",
+                resultCacheHits + resultCacheMisses == 0
+                ? 0.0
+                : (double) resultCacheHits
+                / (resultCacheHits + resultCacheMisses));
+    }
+
+    @PreAuthorize("hasRole('CONFIGURATION_UPDATE')")
+    @RequestMapping(method = RequestMethod.POST,
+    value = "/search/reindex")
+    public ModelAndView reindex() {
+        return new ModelAndView().addObject(userSearchIndexDAO.rebuild());
+    }
+
     @PreAuthorize("hasRole('USER_READ')")
     @RequestMapping(method = RequestMethod.GET,
     value = "/status/{userId}")
@@ -402,6 +749,22 @@ public class UserController extends AbstractController {
         LOG.debug("User create called with parameters {}\n{}\n{}",
                 new Object[]{userTO, mandatoryRoles, mandatoryResources});
 
+        final UserTO savedTO = doCreate(userTO,
+                mandatoryRoles, mandatoryResources, null);
+        LOG.debug("About to return create user\n{}", savedTO);
+
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        return savedTO;
+    }
+
+    private UserTO doCreate(final UserTO userTO,
+            final Set<Long> mandatoryRoles,
+            final Set<String> mandatoryResources,
+            final PropagationBatch propagationBatch)
+            throws SyncopeClientCompositeErrorException,
+            DataIntegrityViolationException, WorkflowException,
+            PropagationException, NotFoundException, UnauthorizedRoleException {
+
         CheckInResult checkInResult = userDataBinder.checkIn(userTO);
         LOG.debug("Check-in result: {}", checkInResult);
 
@@ -410,8 +773,8 @@ public class UserController extends AbstractController {
                 break;
 
             case OVERWRITE:
-                delete(checkInResult.getSyncopeUserId(),
-                        mandatoryRoles, mandatoryResources);
+                doDelete(checkInResult.getSyncopeUserId(),
+                        mandatoryRoles, mandatoryResources, propagationBatch);
                 break;
 
             case REJECT:
@@ -460,8 +823,8 @@ public class UserController extends AbstractController {
                     mandatoryResourceNames);
         }
 
-        propagationManager.create(
-                user, userTO.getPassword(), mandatoryResourceNames);
+        propagationManager.create(user, userTO.getPassword(),
+                mandatoryResourceNames, propagationBatch);
 
         // User is created locally and propagated, let's advance on the workflow
         final Long workflowId =
@@ -484,11 +847,7 @@ public class UserController extends AbstractController {
 
         user = userDAO.save(user);
 
-        final UserTO savedTO = userDataBinder.getUserTO(user, workflow);
-        LOG.debug("About to return create user\n{}", savedTO);
-
-        response.setStatus(HttpServletResponse.SC_CREATED);
-        return savedTO;
+        return userDataBinder.getUserTO(user, workflow);
     }
 
     @PreAuthorize("hasRole('USER_UPDATE')")
@@ -505,6 +864,16 @@ public class UserController extends AbstractController {
         LOG.debug("User update called with parameters {}\n{}\n{}",
                 new Object[]{userMod, mandatoryRoles, mandatoryResources});
 
+        return doUpdate(userMod, mandatoryRoles, mandatoryResources, null);
+    }
+
+    private UserTO doUpdate(final UserMod userMod,
+            final Set<Long> mandatoryRoles,
+            final Set<String> mandatoryResources,
+            final PropagationBatch propagationBatch)
+            throws NotFoundException, PropagationException, WorkflowException,
+            UnauthorizedRoleException {
+
         SyncopeUser user = getUserFromId(userMod.getId());
 
         // First of all, let's check if update is allowed
@@ -532,7 +901,7 @@ public class UserController extends AbstractController {
         }
 
         propagationManager.update(user, userMod.getPassword(),
-                resourceOperations, mandatoryResourceNames);
+                resourceOperations, mandatoryResourceNames, propagationBatch);
 
         return userDataBinder.getUserTO(user, workflow);
     }
@@ -548,6 +917,16 @@ public class UserController extends AbstractController {
             throws NotFoundException, WorkflowException, PropagationException,
             UnauthorizedRoleException {
 
+        doDelete(userId, mandatoryRoles, mandatoryResources, null);
+    }
+
+    private void doDelete(final Long userId,
+            final Set<Long> mandatoryRoles,
+            final Set<String> mandatoryResources,
+            final PropagationBatch propagationBatch)
+            throws NotFoundException, WorkflowException, PropagationException,
+            UnauthorizedRoleException {
+
         SyncopeUser user = getUserFromId(userId);
 
         WFUtils.doExecuteAction(workflow,
@@ -565,7 +944,8 @@ public class UserController extends AbstractController {
                     mandatoryResourceNames);
         }
 
-        propagationManager.delete(user, mandatoryResourceNames);
+        propagationManager.delete(user, mandatoryResourceNames,
+                propagationBatch);
 
         // Now that delete has been propagated, let's remove everything
         if (user.getWorkflowId() != null) {
@@ -573,4 +953,271 @@ public class UserController extends AbstractController {
         }
         userDAO.delete(userId);
     }
+
+    @PreAuthorize("(#bulkUserTO.usersToBeCreated.empty"
+    + " or hasRole('USER_CREATE'))"
+    + " and (#bulkUserTO.usersToBeUpdated.empty"
+    + " or hasRole('USER_UPDATE'))"
+    + " and (#bulkUserTO.userIdsToBeDeleted.empty"
+    + " or hasRole('USER_DELETE'))")
+    @RequestMapping(method = RequestMethod.POST,
+    value = "/bulk")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkUserResultTO bulk(@RequestBody final BulkUserTO bulkUserTO,
+            @RequestParam(value = "chunkSize", required = false,
+            defaultValue = "100") final int chunkSize,
+            @RequestParam(value = "mandatoryRoles",
+            required = false) final Set<Long> mandatoryRoles,
+            @RequestParam(value = "mandatoryResources",
+            required = false) final Set<String> mandatoryResources) {
+
+        LOG.debug("User bulk called for {} creations, {} updates and {} "
+                + "deletions", new Object[]{
+                    bulkUserTO.getUsersToBeCreated().size(),
+                    bulkUserTO.getUsersToBeUpdated().size(),
+                    bulkUserTO.getUserIdsToBeDeleted().size()});
+
+        List<BulkItem> items = new ArrayList<BulkItem>();
+        for (int i = 0; i < bulkUserTO.getUsersToBeCreated().size(); i++) {
+            items.add(new BulkItem(ResourceOperationType.CREATE, i,
+                    bulkUserTO.getUsersToBeCreated().get(i)));
+        }
+        for (int i = 0; i < bulkUserTO.getUsersToBeUpdated().size(); i++) {
+            items.add(new BulkItem(ResourceOperationType.UPDATE, i,
+                    bulkUserTO.getUsersToBeUpdated().get(i)));
+        }
+        for (int i = 0; i < bulkUserTO.getUserIdsToBeDeleted().size(); i++) {
+            items.add(new BulkItem(ResourceOperationType.DELETE, i,
+                    bulkUserTO.getUserIdsToBeDeleted().get(i)));
+        }
+
+        BulkUserResultTO result = new BulkUserResultTO();
+
+        // items whose mandatory propagations were performed, even if their
+        // chunk was rolled back afterwards
+        Set<BulkItem> propagated = new HashSet<BulkItem>();
+
+        int actualChunkSize = Math.max(1, chunkSize);
+        List<BulkItem> chunk;
+        List<BulkUserItemTO> outcomes;
+        for (int from = 0; from < items.size(); from += actualChunkSize) {
+            chunk = items.subList(from,
+                    Math.min(items.size(), from + actualChunkSize));
+
+            outcomes = executeChunk(chunk,
+                    mandatoryRoles, mandatoryResources, propagated);
+            if (chunk.size() > 1 && isFailed(outcomes)) {
+                // the whole chunk was rolled back: replay its items one by
+                // one, so that only the failing ones are not committed
+                outcomes = new ArrayList<BulkUserItemTO>(chunk.size());
+                for (BulkItem item : chunk) {
+                    outcomes.addAll(executeChunk(
+                            Collections.singletonList(item),
+                            mandatoryRoles, mandatoryResources, propagated));
+                }
+            }
+
+            for (BulkUserItemTO outcome : outcomes) {
+                result.addItem(outcome);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isFailed(final List<BulkUserItemTO> outcomes) {
+        boolean failed = false;
+        for (BulkUserItemTO outcome : outcomes) {
+            failed |= outcome.getErrorType() != null;
+        }
+
+        return failed;
+    }
+
+    /**
+     * Process the given items in a single transaction. No connector is called
+     * until all items have been saved and flushed; then mandatory
+     * propagations are performed, item by item, and optional propagations
+     * are deferred until the transaction is committed.
+     *
+     * @param propagated items whose mandatory propagations were performed;
+     * these are not performed again when replaying such items
+     * @return one outcome per processed item: the transaction was rolled back
+     * if any of them reports an error
+     */
+    private List<BulkUserItemTO> executeChunk(final List<BulkItem> chunk,
+            final Set<Long> mandatoryRoles,
+            final Set<String> mandatoryResources,
+            final Set<BulkItem> propagated) {
+
+        final List<BulkUserItemTO> outcomes =
+                new ArrayList<BulkUserItemTO>(chunk.size());
+        try {
+            new TransactionTemplate(transactionManager).execute(
+                    new TransactionCallbackWithoutResult() {
+
+                        @Override
+                        protected void doInTransactionWithoutResult(
+                                final TransactionStatus status) {
+
+                            PropagationBatch propagationBatch =
+                                    new PropagationBatch();
+
+                            // end of the mandatory executions of each item
+                            List<Integer> mandatoryEnds =
+                                    new ArrayList<Integer>(chunk.size());
+
+                            BulkUserItemTO outcome;
+                            for (BulkItem item : chunk) {
+                                outcome = item.getOutcome();
+                                outcomes.add(outcome);
+
+                                try {
+                                    execute(item, outcome, mandatoryRoles,
+                                            mandatoryResources,
+                                            propagationBatch);
+
+                                    // let constraint violations be reported
+                                    // on the item causing them
+                                    entityManager.flush();
+                                } catch (Throwable t) {
+                                    fail(item, outcome, t, status);
+                                    return;
+                                }
+
+                                mandatoryEnds.add(propagationBatch.
+                                        getMandatoryExecutions().size());
+                            }
+
+                            List<TaskExecution> executions;
+                            int from = 0;
+                            for (int i = 0; i < chunk.size(); i++) {
+                                executions = propagationBatch.
+                                        getMandatoryExecutions().subList(
+                                        from, mandatoryEnds.get(i));
+                                from = mandatoryEnds.get(i);
+
+                                try {
+                                    if (propagated.contains(chunk.get(i))) {
+                                        propagationManager.setPropagated(
+                                                executions);
+                                    } else {
+                                        propagationManager.propagateMandatory(
+                                                executions);
+                                        propagated.add(chunk.get(i));
+                                    }
+                                } catch (Throwable t) {
+                                    fail(chunk.get(i), outcomes.get(i), t,
+                                            status);
+                                    return;
+                                }
+                            }
+
+                            propagationManager.propagateAfterCommit(
+                                    propagationBatch);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            LOG.error("While committing bulk chunk", e);
+
+            outcomes.clear();
+            for (BulkItem item : chunk) {
+                BulkUserItemTO outcome = item.getOutcome();
+                setError(outcome, e);
+                outcomes.add(outcome);
+            }
+        } finally {
+            // users of this chunk are no more needed
+            entityManager.clear();
+        }
+
+        return outcomes;
+    }
+
+    private static void fail(final BulkItem item,
+            final BulkUserItemTO outcome, final Throwable t,
+            final TransactionStatus status) {
+
+        LOG.error("While processing bulk item "
+                + item.operation + " " + item.index, t);
+
+        setError(outcome, t);
+        status.setRollbackOnly();
+    }
+
+    private void execute(final BulkItem item, final BulkUserItemTO outcome,
+            final Set<Long> mandatoryRoles,
+            final Set<String> mandatoryResources,
+            final PropagationBatch propagationBatch)
+            throws SyncopeClientCompositeErrorException, WorkflowException,
+            PropagationException, NotFoundException,
+            UnauthorizedRoleException {
+
+        switch (item.operation) {
+            case CREATE:
+                outcome.setUser(doCreate((UserTO) item.payload,
+                        mandatoryRoles, mandatoryResources, propagationBatch));
+                outcome.setUserId(outcome.getUser().getId());
+                break;
+
+            case UPDATE:
+                outcome.setUser(doUpdate((UserMod) item.payload,
+                        mandatoryRoles, mandatoryResources, propagationBatch));
+                break;
+
+            case DELETE:
+                doDelete((Long) item.payload,
+                        mandatoryRoles, mandatoryResources, propagationBatch);
+                break;
+
+            default:
+        }
+    }
+
+    /**
+     * Report the given exception as outcome of a bulk item, as
+     * syncopeClientError.jsp does for single requests.
+     */
+    private static void setError(final BulkUserItemTO outcome,
+            final Throwable t) {
+
+        SyncopeClientExceptionType errorType =
+                SyncopeClientExceptionType.Unknown;
+        String errorMessage = t.getMessage();
+
+        if (t instanceof NotFoundException) {
+            errorType = SyncopeClientExceptionType.NotFound;
+        } else if (t instanceof WorkflowException) {
+            errorType = SyncopeClientExceptionType.Workflow;
+        } else if (t instanceof PropagationException) {
+            errorType = SyncopeClientExceptionType.Propagation;
+            errorMessage = ((PropagationException) t).getResourceName();
+        } else if (t instanceof UnauthorizedRoleException) {
+            errorType = SyncopeClientExceptionType.UnauthorizedRole;
+            errorMessage = String.valueOf(
+                    ((UnauthorizedRoleException) t).getRoleIds());
+        } else if (t instanceof SyncopeClientCompositeErrorException
+                && !((SyncopeClientCompositeErrorException) t).
+                getExceptions().isEmpty()) {
+
+            SyncopeClientException sce =
+                    ((SyncopeClientCompositeErrorException) t).
+                    getExceptions().iterator().next();
+            errorType = sce.getType();
+            errorMessage = String.valueOf(sce.getElements());
+        } else if (t instanceof SearchLimitExceededException) {
+            errorType = SyncopeClientExceptionType.SearchLimitExceeded;
+        } else if (t instanceof DataIntegrityViolationException
+                || (t instanceof PersistenceException
+                && t.getCause() instanceof ConstraintViolationException)) {
+
+            errorType = SyncopeClientExceptionType.DuplicateUniqueValue;
+        } else if (t instanceof PersistenceException) {
+            errorType = SyncopeClientExceptionType.GenericPersistence;
+        }
+
+        outcome.setUser(null);
+        outcome.setErrorType(errorType);
+        outcome.setErrorMessage(errorMessage);
+    }
 }
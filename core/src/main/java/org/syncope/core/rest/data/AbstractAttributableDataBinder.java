@@ -17,9 +17,10 @@ package org.syncope.core.rest.data;
 import org.syncope.core.util.AttributableUtil;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.validation.ValidationException;
 import org.apache.commons.jexl2.Expression;
@@ -36,6 +37,10 @@ import org.syncope.client.to.AbstractAttributableTO;
 import org.syncope.client.to.AttributeTO;
 import org.syncope.client.validation.SyncopeClientCompositeErrorException;
 import org.syncope.client.validation.SyncopeClientException;
+import org.syncope.core.persistence.Metadata;
+import org.syncope.core.persistence.Metadata.MappingInfo;
+import org.syncope.core.persistence.Metadata.SchemaInfo;
+import org.syncope.core.persistence.MetadataRegistry;
 import org.syncope.core.persistence.beans.AbstractAttributable;
 import org.syncope.core.persistence.beans.AbstractAttr;
 import org.syncope.core.persistence.beans.AbstractAttrValue;
@@ -94,22 +99,28 @@ public abstract class AbstractAttributableDataBinder {
     @Autowired
     protected MembershipDAO membershipDAO;
 
+    @Autowired
+    protected MetadataRegistry metadataRegistry;
+
     @Autowired
     private JexlEngine jexlEngine;
 
     private <T extends AbstractSchema> T getSchema(
             final String schemaName, final Class<T> reference) {
 
-        T schema = schemaDAO.find(schemaName, reference);
+        SchemaInfo schemaInfo = metadataRegistry.getMetadata().getSchema(
+                reference, schemaName);
+
+        T schema = null;
 
         // safely ignore invalid schemas from AttributeTO
         // see http://code.google.com/p/syncope/issues/detail?id=17
-        if (schema == null) {
+        if (schemaInfo == null) {
             LOG.debug("Ignoring invalid schema {}", schemaName);
-        } else if (schema.isVirtual() || schema.isReadonly()) {
-            schema = null;
-
+        } else if (schemaInfo.isVirtual() || schemaInfo.isReadonly()) {
             LOG.debug("Ignoring virtual or readonly schema {}", schemaName);
+        } else {
+            schema = schemaDAO.find(schemaName, reference);
         }
 
         return schema;
@@ -118,7 +129,10 @@ public abstract class AbstractAttributableDataBinder {
     private <T extends AbstractDerSchema> T getDerivedSchema(
             final String derSchemaName, final Class<T> reference) {
 
-        T derivedSchema = derivedSchemaDAO.find(derSchemaName, reference);
+        T derivedSchema = metadataRegistry.getMetadata().
+                containsDerivedSchema(reference, derSchemaName)
+                ? derivedSchemaDAO.find(derSchemaName, reference)
+                : null;
 
         if (derivedSchema == null) {
             LOG.debug("Ignoring invalid derivedschema {}", derSchemaName);
@@ -176,8 +190,11 @@ public abstract class AbstractAttributableDataBinder {
 
         JexlContext jexlContext = new MapContext();
 
-        List<AbstractSchema> allSchemas =
-                schemaDAO.findAll(attributableUtil.schemaClass());
+        for (SchemaInfo schema : metadataRegistry.getMetadata().getSchemas(
+                attributableUtil.schemaClass())) {
+
+            jexlContext.set(schema.getName(), null);
+        }
         for (AbstractAttr attribute : attributes) {
             jexlContext.set(attribute.getSchema().getName(),
                     attribute.getValuesAsStrings().isEmpty()
@@ -185,11 +202,6 @@ public abstract class AbstractAttributableDataBinder {
                     : (attribute.getSchema().isMultivalue()
                     ? attribute.getValuesAsStrings()
                     : attribute.getValuesAsStrings().iterator().next()));
-
-            allSchemas.remove(attribute.getSchema());
-        }
-        for (AbstractSchema schema : allSchemas) {
-            jexlContext.set(schema.getName(), null);
         }
 
         boolean result = false;
@@ -207,46 +219,23 @@ public abstract class AbstractAttributableDataBinder {
     }
 
     private boolean evaluateMandatoryCondition(
-            final TargetResource resource,
+            final Set<String> forcingResourceNames,
             final List<? extends AbstractAttr> attributes,
             final String sourceAttrName,
             final AttributableUtil attributableUtil) {
 
-        List<SchemaMapping> mappings = resource.getMappings(sourceAttrName,
-                attributableUtil.sourceMappingType());
-
         boolean result = false;
 
-        SchemaMapping mapping;
-        for (Iterator<SchemaMapping> itor = mappings.iterator();
-                itor.hasNext() && !result;) {
-
-            mapping = itor.next();
-            result |= evaluateMandatoryCondition(
-                    mapping.getMandatoryCondition(),
-                    attributes,
-                    attributableUtil);
-        }
-
-        return result;
-    }
+        for (MappingInfo mapping : metadataRegistry.getMetadata().getMappings(
+                attributableUtil.sourceMappingType(), sourceAttrName)) {
 
-    private boolean evaluateMandatoryCondition(
-            final Set<TargetResource> resources,
-            final List<? extends AbstractAttr> attributes,
-            final String sourceAttrName,
-            final AttributableUtil attributableUtil) {
+            if (!result && forcingResourceNames.contains(
+                    mapping.getResourceName())) {
 
-        boolean result = false;
-
-        TargetResource resource;
-        for (Iterator<TargetResource> itor = resources.iterator();
-                itor.hasNext() && !result;) {
-
-            resource = itor.next();
-            if (resource.isForceMandatoryConstraint()) {
-                result |= evaluateMandatoryCondition(resource,
-                        attributes, sourceAttrName, attributableUtil);
+                result = evaluateMandatoryCondition(
+                        mapping.getMandatoryCondition(),
+                        attributes,
+                        attributableUtil);
             }
         }
 
@@ -266,12 +255,19 @@ public abstract class AbstractAttributableDataBinder {
         resources.addAll(attributable.getInheritedTargetResources());
 
         LOG.debug("Check mandatory constraint among resources {}", resources);
+
+        Set<String> forcingResourceNames = new HashSet<String>();
+        for (TargetResource resource : resources) {
+            if (resource.isForceMandatoryConstraint()) {
+                forcingResourceNames.add(resource.getName());
+            }
+        }
+
         // Check if there is some mandatory schema defined for which no value
         // has been provided
-        List<AbstractSchema> allSchemas =
-                schemaDAO.findAll(attributableUtil.schemaClass());
+        for (SchemaInfo schema : metadataRegistry.getMetadata().getSchemas(
+                attributableUtil.schemaClass())) {
 
-        for (AbstractSchema schema : allSchemas) {
             if (attributable.getAttribute(schema.getName()) == null
                     && !schema.isVirtual()
                     && !schema.isReadonly()
@@ -279,7 +275,7 @@ public abstract class AbstractAttributableDataBinder {
                     schema.getMandatoryCondition(),
                     attributable.getAttributes(),
                     attributableUtil)
-                    || evaluateMandatoryCondition(resources,
+                    || evaluateMandatoryCondition(forcingResourceNames,
                     attributable.getAttributes(),
                     schema.getName(),
                     attributableUtil))) {
@@ -301,9 +297,18 @@ public abstract class AbstractAttributableDataBinder {
             final SyncopeClientCompositeErrorException compositeErrorException)
             throws SyncopeClientCompositeErrorException {
 
-        Set<TargetResource> resources = new HashSet<TargetResource>();
-        resources.addAll(attributable.getTargetResources());
-        resources.addAll(attributable.getInheritedTargetResources());
+        Map<String, TargetResource> resources =
+                new HashMap<String, TargetResource>();
+        for (TargetResource resource : attributable.getTargetResources()) {
+            resources.put(resource.getName(), resource);
+        }
+        for (TargetResource resource :
+                attributable.getInheritedTargetResources()) {
+
+            resources.put(resource.getName(), resource);
+        }
+
+        Metadata metadata = metadataRegistry.getMetadata();
 
         ResourceOperations resourceOperations = new ResourceOperations();
 
@@ -333,21 +338,19 @@ public abstract class AbstractAttributableDataBinder {
                             attributableUtil.attributeClass());
                 }
 
-                for (SchemaMapping mapping : resourceDAO.findAllMappings()) {
-                    if (mapping.getSourceAttrName().equals(schema.getName())
-                            && mapping.getSourceMappingType()
-                            == attributableUtil.sourceMappingType()
-                            && mapping.getResource() != null
-                            && resources.contains(mapping.getResource())) {
+                for (MappingInfo mapping : metadata.getMappings(
+                        attributableUtil.sourceMappingType(),
+                        schema.getName())) {
 
+                    if (resources.containsKey(mapping.getResourceName())) {
                         resourceOperations.add(ResourceOperationType.UPDATE,
-                                mapping.getResource());
+                                resources.get(mapping.getResourceName()));
 
                         if (mapping.isAccountid() && attribute != null
                                 && !attribute.getValuesAsStrings().isEmpty()) {
 
                             resourceOperations.addOldAccountId(
-                                    mapping.getResource().getName(),
+                                    mapping.getResourceName(),
                                     attribute.getValuesAsStrings().
                                     iterator().next());
                         }
@@ -367,15 +370,13 @@ public abstract class AbstractAttributableDataBinder {
                     attributableUtil.schemaClass());
 
             if (schema != null) {
-                for (SchemaMapping mapping : resourceDAO.findAllMappings()) {
-                    if (mapping.getSourceAttrName().equals(schema.getName())
-                            && mapping.getSourceMappingType()
-                            == attributableUtil.sourceMappingType()
-                            && mapping.getResource() != null
-                            && resources.contains(mapping.getResource())) {
+                for (MappingInfo mapping : metadata.getMappings(
+                        attributableUtil.sourceMappingType(),
+                        schema.getName())) {
 
+                    if (resources.containsKey(mapping.getResourceName())) {
                         resourceOperations.add(ResourceOperationType.UPDATE,
-                                mapping.getResource());
+                                resources.get(mapping.getResourceName()));
                     }
                 }
 
@@ -447,7 +448,8 @@ public abstract class AbstractAttributableDataBinder {
             if (derivedSchema != null) {
                 for (SchemaMapping mapping : derivedSchema.getMappings()) {
                     if (mapping.getResource() != null
-                            && resources.contains(mapping.getResource())) {
+                            && resources.containsKey(
+                            mapping.getResource().getName())) {
                         resourceOperations.add(ResourceOperationType.UPDATE,
                                 mapping.getResource());
                     }
@@ -476,7 +478,8 @@ public abstract class AbstractAttributableDataBinder {
             if (derivedSchema != null) {
                 for (SchemaMapping mapping : derivedSchema.getMappings()) {
                     if (mapping.getResource() != null
-                            && resources.contains(mapping.getResource())) {
+                            && resources.containsKey(
+                            mapping.getResource().getName())) {
 
                         resourceOperations.add(ResourceOperationType.UPDATE,
                                 mapping.getResource());
@@ -645,28 +648,43 @@ public abstract class AbstractAttributableDataBinder {
             Collection<? extends AbstractDerAttr> derivedAttributes,
             Collection<TargetResource> resources) {
 
-        AttributeTO attributeTO;
         for (AbstractAttr attribute : attributes) {
-            attributeTO = new AttributeTO();
-            attributeTO.setSchema(attribute.getSchema().getName());
-            attributeTO.setValues(attribute.getValuesAsStrings());
-            attributeTO.setReadonly(attribute.getSchema().isReadonly());
-
-            abstractAttributableTO.addAttribute(attributeTO);
+            abstractAttributableTO.addAttribute(getAttributeTO(attribute));
         }
 
         for (AbstractDerAttr derivedAttribute : derivedAttributes) {
-            attributeTO = new AttributeTO();
-            attributeTO.setSchema(
-                    derivedAttribute.getDerivedSchema().getName());
-            attributeTO.addValue(derivedAttribute.getValue(attributes));
-            attributeTO.setReadonly(true);
-
-            abstractAttributableTO.addDerivedAttribute(attributeTO);
+            abstractAttributableTO.addDerivedAttribute(
+                    getDerivedAttributeTO(derivedAttribute, attributes));
         }
 
         for (TargetResource resource : resources) {
             abstractAttributableTO.addResource(resource.getName());
         }
     }
+
+    protected AttributeTO getAttributeTO(final AbstractAttr attribute) {
+        AttributeTO attributeTO = new AttributeTO();
+        attributeTO.setSchema(attribute.getSchema().getName());
+        attributeTO.setValues(attribute.getValuesAsStrings());
+        attributeTO.setReadonly(attribute.getSchema().isReadonly());
+
+        return attributeTO;
+    }
+
+    /**
+     * @param derivedAttribute derived attribute
+     * @param attributes all attributes of the owner, used to compute value
+     * @return transfer object for the given derived attribute
+     */
+    protected AttributeTO getDerivedAttributeTO(
+            final AbstractDerAttr derivedAttribute,
+            final Collection<? extends AbstractAttr> attributes) {
+
+        AttributeTO attributeTO = new AttributeTO();
+        attributeTO.setSchema(derivedAttribute.getDerivedSchema().getName());
+        attributeTO.addValue(derivedAttribute.getValue(attributes));
+        attributeTO.setReadonly(true);
+
+        return attributeTO;
+    }
 }
@@ -17,8 +17,13 @@ package org.syncope.core.rest.data;
 import org.syncope.core.util.AttributableUtil;
 import com.opensymphony.workflow.Workflow;
 import com.opensymphony.workflow.spi.Step;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javassist.NotFoundException;
 import javax.persistence.EntityNotFoundException;
@@ -42,6 +47,8 @@ import org.syncope.core.persistence.beans.role.SyncopeRole;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.beans.user.UAttr;
 import org.syncope.core.persistence.beans.user.UDerAttr;
+import org.syncope.core.persistence.beans.user.UDerSchema;
+import org.syncope.core.persistence.dao.UserProjection;
 import org.syncope.core.persistence.propagation.ResourceOperations;
 import org.syncope.types.ResourceOperationType;
 import org.syncope.types.SyncopeClientExceptionType;
@@ -323,42 +330,139 @@ public class UserDataBinder extends AbstractAttributableDataBinder {
     }
 
     public UserTO getUserTO(SyncopeUser user, Workflow userWorkflow) {
+        return getUserTO(user, userWorkflow, UserProjection.ALL,
+                user.getAttributes(), true);
+    }
+
+    /**
+     * Only the attributes required by the given projection are loaded; all
+     * attributes are still needed when derived attributes are requested,
+     * for computing their values.
+     *
+     * @param users users, as returned by DAO for the given projection
+     * @param userWorkflow user workflow
+     * @param projection parts of users to be returned
+     * @return transfer objects for the given users
+     */
+    public List<UserTO> getUserTOs(final List<SyncopeUser> users,
+            final Workflow userWorkflow, final UserProjection projection) {
+
+        Map<Long, List<AbstractAttr>> attributes = null;
+        boolean withDerived = projection.isAllAttributes();
+        if (!projection.isAllAttributes()) {
+            List<Long> userIds = new ArrayList<Long>(users.size());
+            for (SyncopeUser user : users) {
+                userIds.add(user.getId());
+            }
+
+            attributes = new HashMap<Long, List<AbstractAttr>>();
+            SyncopeUser owner;
+            for (UAttr attribute : userDAO.findAttributes(userIds,
+                    projection.getAttributes())) {
+
+                owner = attribute.getOwner();
+                if (!attributes.containsKey(owner.getId())) {
+                    attributes.put(owner.getId(),
+                            new ArrayList<AbstractAttr>());
+                }
+                attributes.get(owner.getId()).add(attribute);
+            }
+
+            for (String schemaName : projection.getAttributes()) {
+                withDerived |= derivedSchemaDAO.find(
+                        schemaName, UDerSchema.class) != null;
+            }
+        }
+
+        List<UserTO> result = new ArrayList<UserTO>(users.size());
+        Collection<? extends AbstractAttr> userAttributes;
+        for (SyncopeUser user : users) {
+            userAttributes = attributes == null
+                    ? user.getAttributes()
+                    : attributes.get(user.getId());
+            result.add(getUserTO(user, userWorkflow, projection,
+                    userAttributes == null
+                    ? Collections.<AbstractAttr>emptyList()
+                    : userAttributes,
+                    withDerived));
+        }
+
+        return result;
+    }
+
+    private UserTO getUserTO(final SyncopeUser user,
+            final Workflow userWorkflow, final UserProjection projection,
+            final Collection<? extends AbstractAttr> attributes,
+            final boolean withDerived) {
+
         UserTO userTO = new UserTO();
         userTO.setId(user.getId());
         userTO.setToken(user.getToken());
         userTO.setTokenExpireTime(user.getTokenExpireTime());
         userTO.setPassword(user.getPassword());
 
-        try {
-            List<Step> currentSteps = userWorkflow.getCurrentSteps(
-                    user.getWorkflowId());
+        if (projection.isStatus()) {
+            try {
+                List<Step> currentSteps = userWorkflow.getCurrentSteps(
+                        user.getWorkflowId());
 
-            if (currentSteps != null && !currentSteps.isEmpty()) {
-                userTO.setStatus(currentSteps.iterator().next().getStatus());
-            } else {
-                LOG.error("Could not find status information for {}", user);
+                if (currentSteps != null && !currentSteps.isEmpty()) {
+                    userTO.setStatus(
+                            currentSteps.iterator().next().getStatus());
+                } else {
+                    LOG.error("Could not find status information for {}",
+                            user);
+                }
+            } catch (EntityNotFoundException e) {
+                LOG.error("Could not find workflow entry with id "
+                        + user.getWorkflowId());
             }
-        } catch (EntityNotFoundException e) {
-            LOG.error("Could not find workflow entry with id "
-                    + user.getWorkflowId());
         }
 
-        fillTO(userTO, user.getAttributes(),
-                user.getDerivedAttributes(), user.getTargetResources());
+        if (projection.isAllAttributes() && projection.isResources()) {
+            fillTO(userTO, attributes,
+                    user.getDerivedAttributes(), user.getTargetResources());
+        } else {
+            for (AbstractAttr attribute : attributes) {
+                userTO.addAttribute(getAttributeTO(attribute));
+            }
 
-        MembershipTO membershipTO;
-        for (Membership membership : user.getMemberships()) {
-            membershipTO = new MembershipTO();
-            membershipTO.setId(membership.getId());
-            membershipTO.setRoleId(membership.getSyncopeRole().getId());
-            membershipTO.setRoleName(membership.getSyncopeRole().getName());
+            if (withDerived) {
+                for (AbstractDerAttr derivedAttribute :
+                        user.getDerivedAttributes()) {
+
+                    if (projection.isIncluded(derivedAttribute.
+                            getDerivedSchema().getName())) {
 
-            fillTO(membershipTO,
-                    membership.getAttributes(),
-                    membership.getDerivedAttributes(),
-                    membership.getTargetResources());
+                        userTO.addDerivedAttribute(getDerivedAttributeTO(
+                                derivedAttribute, user.getAttributes()));
+                    }
+                }
+            }
+
+            if (projection.isResources()) {
+                for (TargetResource resource : user.getTargetResources()) {
+                    userTO.addResource(resource.getName());
+                }
+            }
+        }
 
-            userTO.addMembership(membershipTO);
+        if (projection.isMemberships()) {
+            MembershipTO membershipTO;
+            for (Membership membership : user.getMemberships()) {
+                membershipTO = new MembershipTO();
+                membershipTO.setId(membership.getId());
+                membershipTO.setRoleId(membership.getSyncopeRole().getId());
+                membershipTO.setRoleName(
+                        membership.getSyncopeRole().getName());
+
+                fillTO(membershipTO,
+                        membership.getAttributes(),
+                        membership.getDerivedAttributes(),
+                        membership.getTargetResources());
+
+                userTO.addMembership(membershipTO);
+            }
         }
 
         return userTO;
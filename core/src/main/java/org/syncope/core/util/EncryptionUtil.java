@@ -40,8 +40,8 @@ public class EncryptionUtil {
 
         try {
             final DESKeySpec keySpec =
-                    new DESKeySpec(confDAO.find(
-                    "token.encryption.key").getConfValue().getBytes("UTF8"));
+                    new DESKeySpec(confDAO.getSnapshot().getString(
+                    "token.encryption.key").getBytes("UTF8"));
 
             final SecretKeyFactory keyFactory =
                     SecretKeyFactory.getInstance("DES");
@@ -70,8 +70,8 @@ public class EncryptionUtil {
 
         try {
             final DESKeySpec keySpec =
-                    new DESKeySpec(confDAO.find(
-                    "token.encryption.key").getConfValue().getBytes("UTF8"));
+                    new DESKeySpec(confDAO.getSnapshot().getString(
+                    "token.encryption.key").getBytes("UTF8"));
 
             final SecretKeyFactory keyFactory =
                     SecretKeyFactory.getInstance("DES");
@@ -22,6 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.dao.MissingConfKeyException;
 import org.syncope.core.persistence.dao.ConfDAO;
+import org.syncope.core.persistence.dao.ConfSnapshot;
 
 public class GenerateToken extends OSWorkflowComponent
         implements FunctionProvider {
@@ -42,11 +43,9 @@ public class GenerateToken extends OSWorkflowComponent
         LOG.debug("Received token {}", token);
 
         try {
-            user.generateToken(
-                    Integer.parseInt(confDAO.find(
-                    "token.length").getConfValue()),
-                    Integer.parseInt(confDAO.find(
-                    "token.expireTime").getConfValue()), token);
+            ConfSnapshot conf = confDAO.getSnapshot();
+            user.generateToken(conf.getInt("token.length"),
+                    conf.getInt("token.expireTime"), token);
         } catch (MissingConfKeyException e) {
             throw new WorkflowException(e);
         }
@@ -6,6 +6,7 @@
 <%@page import="org.syncope.core.rest.controller.InvalidSearchConditionException"%>
 <%@page import="org.syncope.core.rest.controller.UnauthorizedRoleException"%>
 <%@page import="org.syncope.core.persistence.dao.MissingConfKeyException"%>
+<%@page import="org.syncope.core.persistence.dao.SearchLimitExceededException"%>
 <%@page import="org.syncope.client.validation.SyncopeClientException"%>
 <%@page import="org.syncope.client.validation.SyncopeClientCompositeErrorException"%>
 <%@page import="org.syncope.core.persistence.propagation.PropagationException"%>
@@ -88,6 +89,17 @@
                         SyncopeClientExceptionType.InvalidSearchCondition.
                         getHeaderValue());
 
+                statusCode = HttpServletResponse.SC_BAD_REQUEST;
+            } else if (ex instanceof SearchLimitExceededException) {
+                response.setHeader(
+                        SyncopeClientErrorHandler.EXCEPTION_TYPE_HEADER,
+                        SyncopeClientExceptionType.SearchLimitExceeded.
+                        getHeaderValue());
+                response.setHeader(
+                        SyncopeClientExceptionType.SearchLimitExceeded.
+                        getElementHeaderName(),
+                        ((SearchLimitExceededException) ex).getLimit().name());
+
                 statusCode = HttpServletResponse.SC_BAD_REQUEST;
             } else if (ex instanceof UnauthorizedRoleException) {
                 response.setHeader(
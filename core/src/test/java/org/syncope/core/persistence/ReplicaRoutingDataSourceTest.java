@@ -0,0 +1,152 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String PRIMARY = "primary";
+
+    private static final String REPLICA = "replica";
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private DataSource replica;
+
+    private static DataSource createDataSource(final String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:hsqldb:mem:" + name, "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        return dataSource;
+    }
+
+    /**
+     * @return name of the database connections are currently routed to
+     */
+    private String getDatabase()
+            throws SQLException {
+
+        Connection conn = routingDataSource.getConnection();
+        try {
+            String url = conn.getMetaData().getURL();
+            return url.substring(url.lastIndexOf(':') + 1);
+        } finally {
+            conn.close();
+        }
+    }
+
+    private static DataSource createUnavailableDataSource() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:hsqldb:hsql://localhost:1/none", "sa", "");
+        dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+        return dataSource;
+    }
+
+    private static void setTransaction(final boolean active,
+            final boolean readOnly) {
+
+        TransactionSynchronizationManager.setActualTransactionActive(active);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(
+                readOnly);
+    }
+
+    @Before
+    public void setUp() {
+        replica = createDataSource(REPLICA);
+
+        routingDataSource = new ReplicaRoutingDataSource();
+        routingDataSource.setPrimary(createDataSource(PRIMARY));
+        routingDataSource.setReplicas(Collections.singletonList(replica));
+        routingDataSource.setHealthCheckQuery(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+    }
+
+    @After
+    public void tearDown() {
+        setTransaction(false, false);
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void route()
+            throws SQLException {
+
+        assertEquals(PRIMARY, getDatabase());
+
+        setTransaction(true, false);
+        assertEquals(PRIMARY, getDatabase());
+
+        setTransaction(true, true);
+        assertEquals(REPLICA, getDatabase());
+    }
+
+    @Test
+    public void fallback()
+            throws SQLException {
+
+        routingDataSource.setReplicas(Arrays.asList(
+                createUnavailableDataSource(),
+                replica));
+        setTransaction(true, true);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(REPLICA, getDatabase());
+        }
+        assertEquals(1, routingDataSource.getUnavailableReplicaCount());
+
+        routingDataSource.checkHealth();
+        assertEquals(1, routingDataSource.getUnavailableReplicaCount());
+
+        routingDataSource.setReplicas(Collections.singletonList(
+                createUnavailableDataSource()));
+        assertEquals(PRIMARY, getDatabase());
+    }
+
+    @Test
+    public void readYourWrites()
+            throws SQLException {
+
+        routingDataSource.setReadYourWritesSeconds(60);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("admin", "password"));
+
+        setTransaction(true, true);
+        assertEquals(REPLICA, getDatabase());
+
+        setTransaction(true, false);
+        assertEquals(PRIMARY, getDatabase());
+
+        setTransaction(true, true);
+        assertEquals(PRIMARY, getDatabase());
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("other", "password"));
+        assertEquals(REPLICA, getDatabase());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.syncope.core.persistence.dao.EntitlementDAO;
+import org.syncope.core.persistence.dao.UserDAO;
+import org.syncope.core.util.EntitlementUtil;
+
+/**
+ * Routing of transactions started by JpaTransactionManager, through the
+ * LazyConnectionDataSourceProxy configured in persistenceContext.xml.
+ */
+public class ReplicaRoutingTransactionTest extends AbstractTest {
+
+    /**
+     * Counts users in read-only or read-write transactions.
+     */
+    public static class UserCounter {
+
+        @Autowired
+        private UserDAO userDAO;
+
+        @Transactional(readOnly = true)
+        public Integer countReadOnly(final Set<Long> adminRoles) {
+            return userDAO.count(adminRoles);
+        }
+
+        @Transactional
+        public Integer countReadWrite(final Set<Long> adminRoles) {
+            return userDAO.count(adminRoles);
+        }
+    }
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private EntitlementDAO entitlementDAO;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    private final AtomicInteger replicaConnections = new AtomicInteger();
+
+    @Before
+    public void addReplica() {
+        // same database as the primary, counting the connections handed out
+        // to transactions (health checks run outside of them)
+        DataSource replica =
+                new DelegatingDataSource(routingDataSource.getPrimary()) {
+
+                    @Override
+                    public Connection getConnection()
+                            throws SQLException {
+
+                        if (TransactionSynchronizationManager.
+                                isActualTransactionActive()) {
+
+                            replicaConnections.incrementAndGet();
+                        }
+                        return super.getConnection();
+                    }
+                };
+        routingDataSource.setReplicas(Collections.singletonList(replica));
+    }
+
+    @After
+    public void removeReplica() {
+        routingDataSource.setReplicas(Collections.<DataSource>emptyList());
+    }
+
+    @Test
+    public void route() {
+        UserCounter counter =
+                (UserCounter) beanFactory.createBean(UserCounter.class);
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        Integer count = counter.countReadWrite(adminRoles);
+        assertEquals(0, replicaConnections.get());
+
+        assertEquals(count, counter.countReadOnly(adminRoles));
+        assertEquals(1, replicaConnections.get());
+    }
+}
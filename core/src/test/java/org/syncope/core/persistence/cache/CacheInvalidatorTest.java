@@ -0,0 +1,306 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.cache.StandardQueryCache;
+import org.hibernate.cache.UpdateTimestampsCache;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two-node cluster living in this JVM, connected via loopback channel;
+ * multicast() connects two more nodes via multicast channel instead.
+ */
+public class CacheInvalidatorTest {
+
+    private static final String ENTITY_CACHE = "syncopecache.SyncopeUser";
+
+    private static final String QUERY_CACHE =
+            "syncopecache." + StandardQueryCache.class.getName();
+
+    private static final String TIMESTAMPS_CACHE =
+            "syncopecache." + UpdateTimestampsCache.class.getName();
+
+    private CacheManager cacheManager1;
+
+    private CacheManager cacheManager2;
+
+    private CacheInvalidator node1;
+
+    private CacheInvalidator node2;
+
+    private CacheManager createCacheManager() {
+        Configuration configuration = new Configuration();
+        configuration.setUpdateCheck(false);
+        configuration.setDefaultCacheConfiguration(
+                new CacheConfiguration("default", 100));
+
+        CacheManager cacheManager = new CacheManager(configuration);
+        cacheManager.addCache(ENTITY_CACHE);
+        cacheManager.addCache(QUERY_CACHE);
+        cacheManager.addCache(TIMESTAMPS_CACHE);
+
+        return cacheManager;
+    }
+
+    private CacheInvalidator createNode(final CacheManager cacheManager) {
+        Properties properties = new Properties();
+        properties.setProperty(CacheInvalidator.CHANNEL,
+                LoopbackInvalidationChannel.class.getName());
+        properties.setProperty(LoopbackInvalidationChannel.CLUSTER,
+                "CacheInvalidatorTest");
+        // send each change as soon as it happens
+        properties.setProperty(CacheInvalidator.MAX_BATCH_SIZE, "1");
+
+        CacheInvalidator node = new CacheInvalidator(cacheManager,
+                properties);
+        node.init();
+        return node;
+    }
+
+    @Before
+    public void setUp() {
+        cacheManager1 = createCacheManager();
+        cacheManager2 = createCacheManager();
+        node1 = createNode(cacheManager1);
+        node2 = createNode(cacheManager2);
+    }
+
+    @After
+    public void tearDown() {
+        node1.dispose();
+        node2.dispose();
+        cacheManager1.shutdown();
+        cacheManager2.shutdown();
+    }
+
+    @Test
+    public void invalidate() {
+        Ehcache cache1 = cacheManager1.getEhcache(ENTITY_CACHE);
+        Ehcache cache2 = cacheManager2.getEhcache(ENTITY_CACHE);
+
+        // loads are local
+        cache1.put(new Element(1L, "user1"));
+        cache1.put(new Element(2L, "user2"));
+        cache2.put(new Element(1L, "user1"));
+        cache2.put(new Element(2L, "user2"));
+        assertNotNull(cache1.get(1L));
+
+        cache1.put(new Element(1L, "user1 updated"));
+        assertEquals("user1 updated", cache1.get(1L).getObjectValue());
+        assertNull(cache2.get(1L));
+
+        cache2.remove(2L);
+        assertNull(cache1.get(2L));
+
+        cache1.put(new Element(3L, "user3"));
+        cache2.put(new Element(3L, "user3"));
+        cache2.removeAll();
+        assertEquals(0, cache1.getSize());
+    }
+
+    @Test
+    public void updateTimestamps() {
+        Ehcache queryCache1 = cacheManager1.getEhcache(QUERY_CACHE);
+        Ehcache queryCache2 = cacheManager2.getEhcache(QUERY_CACHE);
+        queryCache1.put(new Element("query", "result"));
+        queryCache2.put(new Element("query", "result"));
+
+        cacheManager1.getEhcache(TIMESTAMPS_CACHE).put(
+                new Element("SyncopeUser", 100L));
+        queryCache1.put(new Element("query", "new result"));
+
+        assertEquals(100L, cacheManager2.getEhcache(TIMESTAMPS_CACHE).
+                get("SyncopeUser").getObjectValue());
+        assertEquals("result", queryCache2.get("query").getObjectValue());
+    }
+
+    private static Map<String, Long> versions(final long version) {
+        return Collections.singletonMap(ENTITY_CACHE, version);
+    }
+
+    @Test
+    public void ignoreOldChanges() {
+        Ehcache cache2 = cacheManager2.getEhcache(ENTITY_CACHE);
+
+        InvalidationBatch batch =
+                new InvalidationBatch("node3", 5, versions(4));
+        batch.invalidate(ENTITY_CACHE, 1L, 5);
+        batch.setVersions(versions(5));
+
+        cache2.put(new Element(1L, "user1"));
+        node2.receive(batch);
+        assertNull(cache2.get(1L));
+
+        // duplicate
+        cache2.put(new Element(1L, "user1"));
+        node2.receive(batch);
+        assertNotNull(cache2.get(1L));
+
+        // late
+        InvalidationBatch older =
+                new InvalidationBatch("node3", 4, versions(3));
+        older.invalidate(ENTITY_CACHE, 1L, 4);
+        older.setVersions(versions(4));
+        node2.receive(older);
+        assertNotNull(cache2.get(1L));
+    }
+
+    @Test
+    public void lostBatch() {
+        Ehcache cache2 = cacheManager2.getEhcache(ENTITY_CACHE);
+        cache2.put(new Element(1L, "user1"));
+        cache2.put(new Element(2L, "user2"));
+
+        InvalidationBatch first =
+                new InvalidationBatch("node3", 0, versions(0));
+        first.invalidate(ENTITY_CACHE, 1L, 1);
+        first.setVersions(versions(1));
+        node2.receive(first);
+        assertNull(cache2.get(1L));
+        assertNotNull(cache2.get(2L));
+
+        // batch 1, carrying versions 2 and 3, never arrives
+        InvalidationBatch heartbeat =
+                new InvalidationBatch("node3", 2, versions(3));
+        heartbeat.setVersions(versions(3));
+        node2.receive(heartbeat);
+        assertEquals(0, cache2.getSize());
+    }
+
+    @Test
+    public void failedSend() {
+        Ehcache cache1 = cacheManager1.getEhcache(ENTITY_CACHE);
+        Ehcache cache2 = cacheManager2.getEhcache(ENTITY_CACHE);
+        cache1.put(new Element(1L, "user1"));
+        cache2.put(new Element(1L, "user1"));
+        cache2.put(new Element(2L, "user2"));
+
+        cache1.remove(1L);
+        assertNull(cache2.get(1L));
+
+        // as if the batch with this change got lost
+        Map<String, Long> lost = new HashMap<String, Long>();
+        lost.put(ENTITY_CACHE, 2L);
+        InvalidationBatch next =
+                new InvalidationBatch(node1.getNodeId(), 5, lost);
+        next.setVersions(lost);
+        node2.receive(next);
+        assertNull(cache2.get(2L));
+    }
+
+    @Test
+    public void lostUpdateTimestamps() {
+        Ehcache queryCache2 = cacheManager2.getEhcache(QUERY_CACHE);
+        Ehcache timestamps2 = cacheManager2.getEhcache(TIMESTAMPS_CACHE);
+        queryCache2.put(new Element("query", "result"));
+        timestamps2.put(new Element("SyncopeUser", 100L));
+
+        InvalidationBatch batch = new InvalidationBatch("node3", 0,
+                Collections.singletonMap(TIMESTAMPS_CACHE, 0L));
+        node2.receive(batch);
+
+        batch = new InvalidationBatch("node3", 2,
+                Collections.singletonMap(TIMESTAMPS_CACHE, 1L));
+        node2.receive(batch);
+
+        // timestamps are kept, cached query results are not
+        assertEquals(0, queryCache2.getSize());
+        assertNotNull(timestamps2.get("SyncopeUser"));
+    }
+
+    @Test
+    public void clearingBatch() {
+        Ehcache cache2 = cacheManager2.getEhcache(ENTITY_CACHE);
+        cache2.put(new Element(1L, "user1"));
+        cache2.put(new Element(2L, "user2"));
+
+        InvalidationBatch batch =
+                new InvalidationBatch("node3", 0, versions(0));
+        batch.invalidate(ENTITY_CACHE, 1L, 1);
+        batch.setVersions(versions(1));
+
+        InvalidationBatch clearing = batch.toClearing();
+        assertEquals(Long.valueOf(1),
+                clearing.getClearedCaches().get(ENTITY_CACHE));
+        assertTrue(clearing.getInvalidatedKeys().isEmpty());
+
+        node2.receive(clearing);
+        assertEquals(0, cache2.getSize());
+    }
+
+    @Test
+    public void multicast() {
+        Properties properties = new Properties();
+        properties.setProperty(CacheInvalidator.MAX_BATCH_SIZE, "1");
+        properties.setProperty(
+                MulticastInvalidationChannel.MULTICAST_GROUP_ADDRESS,
+                "230.0.0.2");
+        properties.setProperty(
+                MulticastInvalidationChannel.MULTICAST_GROUP_PORT, "4447");
+
+        CacheManager cacheManager3 = createCacheManager();
+        CacheManager cacheManager4 = createCacheManager();
+        CacheInvalidator node3 = null;
+        CacheInvalidator node4 = null;
+        try {
+            try {
+                node3 = new CacheInvalidator(cacheManager3, properties);
+                node3.init();
+                node4 = new CacheInvalidator(cacheManager4, properties);
+                node4.init();
+            } catch (net.sf.ehcache.CacheException e) {
+                Assume.assumeNoException(e);
+            }
+
+            Ehcache cache3 = cacheManager3.getEhcache(ENTITY_CACHE);
+            Ehcache cache4 = cacheManager4.getEhcache(ENTITY_CACHE);
+            cache3.put(new Element(1L, "user1"));
+            cache4.put(new Element(1L, "user1"));
+
+            cache3.remove(1L);
+            for (int i = 0; i < 50 && cache4.get(1L) != null; i++) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            assertNull(cache4.get(1L));
+        } finally {
+            if (node3 != null) {
+                node3.dispose();
+            }
+            if (node4 != null) {
+                node4.dispose();
+            }
+            cacheManager3.shutdown();
+            cacheManager4.shutdown();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two-node cluster living in this JVM, connected via loopback channel.
+ */
+public class ChangeSignalTest {
+
+    private static final String SIGNAL = "syncope.signal.ChangeSignalTest";
+
+    private final AtomicInteger received1 = new AtomicInteger();
+
+    private final AtomicInteger received2 = new AtomicInteger();
+
+    private CacheManager cacheManager1;
+
+    private CacheManager cacheManager2;
+
+    private CacheInvalidator node1;
+
+    private CacheInvalidator node2;
+
+    private ChangeSignal signal1;
+
+    private ChangeSignal signal2;
+
+    private CacheManager createCacheManager() {
+        Configuration configuration = new Configuration();
+        configuration.setUpdateCheck(false);
+        configuration.setDefaultCacheConfiguration(
+                new CacheConfiguration("default", 100));
+
+        return new CacheManager(configuration);
+    }
+
+    private CacheInvalidator createNode(final CacheManager cacheManager) {
+        Properties properties = new Properties();
+        properties.setProperty(CacheInvalidator.CHANNEL,
+                LoopbackInvalidationChannel.class.getName());
+        properties.setProperty(LoopbackInvalidationChannel.CLUSTER,
+                "ChangeSignalTest");
+        // send each change as soon as it happens
+        properties.setProperty(CacheInvalidator.MAX_BATCH_SIZE, "1");
+
+        CacheInvalidator node = new CacheInvalidator(cacheManager,
+                properties);
+        node.init();
+        return node;
+    }
+
+    private static Runnable counter(final AtomicInteger count) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        cacheManager1 = createCacheManager();
+        cacheManager2 = createCacheManager();
+        signal1 = new ChangeSignal(cacheManager1, SIGNAL, counter(received1));
+        signal2 = new ChangeSignal(cacheManager2, SIGNAL, counter(received2));
+        node1 = createNode(cacheManager1);
+        node2 = createNode(cacheManager2);
+    }
+
+    @After
+    public void tearDown() {
+        node1.dispose();
+        node2.dispose();
+        cacheManager1.shutdown();
+        cacheManager2.shutdown();
+    }
+
+    @Test
+    public void send() {
+        signal1.send();
+        assertEquals(0, received1.get());
+        assertEquals(1, received2.get());
+
+        signal2.send();
+        signal2.send();
+        assertEquals(2, received1.get());
+        assertEquals(1, received2.get());
+    }
+
+    @Test
+    public void existingCache() {
+        AtomicInteger received = new AtomicInteger();
+        new ChangeSignal(cacheManager2, SIGNAL, counter(received));
+
+        signal1.send();
+        assertEquals(1, received.get());
+        assertEquals(1, received2.get());
+    }
+
+    @Test
+    public void lostSignal() {
+        Map<String, Long> versions = new HashMap<String, Long>();
+        versions.put(SIGNAL, 1L);
+        InvalidationBatch first =
+                new InvalidationBatch("node3", 0, versions);
+        node2.receive(first);
+        assertEquals(0, received2.get());
+
+        // batch 1, carrying the signal, never arrives
+        Map<String, Long> lost = new HashMap<String, Long>();
+        lost.put(SIGNAL, 2L);
+        InvalidationBatch heartbeat =
+                new InvalidationBatch("node3", 2, lost);
+        heartbeat.setVersions(lost);
+        node2.receive(heartbeat);
+        assertEquals(1, received2.get());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import static org.junit.Assert.*;
+
+import javax.persistence.EntityManager;
+import net.sf.ehcache.CacheManager;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.syncope.core.persistence.AbstractTest;
+import org.syncope.core.persistence.beans.SyncopeConf;
+import org.syncope.core.persistence.dao.impl.ConfDAOImpl;
+
+@Transactional
+public class ConfTest extends AbstractTest {
+
+    @Autowired
+    private ConfDAO confDAO;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Test
+    public final void getSnapshot()
+            throws MissingConfKeyException {
+
+        ConfSnapshot snapshot = confDAO.getSnapshot();
+        assertEquals(256, snapshot.getInt("token.length"));
+        assertEquals(confDAO.find("token.encryption.key").getConfValue(),
+                snapshot.getString("token.encryption.key"));
+        assertSame(snapshot, confDAO.getSnapshot());
+
+        try {
+            snapshot.getString("missing");
+            fail("missing key found");
+        } catch (MissingConfKeyException e) {
+            assertEquals("missing", e.getConfKey());
+        }
+        assertEquals("default", snapshot.getString("missing", "default"));
+    }
+
+    @Test
+    public final void changesNotShared() {
+        ConfSnapshot snapshot = confDAO.getSnapshot();
+
+        SyncopeConf conf = new SyncopeConf();
+        conf.setConfKey("test.key");
+        conf.setConfValue("value");
+        confDAO.save(conf);
+        confDAO.delete("token.length");
+
+        // visible to this transaction only, until commit
+        assertTrue(confDAO.getSnapshot().contains("test.key"));
+        assertFalse(confDAO.getSnapshot().contains("token.length"));
+        assertFalse(snapshot.contains("test.key"));
+        assertTrue(snapshot.contains("token.length"));
+
+        ConfSnapshot changed = snapshot.with("test.key", "value").
+                with("token.length", null);
+        assertEquals(changed.asMap(), confDAO.getSnapshot().asMap());
+    }
+
+    @Test
+    public final void changedByOtherNode()
+            throws MissingConfKeyException {
+
+        assertEquals(256, confDAO.getSnapshot().getInt("token.length"));
+
+        // as made by another node, not through this DAO
+        entityManager.createQuery("UPDATE SyncopeConf e "
+                + "SET e.confValue = '128' "
+                + "WHERE e.confKey = 'token.length'").executeUpdate();
+        assertEquals(256, confDAO.getSnapshot().getInt("token.length"));
+
+        // as received from that node
+        cacheManager.getEhcache(ConfDAOImpl.class.getName()).removeAll();
+        try {
+            assertEquals(128, confDAO.getSnapshot().getInt("token.length"));
+        } finally {
+            // do not share the snapshot loaded by this transaction
+            cacheManager.getEhcache(ConfDAOImpl.class.getName()).removeAll();
+        }
+    }
+}
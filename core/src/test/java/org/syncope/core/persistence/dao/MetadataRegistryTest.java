@@ -0,0 +1,138 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.dao;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import net.sf.ehcache.CacheManager;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.syncope.core.persistence.AbstractTest;
+import org.syncope.core.persistence.Metadata;
+import org.syncope.core.persistence.Metadata.MappingInfo;
+import org.syncope.core.persistence.Metadata.SchemaInfo;
+import org.syncope.core.persistence.MetadataRegistry;
+import org.syncope.core.persistence.beans.role.RSchema;
+import org.syncope.core.persistence.beans.user.UDerSchema;
+import org.syncope.core.persistence.beans.user.USchema;
+import org.syncope.core.util.AttributableUtil;
+import org.syncope.types.SchemaType;
+import org.syncope.types.SourceMappingType;
+
+@Transactional
+public class MetadataRegistryTest extends AbstractTest {
+
+    @Autowired
+    private MetadataRegistry metadataRegistry;
+
+    @Autowired
+    private SchemaDAO schemaDAO;
+
+    @Autowired
+    private DerSchemaDAO derivedSchemaDAO;
+
+    @Autowired
+    private ResourceDAO resourceDAO;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Set<String> getMappedResourceNames(final Metadata metadata,
+            final String sourceAttrName) {
+
+        Set<String> resourceNames = new HashSet<String>();
+        for (MappingInfo mapping : metadata.getMappings(
+                SourceMappingType.UserSchema, sourceAttrName)) {
+
+            resourceNames.add(mapping.getResourceName());
+        }
+        return resourceNames;
+    }
+
+    @Test
+    public final void getMetadata() {
+        Metadata metadata = metadataRegistry.getMetadata();
+        assertSame(metadata, metadataRegistry.getMetadata());
+
+        assertEquals(10, metadata.getSchemas(USchema.class).size());
+        assertEquals(2, metadata.getSchemas(RSchema.class).size());
+
+        SchemaInfo username = metadata.getSchema(USchema.class, "username");
+        assertNotNull(username);
+        assertEquals(SchemaType.String, username.getType());
+        assertFalse(username.isReadonly());
+        assertTrue(metadata.getSchema(USchema.class, "uselessReadonly").
+                isReadonly());
+        assertNull(metadata.getSchema(RSchema.class, "username"));
+
+        assertTrue(metadata.containsDerivedSchema(UDerSchema.class, "cn"));
+        assertFalse(metadata.containsDerivedSchema(UDerSchema.class, "none"));
+
+        Set<String> resourceNames = getMappedResourceNames(metadata, "email");
+        assertEquals(3, resourceNames.size());
+        assertTrue(resourceNames.contains("ws-target-resource-1"));
+        assertTrue(metadata.getMappings(
+                SourceMappingType.RoleSchema, "email").isEmpty());
+    }
+
+    @Test
+    public final void changedThroughDAOs() {
+        Metadata metadata = metadataRegistry.getMetadata();
+
+        USchema schema = new USchema();
+        schema.setName("secondaryEmail");
+        schema.setType(SchemaType.String);
+        schema.setMandatoryCondition("false");
+        schemaDAO.save(schema);
+        assertNotNull(metadataRegistry.getMetadata().getSchema(
+                USchema.class, "secondaryEmail"));
+
+        derivedSchemaDAO.delete("cn", UDerSchema.class);
+        assertFalse(metadataRegistry.getMetadata().containsDerivedSchema(
+                UDerSchema.class, "cn"));
+
+        resourceDAO.delete("ws-target-resource-1");
+        assertFalse(getMappedResourceNames(metadataRegistry.getMetadata(),
+                "email").contains("ws-target-resource-1"));
+
+        schemaDAO.delete("email", AttributableUtil.USER);
+        assertNull(metadataRegistry.getMetadata().getSchema(
+                USchema.class, "email"));
+        assertTrue(getMappedResourceNames(metadataRegistry.getMetadata(),
+                "email").isEmpty());
+
+        // the metadata in use before the changes is left untouched
+        assertNull(metadata.getSchema(USchema.class, "secondaryEmail"));
+        assertTrue(metadata.containsDerivedSchema(UDerSchema.class, "cn"));
+        assertEquals(3, getMappedResourceNames(metadata, "email").size());
+    }
+
+    @Test
+    public final void changedByOtherNode() {
+        Metadata metadata = metadataRegistry.getMetadata();
+        assertSame(metadata, metadataRegistry.getMetadata());
+
+        // as received from another node, after a change made there
+        cacheManager.getEhcache(MetadataRegistry.class.getName()).removeAll();
+
+        Metadata reloaded = metadataRegistry.getMetadata();
+        assertNotSame(metadata, reloaded);
+        assertEquals(metadata.getSchemas(USchema.class).size(),
+                reloaded.getSchemas(USchema.class).size());
+    }
+}
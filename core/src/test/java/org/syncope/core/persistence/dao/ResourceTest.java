@@ -14,18 +14,28 @@
  */
 package org.syncope.core.persistence.dao;
 
+import java.beans.PropertyDescriptor;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import static org.junit.Assert.*;
 
+import javax.persistence.EntityManager;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.junit.Test;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.syncope.core.persistence.beans.ConnectorInstance;
 import org.syncope.core.persistence.beans.TargetResource;
 import org.syncope.core.persistence.beans.SchemaMapping;
 import org.syncope.core.persistence.AbstractTest;
+import org.syncope.core.persistence.propagation.ResourceOperations;
 import org.syncope.identityconnectors.bundles.staticwebservice.WebServiceConnector;
+import org.syncope.types.ResourceOperationType;
 import org.syncope.types.SourceMappingType;
 
 @Transactional
@@ -34,6 +44,9 @@ public class ResourceTest extends AbstractTest {
     @Autowired
     private ResourceDAO resourceDAO;
 
+    @Autowired
+    private EntityManager entityManager;
+
     @Test
     public final void findById() {
         TargetResource resource =
@@ -98,6 +111,122 @@ public class ResourceTest extends AbstractTest {
         assertNotNull(actual);
     }
 
+    @Test
+    public final void identity() {
+        TargetResource resource = new TargetResource();
+        resource.setName("ws-target-resource-1");
+
+        assertEquals(resourceDAO.find("ws-target-resource-1"), resource);
+        assertEquals(resourceDAO.find("ws-target-resource-1").hashCode(),
+                resource.hashCode());
+
+        SchemaMapping mapping = new SchemaMapping();
+        int hashCode = mapping.hashCode();
+        assertFalse(mapping.equals(new SchemaMapping()));
+
+        mapping.setResource(resource);
+        mapping.setSourceAttrName("username");
+        assertEquals(hashCode, mapping.hashCode());
+    }
+
+    @Test
+    public final void resourceOperations() {
+        List<TargetResource> resources = resourceDAO.findAll();
+        assertTrue(resources.size() > 1);
+
+        ResourceOperations resourceOperations = new ResourceOperations();
+        for (TargetResource resource : resources) {
+            resourceOperations.add(ResourceOperationType.CREATE, resource);
+        }
+
+        // same resources, from a different persistence context
+        entityManager.clear();
+        for (TargetResource resource : resourceDAO.findAll()) {
+            assertFalse(resourceOperations.add(
+                    ResourceOperationType.CREATE, resource));
+            resourceOperations.add(ResourceOperationType.UPDATE, resource);
+        }
+
+        TargetResource deleted = new TargetResource();
+        deleted.setName(resources.get(0).getName());
+        resourceOperations.add(ResourceOperationType.DELETE, deleted);
+
+        resourceOperations.purge();
+
+        assertTrue(resourceOperations.get(
+                ResourceOperationType.CREATE).isEmpty());
+        assertEquals(resources.size() - 1, resourceOperations.get(
+                ResourceOperationType.UPDATE).size());
+        assertFalse(resourceOperations.get(
+                ResourceOperationType.UPDATE).contains(resources.get(0)));
+    }
+
+    /**
+     * Cost of preparing propagation on all resources, compared with the
+     * same operations on resources hashed as before by reflection over every
+     * non-collection field (a lower bound, since referenced beans were also
+     * hashed by reflection).
+     */
+    @Test
+    public final void resourceOperationsBenchmark() {
+        final int iterations = 10000;
+
+        List<TargetResource> resources = resourceDAO.findAll();
+        assertFalse(resources.isEmpty());
+
+        ResourceOperations resourceOperations = null;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            resourceOperations = new ResourceOperations();
+            for (TargetResource resource : resources) {
+                resourceOperations.add(ResourceOperationType.CREATE,
+                        resource);
+                resourceOperations.add(ResourceOperationType.UPDATE,
+                        resource);
+            }
+            resourceOperations.add(ResourceOperationType.DELETE,
+                    resources.get(0));
+            resourceOperations.purge();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        Set<ReflectionKey> toBeCreated = null;
+        Set<ReflectionKey> toBeUpdated = null;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            toBeCreated = new HashSet<ReflectionKey>();
+            toBeUpdated = new HashSet<ReflectionKey>();
+            for (TargetResource resource : resources) {
+                toBeCreated.add(new ReflectionKey(resource));
+                toBeUpdated.add(new ReflectionKey(resource));
+            }
+            Set<ReflectionKey> toBeDeleted = Collections.singleton(
+                    new ReflectionKey(resources.get(0)));
+            for (ReflectionKey key : toBeDeleted) {
+                toBeCreated.remove(key);
+                toBeUpdated.remove(key);
+            }
+            for (ReflectionKey key : toBeUpdated) {
+                toBeCreated.remove(key);
+            }
+        }
+        long reflectionElapsed = System.currentTimeMillis() - start;
+
+        LOG.info("Prepared propagation on {} resources: {} ms per 1000 "
+                + "iterations, {} ms when hashing by reflection",
+                new Object[]{resources.size(),
+                    (double) elapsed * 1000 / iterations,
+                    (double) reflectionElapsed * 1000 / iterations});
+
+        assertTrue(resourceOperations.get(
+                ResourceOperationType.CREATE).isEmpty());
+        assertEquals(resources.size() - 1, resourceOperations.get(
+                ResourceOperationType.UPDATE).size());
+        assertTrue(toBeCreated.isEmpty());
+        assertEquals(resources.size() - 1, toBeUpdated.size());
+        assertTrue(elapsed <= reflectionElapsed);
+    }
+
     @Test
     public final void delete() {
         TargetResource resource = resourceDAO.find("ws-target-resource-2");
@@ -108,4 +237,48 @@ public class ResourceTest extends AbstractTest {
         TargetResource actual = resourceDAO.find("ws-target-resource-2");
         assertNull(actual);
     }
+
+    /**
+     * Resource with equals() and hashCode() as formerly implemented by
+     * AbstractBaseBean.
+     */
+    private static class ReflectionKey {
+
+        private final TargetResource resource;
+
+        public ReflectionKey(final TargetResource resource) {
+            this.resource = resource;
+        }
+
+        private String[] getExcludeFields() {
+            Set<String> excludeFields = new HashSet<String>();
+
+            for (PropertyDescriptor propertyDescriptor :
+                    BeanUtils.getPropertyDescriptors(resource.getClass())) {
+
+                if (propertyDescriptor.getPropertyType().isInstance(
+                        Collections.EMPTY_SET)
+                        || propertyDescriptor.getPropertyType().isInstance(
+                        Collections.EMPTY_LIST)) {
+
+                    excludeFields.add(propertyDescriptor.getName());
+                }
+            }
+
+            return excludeFields.toArray(new String[]{});
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof ReflectionKey
+                    && EqualsBuilder.reflectionEquals(resource,
+                    ((ReflectionKey) obj).resource, getExcludeFields());
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(resource,
+                    getExcludeFields());
+        }
+    }
 }
@@ -16,7 +16,10 @@ package org.syncope.core.persistence.dao;
 
 import static org.junit.Assert.*;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
@@ -40,6 +43,29 @@ public class RoleTest extends AbstractTest {
         assertEquals(2, syncopeRoleDAO.findChildren(4L).size());
     }
 
+    @Test
+    public final void findByResource() {
+        Set<Long> allRoleIds = new HashSet<Long>();
+        for (SyncopeRole role : syncopeRoleDAO.findAll()) {
+            allRoleIds.add(role.getId());
+        }
+
+        List<SyncopeRole> list = syncopeRoleDAO.findByResource(allRoleIds,
+                "ws-target-resource-2", 1, 10);
+        assertEquals(1, list.size());
+        assertEquals(Long.valueOf(8L), list.get(0).getId());
+
+        assertEquals(Integer.valueOf(1), syncopeRoleDAO.countByResource(
+                Collections.singleton(3L),
+                "ws-target-resource-list-mappings-1"));
+        assertEquals(Integer.valueOf(0), syncopeRoleDAO.countByResource(
+                Collections.singleton(8L),
+                "ws-target-resource-list-mappings-1"));
+        assertTrue(syncopeRoleDAO.findByResource(
+                Collections.<Long>emptySet(), "ws-target-resource-2",
+                1, 10).isEmpty());
+    }
+
     @Test
     public final void find() {
         SyncopeRole role = syncopeRoleDAO.find("root", null);
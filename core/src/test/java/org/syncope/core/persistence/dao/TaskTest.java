@@ -14,11 +14,13 @@
  */
 package org.syncope.core.persistence.dao;
 
+import java.util.Collections;
 import java.util.HashSet;
 import static org.junit.Assert.*;
 
 import java.util.List;
 import java.util.Set;
+import javax.persistence.EntityManager;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.junit.Test;
@@ -37,6 +39,8 @@ public class TaskTest extends AbstractTest {
     private TaskDAO taskDAO;
     @Autowired
     private ResourceDAO resourceDAO;
+    @Autowired
+    private EntityManager entityManager;
 
     @Test
     public final void findAll() {
@@ -72,6 +76,36 @@ public class TaskTest extends AbstractTest {
         assertTrue(resource.getTasks().contains(task));
     }
 
+    @Test
+    public final void equalsAndHashCode() {
+        Task unsaved = new Task();
+        Set<Task> tasks = new HashSet<Task>();
+        tasks.add(unsaved);
+
+        TargetResource resource = resourceDAO.find("ws-target-resource-1");
+        unsaved.setResource(resource);
+        unsaved.setPropagationMode(PropagationMode.ASYNC);
+        unsaved.setResourceOperationType(ResourceOperationType.CREATE);
+        unsaved.setAccountId("one@two.com");
+        Task saved = taskDAO.save(unsaved);
+
+        assertTrue(tasks.contains(unsaved));
+        assertFalse(tasks.contains(saved));
+        assertFalse(unsaved.equals(saved));
+
+        // loaded instance and proxy of the same task
+        entityManager.clear();
+        Task loaded = taskDAO.find(1L);
+        entityManager.clear();
+        Task proxy = entityManager.getReference(Task.class, 1L);
+        assertNotSame(proxy.getClass(), loaded.getClass());
+
+        assertEquals(proxy, loaded);
+        assertEquals(loaded, proxy);
+        assertEquals(loaded.hashCode(), proxy.hashCode());
+        assertTrue(Collections.singleton(loaded).contains(proxy));
+    }
+
     @Test
     public final void delete() {
         Task task = taskDAO.find(1L);
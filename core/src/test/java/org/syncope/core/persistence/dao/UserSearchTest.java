@@ -21,10 +21,15 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import net.sf.ehcache.CacheManager;
 import org.dbunit.database.DatabaseConfig;
 import org.dbunit.database.DatabaseConnection;
 import org.dbunit.database.IDatabaseConnection;
@@ -38,6 +43,11 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -45,7 +55,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.syncope.client.search.AttributeCond;
 import org.syncope.client.search.MembershipCond;
 import org.syncope.client.search.NodeCond;
+import org.syncope.client.search.OrderByClause;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
+import org.syncope.core.persistence.beans.user.USearchAttrValue;
+import org.syncope.core.persistence.dao.impl.MemoryUserSearchDAOImpl;
+import org.syncope.core.persistence.dao.impl.UserSearchPlanner;
+import org.syncope.core.persistence.search.RoleMembershipIndex;
+import org.syncope.core.persistence.search.UserSearchGovernor;
 import org.syncope.core.util.EntitlementUtil;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -69,6 +85,39 @@ public class UserSearchTest {
     @Autowired
     private EntitlementDAO entitlementDAO;
 
+    @Autowired
+    private UserSearchIndexDAO searchIndexDAO;
+
+    @Autowired
+    private UserDAO userDAO;
+
+    @Autowired
+    private MembershipDAO membershipDAO;
+
+    @Autowired
+    private RoleDAO roleDAO;
+
+    @Autowired
+    private RoleMembershipIndex roleMembershipIndex;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private UserSearchPlanner planner;
+
+    @Autowired
+    private UserSearchGovernor governor;
+
     @Autowired
     private DataSource dataSource;
 
@@ -86,7 +135,6 @@ public class UserSearchTest {
             conn = dataSource.getConnection();
 
             Statement statement = conn.createStatement();
-            statement.executeUpdate("DROP VIEW user_search_attr");
             statement.executeUpdate("DROP VIEW user_search_membership");
             statement.close();
         } catch (SQLException e) {
@@ -130,6 +178,8 @@ public class UserSearchTest {
         }
 
         DataSourceUtils.releaseConnection(conn, dataSource);
+
+        searchIndexDAO.rebuild();
     }
 
     @Test
@@ -163,6 +213,44 @@ public class UserSearchTest {
         assertEquals(1, users.size());
     }
 
+    @Test
+    public final void searchWithLikeTrigrams() {
+        AttributeCond usernameLeafCond =
+                new AttributeCond(AttributeCond.Type.LIKE);
+        usernameLeafCond.setSchema("username");
+        usernameLeafCond.setExpression("%fabi%");
+
+        NodeCond cond = NodeCond.getLeafCond(usernameLeafCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(2L), users.get(0).getId());
+
+        long hits = searchDAO.getPlanCacheHits();
+
+        // same number of trigrams: same plan, different parameters
+        usernameLeafCond.setExpression("%john%");
+        users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(4L), users.get(0).getId());
+        assertEquals(hits + 1, searchDAO.getPlanCacheHits());
+
+        // trigrams spanning a wildcard must not be required
+        usernameLeafCond.setExpression("%o_d%");
+        users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(4L), users.get(0).getId());
+
+        usernameLeafCond.setExpression("%fabi%");
+        users = searchDAO.search(adminRoles,
+                NodeCond.getNotLeafCond(usernameLeafCond));
+        assertEquals(2, users.size());
+    }
+
     @Test
     public final void searchWithNotCondition() {
         final AttributeCond usernameLeafCond =
@@ -241,6 +329,83 @@ public class UserSearchTest {
         assertTrue(users.isEmpty());
     }
 
+    @Test
+    public final void searchAfter() {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(5L);
+
+        NodeCond cond = NodeCond.getNotLeafCond(membershipCond);
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users =
+                searchDAO.searchAfter(adminRoles, cond, null, 2);
+        assertNotNull(users);
+        assertEquals(2, users.size());
+        assertTrue(users.get(0).getId() < users.get(1).getId());
+
+        users = searchDAO.searchAfter(adminRoles, cond,
+                users.get(1).getId(), 2);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+
+        users = searchDAO.searchAfter(adminRoles, cond,
+                users.get(0).getId(), 2);
+        assertNotNull(users);
+        assertTrue(users.isEmpty());
+    }
+
+    @Test
+    public final void searchWithOrderBy() {
+        AttributeCond usernameLeafCond =
+                new AttributeCond(AttributeCond.Type.LIKE);
+        usernameLeafCond.setSchema("username");
+        usernameLeafCond.setExpression("%o%");
+
+        NodeCond cond = NodeCond.getLeafCond(usernameLeafCond);
+        cond.addOrderBy(
+                new OrderByClause("username", OrderByClause.Direction.DESC));
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertNotNull(users);
+        assertEquals(3, users.size());
+        assertEquals(Long.valueOf(4L), users.get(0).getId());
+        assertEquals(Long.valueOf(2L), users.get(1).getId());
+        assertEquals(Long.valueOf(1L), users.get(2).getId());
+
+        users = searchDAO.search(adminRoles, cond, 2, 2);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(1L), users.get(0).getId());
+    }
+
+    @Test
+    public final void searchWithCount() {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(5L);
+
+        NodeCond cond = NodeCond.getNotLeafCond(membershipCond);
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        UserSearchResult result =
+                searchDAO.searchWithCount(adminRoles, cond, 1, 2);
+        assertEquals(2, result.getUsers().size());
+        assertEquals(3, result.getTotalCount());
+
+        result = searchDAO.searchWithCount(adminRoles, cond, 2, 2);
+        assertEquals(1, result.getUsers().size());
+        assertEquals(3, result.getTotalCount());
+
+        result = searchDAO.searchWithCount(adminRoles, cond, 3, 2);
+        assertTrue(result.getUsers().isEmpty());
+        assertEquals(3, result.getTotalCount());
+    }
+
     @Test
     public final void searchByMembership() {
         MembershipCond membershipCond = new MembershipCond();
@@ -263,6 +428,97 @@ public class UserSearchTest {
         assertEquals(3, users.size());
     }
 
+    @Test
+    public final void searchByMembershipWithinAdminRoles() {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(1L);
+
+        NodeCond cond = NodeCond.getLeafCond(membershipCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+        assertEquals(Integer.valueOf(2), searchDAO.count(adminRoles, cond));
+
+        // user 1 is also member of role 8
+        Set<Long> restrictedAdminRoles = new HashSet<Long>(adminRoles);
+        restrictedAdminRoles.remove(8L);
+
+        List<SyncopeUser> users = searchDAO.search(restrictedAdminRoles, cond);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(2L), users.get(0).getId());
+        assertEquals(Integer.valueOf(1),
+                searchDAO.count(restrictedAdminRoles, cond));
+
+        // changes not yet committed are visible within the same transaction
+        membershipDAO.delete(2L);
+        membershipDAO.flush();
+
+        users = searchDAO.search(adminRoles, cond);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(1L), users.get(0).getId());
+    }
+
+    @Test
+    public final void searchByMembershipAfterChangeOnOtherNode() {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(1L);
+
+        NodeCond cond = NodeCond.getLeafCond(membershipCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> restrictedAdminRoles = new HashSet<Long>(
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll()));
+        restrictedAdminRoles.remove(8L);
+
+        // as made by another node: the local role membership index is not
+        // told about it
+        entityManager.createNativeQuery("INSERT INTO Membership "
+                + "(id, syncopeUser_id, syncopeRole_id) VALUES (100, 2, 8)").
+                executeUpdate();
+
+        assertTrue(searchDAO.search(restrictedAdminRoles, cond).isEmpty());
+        assertEquals(Integer.valueOf(0),
+                searchDAO.count(restrictedAdminRoles, cond));
+
+        // as told by that node: the index is dropped and read again
+        String signal = RoleMembershipIndex.class.getName();
+        cacheManager.getEhcache(signal).removeAll();
+        try {
+            assertTrue(roleMembershipIndex.getMembers(
+                    Collections.singleton(8L)).get(2));
+        } finally {
+            // do not share the index loaded by this transaction
+            cacheManager.getEhcache(signal).removeAll();
+        }
+    }
+
+    @Test
+    public final void searchByMembershipAfterRoleDelete() {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(2L);
+
+        NodeCond cond = NodeCond.getLeafCond(membershipCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+        assertEquals(1, searchDAO.search(adminRoles, cond).size());
+        assertTrue(roleMembershipIndex.isUsable());
+
+        // memberships are removed along with the role
+        roleDAO.delete(2L);
+        roleDAO.flush();
+
+        assertTrue(searchDAO.search(adminRoles, cond).isEmpty());
+        assertEquals(Integer.valueOf(0), searchDAO.count(adminRoles, cond));
+
+        // the index was told, and is not used until commit
+        assertFalse(roleMembershipIndex.isUsable());
+    }
+
     @Test
     public void searchByIsNull() {
         AttributeCond coolLeafCond =
@@ -287,4 +543,352 @@ public class UserSearchTest {
         assertNotNull(users);
         assertEquals(1, users.size());
     }
+
+    @Test
+    public final void searchPlanCache() {
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        NodeCond cond = NodeCond.getLeafCond(firstnameLeafCond);
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+
+        long hits = searchDAO.getPlanCacheHits();
+        long misses = searchDAO.getPlanCacheMisses();
+
+        // same shape, different value: the cached plan is reused
+        firstnameLeafCond.setExpression("Jane");
+        users = searchDAO.search(adminRoles, cond);
+        assertTrue(users.isEmpty());
+
+        assertEquals(hits + 1, searchDAO.getPlanCacheHits());
+        assertEquals(misses, searchDAO.getPlanCacheMisses());
+    }
+
+    @Test
+    public final void searchWithSelectivityOrder() {
+        AttributeCond loginDateLeafCond =
+                new AttributeCond(AttributeCond.Type.ISNOTNULL);
+        loginDateLeafCond.setSchema("loginDate");
+
+        AttributeCond usernameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        usernameLeafCond.setSchema("username");
+        usernameLeafCond.setExpression("john.doe");
+
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(5L);
+
+        NodeCond cond = NodeCond.getAndCond(
+                NodeCond.getAndCond(
+                NodeCond.getLeafCond(loginDateLeafCond),
+                NodeCond.getNotLeafCond(membershipCond)),
+                NodeCond.getLeafCond(usernameLeafCond));
+        assertTrue(cond.checkValidity());
+
+        // the most selective operand comes first
+        NodeCond optimized = planner.optimize(cond);
+        assertEquals(NodeCond.Type.AND, optimized.getType());
+        assertEquals(NodeCond.Type.AND,
+                optimized.getLeftNodeCond().getType());
+        assertEquals("username", optimized.getLeftNodeCond().
+                getLeftNodeCond().getAttributeCond().getSchema());
+        assertTrue(planner.estimate(optimized.getLeftNodeCond().
+                getLeftNodeCond()) <= planner.estimate(
+                optimized.getLeftNodeCond().getRightNodeCond()));
+        assertTrue(planner.estimate(optimized.getLeftNodeCond().
+                getRightNodeCond()) <= planner.estimate(
+                optimized.getRightNodeCond()));
+
+        List<SyncopeUser> users = searchDAO.search(
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll()), cond);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(4L), users.get(0).getId());
+    }
+
+    @Test
+    public final void approximateCount() {
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(1L);
+
+        NodeCond cond = NodeCond.getOrCond(
+                NodeCond.getLeafCond(firstnameLeafCond),
+                NodeCond.getLeafCond(membershipCond));
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+        Integer count = searchDAO.count(adminRoles, cond);
+        assertEquals(Integer.valueOf(3), count);
+        assertTrue(planner.getUpperBound(cond) >= count);
+
+        // few users: counted exactly
+        UserCountEstimate estimate =
+                searchDAO.approximateCount(adminRoles, cond);
+        assertTrue(estimate.isExact());
+        assertEquals(count.intValue(), estimate.getCount());
+        assertEquals(count, estimate.getUpperBound());
+    }
+
+    @Test
+    public final void searchLimits() {
+        checkSearchLimits(searchDAO);
+    }
+
+    @Test
+    public final void searchLimitsInMemory() {
+        checkSearchLimits((UserSearchDAO) beanFactory.createBean(
+                MemoryUserSearchDAOImpl.class));
+    }
+
+    private void checkSearchLimits(final UserSearchDAO dao) {
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(1L);
+
+        AttributeCond loginDateLeafCond =
+                new AttributeCond(AttributeCond.Type.ISNOTNULL);
+        loginDateLeafCond.setSchema("loginDate");
+
+        NodeCond cond = NodeCond.getOrCond(
+                NodeCond.getLeafCond(membershipCond),
+                NodeCond.getLeafCond(loginDateLeafCond));
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+        int matching = dao.count(adminRoles, cond);
+        assertTrue(matching > 1);
+
+        int maxLeaves = governor.getMaxLeaves();
+        int maxResults = governor.getMaxResults();
+        try {
+            // too many leaves
+            governor.setMaxLeaves(1);
+            long exceeded = dao.getLimitExceededCount(
+                    SearchLimitExceededException.Limit.MAX_LEAVES);
+            try {
+                dao.search(adminRoles, cond);
+                fail();
+            } catch (SearchLimitExceededException e) {
+                assertEquals(SearchLimitExceededException.Limit.MAX_LEAVES,
+                        e.getLimit());
+            }
+            assertEquals(exceeded + 1, dao.getLimitExceededCount(
+                    SearchLimitExceededException.Limit.MAX_LEAVES));
+            governor.setMaxLeaves(maxLeaves);
+
+            // too many results, only for unpaged searches
+            governor.setMaxResults(matching - 1);
+            try {
+                dao.search(adminRoles, cond);
+                fail();
+            } catch (SearchLimitExceededException e) {
+                assertEquals(SearchLimitExceededException.Limit.MAX_RESULTS,
+                        e.getLimit());
+            }
+            assertEquals(1, dao.search(adminRoles, cond, 1, 1).size());
+
+            governor.setMaxResults(matching);
+            assertEquals(matching, dao.search(adminRoles, cond).size());
+        } finally {
+            governor.setMaxLeaves(maxLeaves);
+            governor.setMaxResults(maxResults);
+        }
+    }
+
+    @Test
+    public final void searchResultCache() {
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        NodeCond cond = NodeCond.getLeafCond(firstnameLeafCond);
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Integer.valueOf(1), searchDAO.count(adminRoles, cond));
+
+        long hits = searchDAO.getResultCacheHits();
+
+        // same condition, same admin roles: served from cache
+        users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(3L), users.get(0).getId());
+        assertEquals(Integer.valueOf(1), searchDAO.count(adminRoles, cond));
+        assertEquals(hits + 2, searchDAO.getResultCacheHits());
+
+        // own changes are visible, bypassing the cache
+        userDAO.delete(users.get(0));
+        userDAO.flush();
+
+        assertTrue(searchDAO.search(adminRoles, cond).isEmpty());
+        assertEquals(Integer.valueOf(0), searchDAO.count(adminRoles, cond));
+        assertEquals(hits + 2, searchDAO.getResultCacheHits());
+    }
+
+    @Test
+    public final void searchAfterUserDelete() {
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        NodeCond cond = NodeCond.getLeafCond(firstnameLeafCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertNotNull(users);
+        assertEquals(1, users.size());
+
+        userDAO.delete(users.get(0));
+        userDAO.flush();
+
+        users = searchDAO.search(adminRoles, cond);
+        assertNotNull(users);
+        assertTrue(users.isEmpty());
+    }
+
+    @Test
+    public final void searchAfterValueChange() {
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        NodeCond cond = NodeCond.getLeafCond(firstnameLeafCond);
+        assertTrue(cond.checkValidity());
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        assertEquals(1, searchDAO.search(adminRoles, cond).size());
+
+        // same value id, different content: the index entry must be updated
+        SyncopeUser user = userDAO.find(3L);
+        user.getAttribute("firstname").getValues().get(0).
+                setStringValue("Jim");
+        userDAO.save(user);
+        userDAO.flush();
+
+        assertTrue(searchDAO.search(adminRoles, cond).isEmpty());
+
+        firstnameLeafCond.setExpression("Jim");
+        List<SyncopeUser> users = searchDAO.search(adminRoles, cond);
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(3L), users.get(0).getId());
+    }
+
+    @Test
+    public final void indexDeferred() {
+        Query query = entityManager.createQuery("SELECT COUNT(e) FROM "
+                + USearchAttrValue.class.getSimpleName()
+                + " e WHERE e.stringValue = :value");
+        query.setParameter("value", "Jim");
+
+        SyncopeUser user = userDAO.find(3L);
+        user.getAttribute("firstname").getValues().get(0).
+                setStringValue("Jim");
+        userDAO.save(user);
+
+        // index entries are aligned before commit or upon search only
+        assertEquals(0L, ((Number) query.getSingleResult()).longValue());
+
+        searchIndexDAO.indexPending();
+        assertEquals(1L, ((Number) query.getSingleResult()).longValue());
+    }
+
+    @Test
+    public final void searchInMemory() {
+        UserSearchDAO memorySearchDAO = (UserSearchDAO) beanFactory.createBean(
+                MemoryUserSearchDAOImpl.class);
+        // built at startup
+        ((ApplicationListener<ApplicationEvent>) memorySearchDAO).
+                onApplicationEvent(new ContextRefreshedEvent(
+                applicationContext));
+
+        Set<Long> adminRoles =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+        // users 1, 2 and 4 have memberships in other roles
+        List<Set<Long>> scopes = Arrays.asList(
+                adminRoles, Collections.singleton(1L));
+
+        AttributeCond usernameLeafCond =
+                new AttributeCond(AttributeCond.Type.LIKE);
+        usernameLeafCond.setSchema("username");
+        usernameLeafCond.setExpression("%o%");
+
+        MembershipCond membershipCond = new MembershipCond();
+        membershipCond.setRoleId(5L);
+
+        AttributeCond coolLeafCond =
+                new AttributeCond(AttributeCond.Type.ISNULL);
+        coolLeafCond.setSchema("cool");
+
+        AttributeCond firstnameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        firstnameLeafCond.setSchema("firstname");
+        firstnameLeafCond.setExpression("John");
+
+        AttributeCond notUsernameLeafCond =
+                new AttributeCond(AttributeCond.Type.EQ);
+        notUsernameLeafCond.setSchema("username");
+        notUsernameLeafCond.setExpression("fabio.martelli");
+
+        NodeCond[] conds = new NodeCond[]{
+            NodeCond.getLeafCond(usernameLeafCond),
+            NodeCond.getNotLeafCond(membershipCond),
+            NodeCond.getLeafCond(coolLeafCond),
+            NodeCond.getNotLeafCond(coolLeafCond),
+            NodeCond.getLeafCond(firstnameLeafCond),
+            NodeCond.getNotLeafCond(notUsernameLeafCond),
+            NodeCond.getOrCond(NodeCond.getLeafCond(firstnameLeafCond),
+            NodeCond.getLeafCond(usernameLeafCond))};
+
+        // same results as the database
+        Set<Long> expected = new HashSet<Long>();
+        Set<Long> actual = new HashSet<Long>();
+        for (Set<Long> scope : scopes) {
+            for (NodeCond cond : conds) {
+                assertTrue(cond.checkValidity());
+
+                expected.clear();
+                for (SyncopeUser user : searchDAO.search(scope, cond)) {
+                    expected.add(user.getId());
+                }
+                actual.clear();
+                for (SyncopeUser user : memorySearchDAO.search(scope, cond)) {
+                    actual.add(user.getId());
+                }
+                assertEquals(expected, actual);
+                assertEquals(expected.size(),
+                        memorySearchDAO.count(scope, cond).intValue());
+            }
+        }
+
+        // as received from another node: dropped, then built again
+        cacheManager.getEhcache(
+                MemoryUserSearchDAOImpl.class.getName()).removeAll();
+
+        List<SyncopeUser> users = memorySearchDAO.search(adminRoles,
+                NodeCond.getLeafCond(firstnameLeafCond));
+        assertEquals(1, users.size());
+        assertEquals(Long.valueOf(3L), users.get(0).getId());
+    }
 }
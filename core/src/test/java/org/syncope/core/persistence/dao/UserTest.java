@@ -16,14 +16,29 @@ package org.syncope.core.persistence.dao;
 
 import static org.junit.Assert.*;
 
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.persistence.AbstractTest;
+import org.syncope.core.persistence.beans.membership.Membership;
+import org.syncope.core.persistence.beans.role.SyncopeRole;
+import org.syncope.core.persistence.beans.user.UAttr;
 import org.syncope.core.persistence.beans.user.UAttrValue;
+import org.syncope.core.persistence.beans.user.USchema;
+import org.syncope.core.persistence.dao.impl.UserSearchPlanner;
+import org.syncope.core.util.AttributableUtil;
 import org.syncope.core.util.EntitlementUtil;
 
 @Transactional
@@ -35,6 +50,18 @@ public class UserTest extends AbstractTest {
     @Autowired
     private EntitlementDAO entitlementDAO;
 
+    @Autowired
+    private SchemaDAO schemaDAO;
+
+    @Autowired
+    private RoleDAO roleDAO;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private UserSearchPlanner planner;
+
     @Test
     public final void findAll() {
         List<SyncopeUser> list = userDAO.findAll(
@@ -50,6 +77,47 @@ public class UserTest extends AbstractTest {
         assertEquals(4, count.intValue());
     }
 
+    @Test
+    public final void approximateCount() {
+        UserCountEstimate estimate = userDAO.approximateCount(
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll()));
+        assertTrue(estimate.isExact());
+        assertEquals(4, estimate.getCount());
+    }
+
+    @Test
+    public final void approximateCountAboveThreshold() {
+        int exactCountThreshold = planner.getExactCountThreshold();
+        planner.setExactCountThreshold(0);
+        try {
+            UserCountEstimate estimate = userDAO.approximateCount(
+                    EntitlementUtil.getRoleIds(entitlementDAO.findAll()));
+            assertFalse(estimate.isExact());
+            assertEquals(4, estimate.getCount());
+            assertNull(estimate.getUpperBound());
+        } finally {
+            planner.setExactCountThreshold(exactCountThreshold);
+        }
+    }
+
+    @Test
+    public final void findAllWithinAdminRoles() {
+        Set<Long> adminRoles = new HashSet<Long>();
+        adminRoles.add(1L);
+
+        List<SyncopeUser> list = userDAO.findAll(adminRoles);
+        assertEquals("did not get expected number of users ", 1, list.size());
+        assertEquals(Long.valueOf(3L), list.get(0).getId());
+
+        adminRoles.add(2L);
+        adminRoles.add(8L);
+        assertEquals(3, userDAO.findAll(adminRoles).size());
+        assertEquals(Integer.valueOf(3), userDAO.count(adminRoles));
+
+        assertEquals(Integer.valueOf(1),
+                userDAO.count(Collections.<Long>emptySet()));
+    }
+
     @Test
     public final void findAllByPageAndSize() {
         Set<Long> allRoleIds =
@@ -72,6 +140,46 @@ public class UserTest extends AbstractTest {
         assertEquals("did not get expected number of users ", 0, list.size());
     }
 
+    @Test
+    public final void findByResource() {
+        Set<Long> allRoleIds =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> list = userDAO.findByResource(allRoleIds,
+                "ws-target-resource-2", 1, 10, UserProjection.ALL);
+        assertEquals(1, list.size());
+        assertEquals(Long.valueOf(3L), list.get(0).getId());
+        assertEquals(Integer.valueOf(1),
+                userDAO.countByResource(allRoleIds, "ws-target-resource-2"));
+
+        list = userDAO.findByResource(allRoleIds,
+                "ws-target-resource-2", 2, 10, UserProjection.ALL);
+        assertTrue(list.isEmpty());
+
+        assertTrue(userDAO.findByResource(allRoleIds,
+                "ws-target-resource-1", 1, 10, UserProjection.ALL).isEmpty());
+        assertEquals(Integer.valueOf(0),
+                userDAO.countByResource(allRoleIds, "ws-target-resource-1"));
+    }
+
+    @Test
+    public final void findAllAfter() {
+        Set<Long> allRoleIds =
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll());
+
+        List<SyncopeUser> list = userDAO.findAllAfter(allRoleIds, null, 3);
+        assertEquals("did not get expected number of users ", 3, list.size());
+        assertEquals(Long.valueOf(1L), list.get(0).getId());
+        assertEquals(Long.valueOf(3L), list.get(2).getId());
+
+        list = userDAO.findAllAfter(allRoleIds, list.get(2).getId(), 3);
+        assertEquals("did not get expected number of users ", 1, list.size());
+        assertEquals(Long.valueOf(4L), list.get(0).getId());
+
+        list = userDAO.findAllAfter(allRoleIds, 4L, 3);
+        assertTrue(list.isEmpty());
+    }
+
     @Test
     public final void findByAttributeValue() {
         final UAttrValue usernameValue = new UAttrValue();
@@ -102,6 +210,42 @@ public class UserTest extends AbstractTest {
         assertNull("found user but did not expect it", user);
     }
 
+    @Test
+    public final void findByIds() {
+        List<SyncopeUser> list =
+                userDAO.findByIds(Arrays.asList(4L, 1L, 100L, 3L));
+        assertEquals("did not get expected number of users ", 3, list.size());
+
+        assertEquals(Long.valueOf(4L), list.get(0).getId());
+        assertEquals(Long.valueOf(1L), list.get(1).getId());
+        assertEquals(Long.valueOf(3L), list.get(2).getId());
+
+        assertFalse(list.get(1).getAttributes().isEmpty());
+        assertFalse(list.get(1).getMemberships().isEmpty());
+    }
+
+    @Test
+    public final void findByIdsWithProjection() {
+        UserProjection projection = new UserProjection(
+                Collections.singleton("firstname"), false, false, true);
+
+        List<SyncopeUser> list =
+                userDAO.findByIds(Arrays.asList(3L, 1L), projection);
+        assertEquals("did not get expected number of users ", 2, list.size());
+        assertEquals(Long.valueOf(3L), list.get(0).getId());
+        assertEquals(Long.valueOf(1L), list.get(1).getId());
+
+        List<UAttr> attributes = userDAO.findAttributes(
+                Arrays.asList(3L, 1L), projection.getAttributes());
+        assertFalse(attributes.isEmpty());
+        for (UAttr attribute : attributes) {
+            assertEquals("firstname", attribute.getSchema().getName());
+        }
+
+        assertTrue(userDAO.findAttributes(Arrays.asList(3L, 1L),
+                Collections.<String>emptySet()).isEmpty());
+    }
+
     @Test
     public final void save() {
         SyncopeUser user = new SyncopeUser();
@@ -113,6 +257,146 @@ public class UserTest extends AbstractTest {
         assertNotNull("expected save to work", actual);
     }
 
+    /**
+     * Rows inserted when saving users are sent in JDBC batches: unbatched,
+     * each row would take a statement of its own.
+     */
+    @Test
+    public final void saveBatched()
+            throws ParseException {
+
+        final int userCount = 20;
+        final int valueCount = 30;
+
+        USchema loginDate = schemaDAO.find("loginDate", USchema.class);
+        Statistics statistics = ((Session) entityManager.getDelegate()).
+                getSessionFactory().getStatistics();
+
+        entityManager.flush();
+        long insertCount = statistics.getEntityInsertCount();
+        long statementCount = statistics.getPrepareStatementCount();
+
+        List<Long> ids = new ArrayList<Long>();
+        for (int i = 0; i < userCount; i++) {
+            SyncopeUser user = new SyncopeUser();
+            user.setPassword("password");
+
+            UAttr attribute = new UAttr();
+            attribute.setSchema(loginDate);
+            attribute.setOwner(user);
+            for (int j = 1; j <= valueCount; j++) {
+                attribute.addValue("2011-01-" + (j < 10 ? "0" + j : j),
+                        AttributableUtil.USER);
+            }
+            user.addAttribute(attribute);
+
+            ids.add(userDAO.save(user).getId());
+        }
+        entityManager.flush();
+
+        insertCount = statistics.getEntityInsertCount() - insertCount;
+        statementCount = statistics.getPrepareStatementCount()
+                - statementCount;
+
+        assertTrue(insertCount >= userCount * (valueCount + 2));
+        assertTrue("Prepared " + statementCount + " statements for "
+                + insertCount + " inserted rows",
+                statementCount < insertCount / 2);
+        assertEquals(userCount, new HashSet<Long>(ids).size());
+        assertEquals(valueCount,
+                userDAO.find(ids.get(0)).getAttribute("loginDate").
+                getValues().size());
+    }
+
+    /**
+     * Loading a page of users with all their associations must take a
+     * number of queries not depending on the number of users.
+     */
+    @Test
+    public final void findAllQueryCount() {
+        final int userCount = 20;
+
+        USchema loginDate = schemaDAO.find("loginDate", USchema.class);
+        SyncopeRole role = roleDAO.find(1L);
+        for (int i = 0; i < userCount; i++) {
+            SyncopeUser user = new SyncopeUser();
+            user.setPassword("password");
+
+            UAttr attribute = new UAttr();
+            attribute.setSchema(loginDate);
+            attribute.setOwner(user);
+            attribute.addValue("2011-01-01", AttributableUtil.USER);
+            attribute.addValue("2011-01-02", AttributableUtil.USER);
+            user.addAttribute(attribute);
+
+            Membership membership = new Membership();
+            membership.setSyncopeUser(user);
+            membership.setSyncopeRole(role);
+            user.addMembership(membership);
+
+            userDAO.save(user);
+        }
+        entityManager.flush();
+
+        long smallPageQueries = countFindAllQueries(5);
+        long largePageQueries = countFindAllQueries(userCount + 4);
+        LOG.info("Loaded 5 users with {} queries, {} users with {} queries",
+                new Object[]{smallPageQueries, userCount + 4,
+                    largePageQueries});
+
+        assertEquals(smallPageQueries, largePageQueries);
+    }
+
+    /**
+     * Count the statements needed to load the first page of users, together
+     * with all associations read when rendering them, starting from an empty
+     * persistence context and second level cache.
+     *
+     * @param itemsPerPage page size
+     * @return number of prepared statements
+     */
+    private long countFindAllQueries(final int itemsPerPage) {
+        entityManager.clear();
+
+        SessionFactory sessionFactory =
+                ((Session) entityManager.getDelegate()).getSessionFactory();
+        for (Object entityName : sessionFactory.getAllClassMetadata().
+                keySet()) {
+
+            sessionFactory.evictEntity((String) entityName);
+        }
+        for (Object roleName : sessionFactory.getAllCollectionMetadata().
+                keySet()) {
+
+            sessionFactory.evictCollection((String) roleName);
+        }
+        sessionFactory.evictQueries();
+
+        Statistics statistics = sessionFactory.getStatistics();
+        long queryCount = statistics.getPrepareStatementCount();
+
+        List<SyncopeUser> users = userDAO.findAll(
+                EntitlementUtil.getRoleIds(entitlementDAO.findAll()),
+                1, itemsPerPage, UserProjection.ALL);
+        assertEquals(itemsPerPage, users.size());
+
+        for (SyncopeUser user : users) {
+            for (UAttr attribute : user.getAttributes()) {
+                attribute.getValues().size();
+                attribute.getUniqueValue();
+            }
+            user.getDerivedAttributes().size();
+            user.getTargetResources().size();
+            for (Membership membership : user.getMemberships()) {
+                membership.getSyncopeRole().getName();
+                membership.getAttributes().size();
+                membership.getDerivedAttributes().size();
+            }
+        }
+
+        return statistics.getPrepareStatementCount() - queryCount;
+    }
+
     @Test
     public final void delete() {
         SyncopeUser user = userDAO.find(3L);
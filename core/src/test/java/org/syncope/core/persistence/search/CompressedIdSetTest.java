@@ -0,0 +1,163 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package org.syncope.core.persistence.search;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Each operation is checked against java.util.BitSet, with sparse and dense
+ * groups of ids.
+ */
+public class CompressedIdSetTest {
+
+    private final Random random = new Random(42);
+
+    /**
+     * @param count number of ids
+     * @param bound ids are lower than this
+     * @param bitSet filled with the ids
+     * @param idSet filled with the same ids
+     */
+    private void fill(final int count, final int bound,
+            final BitSet bitSet, final CompressedIdSet idSet) {
+
+        for (int i = 0; i < count; i++) {
+            int id = random.nextInt(bound);
+            bitSet.set(id);
+            idSet.set(id);
+        }
+    }
+
+    private static void assertSame(final BitSet expected,
+            final CompressedIdSet actual) {
+
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+
+        int j = actual.nextSetBit(0);
+        for (int i = expected.nextSetBit(0); i >= 0;
+                i = expected.nextSetBit(i + 1)) {
+
+            assertEquals(i, j);
+            assertTrue(actual.get(i));
+            j = actual.nextSetBit(j + 1);
+        }
+        assertEquals(-1, j);
+    }
+
+    @Test
+    public final void setAndClear() {
+        BitSet expected = new BitSet();
+        CompressedIdSet actual = new CompressedIdSet();
+        assertTrue(actual.isEmpty());
+        assertEquals(-1, actual.nextSetBit(0));
+
+        // first group turns into a bitmap, the others stay arrays
+        fill(20000, 70000, expected, actual);
+        fill(100, 1000000, expected, actual);
+        assertSame(expected, actual);
+
+        // back to arrays, then to empty groups
+        for (int i = 0; i < 70000; i += 2) {
+            expected.clear(i);
+            actual.clear(i);
+        }
+        assertSame(expected, actual);
+        for (int i = 0; i < 1000000; i++) {
+            expected.clear(i);
+            actual.clear(i);
+        }
+        assertSame(expected, actual);
+        assertTrue(actual.isEmpty());
+
+        // memory does not depend on the largest id
+        actual.set(Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, actual.nextSetBit(0));
+        assertFalse(actual.get(Integer.MAX_VALUE - 1));
+
+        actual.clear();
+        assertTrue(actual.isEmpty());
+        actual.set(3);
+        assertEquals(3, actual.nextSetBit(0));
+    }
+
+    @Test
+    public final void negative() {
+        try {
+            new CompressedIdSet().set(-1);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public final void operations() {
+        int[][] shapes = {{100, 300000}, {50000, 200000}, {5000, 65536}};
+        for (int[] left : shapes) {
+            for (int[] right : shapes) {
+                BitSet leftBits = new BitSet();
+                CompressedIdSet leftIds = new CompressedIdSet();
+                fill(left[0], left[1], leftBits, leftIds);
+
+                BitSet rightBits = new BitSet();
+                CompressedIdSet rightIds = new CompressedIdSet();
+                fill(right[0], right[1], rightBits, rightIds);
+
+                BitSet expected = (BitSet) leftBits.clone();
+                CompressedIdSet actual = leftIds.clone();
+                expected.or(rightBits);
+                actual.or(rightIds);
+                assertSame(expected, actual);
+
+                expected = (BitSet) leftBits.clone();
+                actual = leftIds.clone();
+                expected.and(rightBits);
+                actual.and(rightIds);
+                assertSame(expected, actual);
+
+                expected = (BitSet) leftBits.clone();
+                actual = leftIds.clone();
+                expected.andNot(rightBits);
+                actual.andNot(rightIds);
+                assertSame(expected, actual);
+
+                // operands and clone sources are left untouched
+                assertSame(leftBits, leftIds);
+                assertSame(rightBits, rightIds);
+            }
+        }
+    }
+
+    @Test
+    public final void cloneIsIndependent() {
+        CompressedIdSet original = new CompressedIdSet();
+        original.set(1);
+        original.set(100000);
+
+        CompressedIdSet clone = original.clone();
+        clone.set(2);
+        clone.clear(100000);
+
+        assertTrue(original.get(100000));
+        assertFalse(original.get(2));
+        assertEquals(2, original.cardinality());
+        assertEquals("{1, 2}", clone.toString());
+    }
+}
@@ -32,6 +32,9 @@ import org.syncope.client.mod.AttributeMod;
 import org.syncope.client.mod.MembershipMod;
 import org.syncope.client.mod.UserMod;
 import org.syncope.client.to.AttributeTO;
+import org.syncope.client.to.BulkUserItemTO;
+import org.syncope.client.to.BulkUserResultTO;
+import org.syncope.client.to.BulkUserTO;
 import org.syncope.client.search.AttributeCond;
 import org.syncope.client.to.MembershipTO;
 import org.syncope.client.search.NodeCond;
@@ -42,6 +45,7 @@ import org.syncope.client.validation.SyncopeClientCompositeErrorException;
 import org.syncope.client.validation.SyncopeClientException;
 import org.syncope.core.persistence.beans.user.SyncopeUser;
 import org.syncope.core.workflow.Constants;
+import org.syncope.types.ResourceOperationType;
 import org.syncope.types.SyncopeClientExceptionType;
 
 public class UserTestITCase extends AbstractTest {
@@ -399,6 +403,14 @@ public class UserTestITCase extends AbstractTest {
         assertTrue(count > 0);
     }
 
+    @Test
+    public final void reindex() {
+        Integer entries = restTemplate.postForObject(
+                BASE_URL + "user/search/reindex.json", null, Integer.class);
+        assertNotNull(entries);
+        assertTrue(entries > 0);
+    }
+
     @Test
     public final void list() {
         List<UserTO> users = Arrays.asList(
@@ -633,4 +645,46 @@ public class UserTestITCase extends AbstractTest {
         }
         assertTrue(attributeFound);
     }
+
+    @Test
+    public final void bulk() {
+        BulkUserTO bulkUserTO = new BulkUserTO();
+        bulkUserTO.addUserToBeCreated(getSampleTO("bulk1@syncope.org"));
+        // mandatory attributes are missing: this item will fail
+        bulkUserTO.addUserToBeCreated(new UserTO());
+        bulkUserTO.addUserToBeCreated(getSampleTO("bulk2@syncope.org"));
+        bulkUserTO.addUserIdToBeDeleted(0L);
+
+        BulkUserResultTO result = restTemplate.postForObject(
+                BASE_URL + "user/bulk?chunkSize=2",
+                bulkUserTO, BulkUserResultTO.class);
+        assertNotNull(result);
+        assertEquals(4, result.getItems().size());
+
+        BulkUserItemTO item = result.getItems().get(0);
+        assertEquals(ResourceOperationType.CREATE, item.getOperation());
+        assertEquals(0, item.getIndex());
+        assertNull(item.getErrorType());
+        assertNotNull(item.getUserId());
+
+        UserTO userTO = restTemplate.getForObject(
+                BASE_URL + "user/read/{userId}.json",
+                UserTO.class, item.getUserId());
+        assertNotNull(userTO);
+
+        item = result.getItems().get(1);
+        assertEquals(1, item.getIndex());
+        assertNotNull(item.getErrorType());
+        assertNull(item.getUser());
+
+        item = result.getItems().get(2);
+        assertEquals(2, item.getIndex());
+        assertNull(item.getErrorType());
+        assertNotNull(item.getUser());
+
+        item = result.getItems().get(3);
+        assertEquals(ResourceOperationType.DELETE, item.getOperation());
+        assertEquals(SyncopeClientExceptionType.NotFound,
+                item.getErrorType());
+    }
 }